@@ -0,0 +1,71 @@
+package benchmark;
+
+import data.MapBuilder;
+import data.SearchStructure;
+import data.Segment;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of building the trapezoidal map at increasing segment counts.
+ *
+ * @author Tyler Chenhall
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConstructionBenchmark {
+
+    @Param({"UNIFORM", "CLUSTERED", "ADVERSARIAL"})
+    public Workloads.Kind kind;
+
+    @Param({"1000", "10000", "20000"})
+    public int segments;
+
+    private Segment[] segs;
+
+    @Setup
+    public void setup() {
+        segs = Workloads.segments(kind, segments, 1);
+    }
+
+    @Benchmark
+    public SearchStructure build() {
+        return new SearchStructure(segs, 0, Workloads.SIZE, 0, Workloads.SIZE);
+    }
+
+    @Benchmark
+    public SearchStructure buildWithDepthBound() {
+        return MapBuilder.buildWithDepthBound(segs, 0, Workloads.SIZE, 0, Workloads.SIZE, 1);
+    }
+
+    @Benchmark
+    public SearchStructure buildShallowestOfFour() {
+        return MapBuilder.buildShallowest(segs, 0, Workloads.SIZE, 0, Workloads.SIZE, 1, 4, ForkJoinPool.commonPool());
+    }
+
+    @Benchmark
+    public SearchStructure buildParallel() {
+        return MapBuilder.buildParallel(segs, 0, Workloads.SIZE, 0, Workloads.SIZE, 1,
+                4 * Runtime.getRuntime().availableProcessors(), ForkJoinPool.commonPool());
+    }
+
+    @Benchmark
+    public SearchStructure buildSweep() {
+        return MapBuilder.buildSweep(segs, 0, Workloads.SIZE, 0, Workloads.SIZE);
+    }
+}
@@ -0,0 +1,56 @@
+package benchmark;
+
+import data.Leaf;
+import data.SearchStructure;
+import data.Segment;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of SearchStructure.followSegment, which finds the trapezoids crossed
+ * by a segment during construction. The map's own segments are followed, so
+ * the walk always runs along one side of an existing segment.
+ *
+ * @author Tyler Chenhall
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FollowSegmentBenchmark {
+
+    @Param({"UNIFORM", "CLUSTERED", "ADVERSARIAL"})
+    public Workloads.Kind kind;
+
+    @Param({"1000", "20000"})
+    public int segments;
+
+    private SearchStructure ss;
+    private Segment[] segs;
+    private int next;
+
+    @Setup
+    public void setup() {
+        segs = Workloads.segments(kind, segments, 1);
+        ss = new SearchStructure(segs, 0, Workloads.SIZE, 0, Workloads.SIZE);
+    }
+
+    @Benchmark
+    public Leaf[] followSegment() {
+        Segment s = segs[next];
+        next = (next + 1) % segs.length;
+        return ss.followSegment(s);
+    }
+}
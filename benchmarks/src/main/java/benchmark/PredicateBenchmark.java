@@ -0,0 +1,68 @@
+package benchmark;
+
+import data.Point;
+import data.SearchStructure;
+import data.Segment;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the geometric predicates used during construction and
+ * queries, on random points and random (possibly crossing) segments.  The
+ * coordinates are scaled up to show the cost of the wide coordinate cases:
+ * at the largest scale they span nearly the whole int range.
+ *
+ * @author Tyler Chenhall
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PredicateBenchmark {
+
+    private static final int COUNT = 1 << 12;
+
+    //(SIZE - 1) * 53000 still fits in an int
+    @Param({"1", "53000"})
+    public int scale;
+
+    private Point[] points;
+    private Segment[] segs;
+    private int next;
+
+    @Setup
+    public void setup() {
+        int[][] q = Workloads.queries(5 * COUNT, 3);
+        points = new Point[COUNT];
+        segs = new Segment[COUNT];
+        for (int i = 0; i < COUNT; i++) {
+            points[i] = new Point(scale * q[0][i], scale * q[1][i]);
+            segs[i] = new Segment(new Point(scale * q[0][COUNT + i], scale * q[1][COUNT + i]),
+                    new Point(scale * q[0][2 * COUNT + i], scale * q[1][2 * COUNT + i]));
+        }
+    }
+
+    @Benchmark
+    public boolean isPointAboveLine() {
+        int i = next++ & (COUNT - 1);
+        return SearchStructure.isPointAboveLine(points[i], segs[i]);
+    }
+
+    @Benchmark
+    public boolean crosses() {
+        int i = next++ & (COUNT - 1);
+        return segs[i].crosses(segs[(i + 1) & (COUNT - 1)]);
+    }
+}
@@ -0,0 +1,140 @@
+package benchmark;
+
+import data.MapBuilder;
+import data.Point;
+import data.PointLocator;
+import data.SearchStructure;
+import data.Segment;
+import data.Trapezoid;
+import data.WindowVisitor;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Point location throughput: the Node walk of SearchStructure (with a Point
+ * per query, and on raw coordinates), the compiled PointLocator and its batch
+ * API, and the ray shooting queries (locateAbove) which should cost the same
+ * as locate, and window queries (queryWindow) over a square of a twentieth of
+ * the map side. All results are in queries per second. The raw coordinate queries
+ * (findPointTrapXY and locate) should show a gc.alloc.rate.norm of 0 B/op.
+ * The map is built either by the randomized construction or by the sweep
+ * (MapBuilder.buildSweep), whose search structure is shallower but larger.
+ *
+ * @author Tyler Chenhall
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryBenchmark {
+
+    //number of distinct query points, cycled through by the single query benchmarks
+    private static final int QUERIES = 1 << 16;
+    private static final int BATCH = 1 << 16;
+    private static final int WINDOW = Workloads.SIZE / 20;
+
+    @Param({"UNIFORM", "CLUSTERED", "ADVERSARIAL"})
+    public Workloads.Kind kind;
+
+    @Param({"1000", "20000"})
+    public int segments;
+
+    @Param({"RANDOMIZED", "SWEEP"})
+    public String builder;
+
+    private SearchStructure ss;
+    private PointLocator locator;
+    private int[] xs;
+    private int[] ys;
+    private int[] out;
+    private int next;
+    //results of the window queries
+    private int found;
+    private final WindowVisitor counter = new WindowVisitor() {
+        @Override
+        public boolean visitTrapezoid(Trapezoid t) {
+            found++;
+            return true;
+        }
+
+        @Override
+        public boolean visitSegment(Segment s) {
+            found++;
+            return true;
+        }
+    };
+
+    @Setup
+    public void setup() {
+        Segment[] segs = Workloads.segments(kind, segments, 1);
+        if (builder.equals("SWEEP")) {
+            ss = MapBuilder.buildSweep(segs, 0, Workloads.SIZE, 0, Workloads.SIZE);
+        } else {
+            ss = new SearchStructure(segs, 0, Workloads.SIZE, 0, Workloads.SIZE);
+        }
+        locator = ss.compile(segs);
+        int[][] q = Workloads.queries(QUERIES, 2);
+        xs = q[0];
+        ys = q[1];
+        out = new int[BATCH];
+    }
+
+    @Benchmark
+    public Trapezoid findPointTrap() {
+        int i = next++ & (QUERIES - 1);
+        return ss.findPointTrap(new Point(xs[i], ys[i]));
+    }
+
+    @Benchmark
+    public Trapezoid findPointTrapXY() {
+        int i = next++ & (QUERIES - 1);
+        return ss.findPointTrap(xs[i], ys[i]);
+    }
+
+    @Benchmark
+    public int locate() {
+        int i = next++ & (QUERIES - 1);
+        return locator.locate(xs[i], ys[i]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int[] locateBatch() {
+        locator.locate(xs, ys, out);
+        return out;
+    }
+
+    @Benchmark
+    public int locateAbove() {
+        int i = next++ & (QUERIES - 1);
+        return locator.locateAbove(xs[i], ys[i]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int[] locateAboveBatch() {
+        locator.locateAbove(xs, ys, out);
+        return out;
+    }
+
+    @Benchmark
+    public int queryWindow() {
+        int i = next++ & (QUERIES - 1);
+        found = 0;
+        ss.queryWindow(xs[i], ys[i], xs[i] + WINDOW, ys[i] + WINDOW, counter);
+        return found;
+    }
+}
@@ -0,0 +1,108 @@
+package benchmark;
+
+import data.Point;
+import data.SearchStructure;
+import data.Segment;
+import gui.DisplayPanel;
+import java.awt.EventQueue;
+import java.awt.Graphics2D;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to paint one full frame of the DisplayPanel (the size of the window
+ * opened by PointSearch) at increasing segment counts, with the segments
+ * drawn from the cached static layer or stroked again for every frame.  The
+ * frames are painted off screen, into an image, with the mouse inside one of
+ * the squares, so that square is the highlighted face.
+ *
+ * The segments are the sides of small squares in the cells of a grid over the
+ * panel, so that any number of them fit without crossing.
+ *
+ * @author Tyler Chenhall
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RenderBenchmark {
+
+    private static final int WIDTH = 1200;
+    private static final int HEIGHT = 800;
+
+    @Param({"1000", "10000", "50000"})
+    public int segments;
+
+    @Param({"true", "false"})
+    public boolean cached;
+
+    private DisplayPanel panel;
+    private BufferedImage frame;
+
+    @Setup
+    public void setup() throws InterruptedException, InvocationTargetException {
+        int cells = segments / 4;
+        int cols = (int) Math.ceil(Math.sqrt(cells * (double) WIDTH / HEIGHT));
+        int rows = (cells + cols - 1) / cols;
+        int cw = WIDTH / cols;
+        int ch = HEIGHT / rows;
+        if (cw < 4 || ch < 4) {
+            throw new IllegalArgumentException("Too many segments for the panel: " + segments);
+        }
+        Segment[] segs = new Segment[cells * 4];
+        for (int i = 0; i < cells; i++) {
+            square(segs, i, (i % cols) * cw, (i / cols) * ch, cw - 2, ch - 2);
+        }
+        panel = new DisplayPanel(new SearchStructure(segs, 0, WIDTH, 0, HEIGHT, 1));
+        panel.setSize(WIDTH, HEIGHT);
+        panel.setStaticLayerCached(cached);
+        //highlight the square in the middle of the grid
+        int x = (cols / 2) * cw + cw / 2 - 1;
+        int y = (rows / 2) * ch + ch / 2 - 1;
+        panel.dispatchEvent(new MouseEvent(panel, MouseEvent.MOUSE_MOVED, 0, 0, x, y, 0, false));
+        EventQueue.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+        frame = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+    }
+
+    @Benchmark
+    public BufferedImage paint() {
+        //the panel disposes of the graphics it paints with
+        Graphics2D g = frame.createGraphics();
+        panel.paint(g);
+        return frame;
+    }
+
+    /**
+     * Put the four sides of the rectangle with lower left corner (x, y) into
+     * segs, as the segments of cell i
+     */
+    private static void square(Segment[] segs, int i, int x, int y, int w, int h) {
+        Point a = new Point(x, y);
+        Point b = new Point(x + w, y);
+        Point c = new Point(x + w, y + h);
+        Point d = new Point(x, y + h);
+        segs[4 * i] = new Segment(a, b);
+        segs[4 * i + 1] = new Segment(b, c);
+        segs[4 * i + 2] = new Segment(c, d);
+        segs[4 * i + 3] = new Segment(d, a);
+    }
+}
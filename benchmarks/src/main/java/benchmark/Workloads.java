@@ -0,0 +1,151 @@
+package benchmark;
+
+import data.Point;
+import data.Segment;
+import java.util.Random;
+
+/**
+ * Generators for the segment sets and query points used by the benchmarks.
+ * Every generated segment set is non-crossing with disjoint interiors, so it
+ * is valid input for SearchStructure.
+ *
+ * Coordinates lie in [0, SIZE) in both directions.
+ *
+ * @author Tyler Chenhall
+ */
+public final class Workloads {
+
+    //side length of the square domain
+    public static final int SIZE = 40000;
+
+    /**
+     * The different kinds of segment sets
+     */
+    public enum Kind {
+        //one short segment in each cell of a uniform grid
+        UNIFORM,
+        //like UNIFORM, but the grid is squeezed around a few centers so that most
+        //segments fall into dense clusters
+        CLUSTERED,
+        //long, nested, stacked segments: each one spans most of the domain, so a
+        //new segment crosses many trapezoids and the walls are as long as possible
+        ADVERSARIAL
+    }
+
+    private Workloads() {
+    }
+
+    /**
+     * Generate a segment set
+     *
+     * @param kind The kind of segment set
+     * @param n The number of segments (at most SIZE / 2 for ADVERSARIAL)
+     * @param seed The random seed
+     * @return The segments
+     */
+    public static Segment[] segments(Kind kind, int n, long seed) {
+        switch (kind) {
+            case UNIFORM:
+                return grid(n, seed, 0.0);
+            case CLUSTERED:
+                return grid(n, seed, 0.9);
+            default:
+                return stacked(n);
+        }
+    }
+
+    /**
+     * Places one segment inside each of n cells of a square grid. The grid
+     * lines are moved by a monotone warp of strength squeeze (0 for none),
+     * which keeps the cells disjoint so the segments cannot cross.
+     */
+    private static Segment[] grid(int n, long seed, double squeeze) {
+        Random r = new Random(seed);
+        int g = (int) Math.ceil(Math.sqrt(n));
+        int[] lines = new int[g + 1];
+        for (int i = 0; i <= g; i++) {
+            lines[i] = (int) (warp(i / (double) g, squeeze) * (SIZE - 1));
+        }
+
+        //use a random subset of the cells
+        int[] cells = new int[g * g];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = i;
+        }
+        for (int i = cells.length - 1; i >= 1; i--) {
+            int j = r.nextInt(i + 1);
+            int temp = cells[i];
+            cells[i] = cells[j];
+            cells[j] = temp;
+        }
+
+        Segment[] segs = new Segment[n];
+        for (int i = 0; i < n; i++) {
+            int cx = cells[i] % g;
+            int cy = cells[i] / g;
+            //endpoints strictly inside the cell, with distinct x so the segment is not vertical
+            int x1 = inside(lines[cx], lines[cx + 1], r);
+            int x2 = inside(lines[cx], lines[cx + 1], r);
+            while (x2 == x1) {
+                x2 = inside(lines[cx], lines[cx + 1], r);
+            }
+            int y1 = inside(lines[cy], lines[cy + 1], r);
+            int y2 = inside(lines[cy], lines[cy + 1], r);
+            segs[i] = new Segment(new Point(x1, y1), new Point(x2, y2));
+        }
+        return segs;
+    }
+
+    /**
+     * Monotone map of [0, 1] onto itself which compresses the space around
+     * CLUSTERS evenly spaced centers (the derivative is at least 1 - squeeze).
+     */
+    private static double warp(double t, double squeeze) {
+        final int clusters = 3;
+        return t - squeeze * Math.sin(2 * Math.PI * clusters * t) / (2 * Math.PI * clusters);
+    }
+
+    /**
+     * A random int strictly between lo and hi (or lo + 1 if there is none)
+     */
+    private static int inside(int lo, int hi, Random r) {
+        if (hi - lo <= 2) {
+            return lo + 1;
+        }
+        return lo + 1 + r.nextInt(hi - lo - 1);
+    }
+
+    /**
+     * Nested horizontal segments: segment i is at height i * SIZE / n and
+     * spans [i * SIZE / (2n), SIZE - 1 - i * SIZE / (2n)].
+     */
+    private static Segment[] stacked(int n) {
+        if (n > SIZE / 2) {
+            throw new IllegalArgumentException("At most " + SIZE / 2 + " stacked segments fit in the domain");
+        }
+        Segment[] segs = new Segment[n];
+        for (int i = 0; i < n; i++) {
+            int y = (int) ((long) i * SIZE / n);
+            int x = (int) ((long) i * SIZE / (2 * n));
+            segs[i] = new Segment(new Point(x, y), new Point(SIZE - 1 - x, y));
+        }
+        return segs;
+    }
+
+    /**
+     * Generate uniformly random query coordinates over the domain
+     *
+     * @param n The number of queries
+     * @param seed The random seed
+     * @return Two arrays: the x-coordinates and the y-coordinates
+     */
+    public static int[][] queries(int n, long seed) {
+        Random r = new Random(seed);
+        int[][] q = new int[2][n];
+        for (int i = 0; i < n; i++) {
+            q[0][i] = r.nextInt(SIZE);
+            q[1][i] = r.nextInt(SIZE);
+        }
+        return q;
+    }
+}
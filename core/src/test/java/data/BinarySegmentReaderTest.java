@@ -0,0 +1,187 @@
+package data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import pointsearch.PointSearch;
+
+/**
+ * Tests of writing and reading the binary segment format, and of converting
+ * text segment files to binary and back
+ *
+ * @author Tyler Chenhall
+ */
+public class BinarySegmentReaderTest {
+
+    //offset of the version, after the magic
+    private static final int VERSION = 4;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void convertsTextToBinaryAndBack() throws IOException {
+        Random r = new Random(1);
+        StringBuilder sb = new StringBuilder();
+        int n = 5000;
+        sb.append(n).append(System.lineSeparator());
+        for (int i = 0; i < n; i++) {
+            int[] c = new int[4];
+            for (int j = 0; j < 4; j++) {
+                switch (r.nextInt(4)) {
+                    case 0:
+                        //deltas which do not fit in an int
+                        c[j] = r.nextBoolean() ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+                        break;
+                    case 1:
+                        c[j] = r.nextInt();
+                        break;
+                    default:
+                        c[j] = r.nextInt(2001) - 1000;
+                }
+            }
+            //same layout as Segment.toString, but the endpoints in any order
+            sb.append(c[0]).append("   ").append(c[1]).append("     ")
+                    .append(c[2]).append("   ").append(c[3]).append(System.lineSeparator());
+        }
+        assertRoundTrip(sb.toString());
+    }
+
+    @Test
+    public void convertsEmptyFiles() throws IOException {
+        assertRoundTrip("0" + System.lineSeparator());
+    }
+
+    @Test
+    public void readsTablesWhichWereWritten() throws IOException {
+        for (int n : new int[]{0, 1, 100000}) {
+            Random r = new Random(n);
+            SegmentTable t = new SegmentTable();
+            for (int i = 0; i < n; i++) {
+                t.add(r.nextInt(), r.nextInt(), r.nextInt(41) - 20, r.nextInt(41) - 20);
+            }
+            File f = new File(folder.getRoot(), n + ".bin");
+            BinarySegmentWriter.write(t, f);
+            assertTrue(BinarySegmentReader.isBinary(f));
+            SegmentTable back = BinarySegmentReader.readTable(f);
+            assertEquals(n, back.size());
+            for (int i = 0; i < n; i++) {
+                assertEquals(t.getLeftX(i), back.getLeftX(i));
+                assertEquals(t.getLeftY(i), back.getLeftY(i));
+                assertEquals(t.getRightX(i), back.getRightX(i));
+                assertEquals(t.getRightY(i), back.getRightY(i));
+            }
+            BinarySegmentReader in = new BinarySegmentReader(f);
+            try {
+                assertEquals(n, in.getCount());
+                assertEquals(t.getMinX(), in.getMinX());
+                assertEquals(t.getMaxX(), in.getMaxX());
+                assertEquals(t.getMinY(), in.getMinY());
+                assertEquals(t.getMaxY(), in.getMaxY());
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    @Test
+    public void rejectsBadMagic() throws IOException {
+        File f = binaryFile(10);
+        RandomAccessFile raf = new RandomAccessFile(f, "rw");
+        try {
+            raf.writeInt(BinarySegmentWriter.MAGIC + 1);
+        } finally {
+            raf.close();
+        }
+        assertFalse(BinarySegmentReader.isBinary(f));
+        expectIOException(f, "Not a binary segment file");
+    }
+
+    @Test
+    public void rejectsBadVersion() throws IOException {
+        File f = binaryFile(10);
+        RandomAccessFile raf = new RandomAccessFile(f, "rw");
+        try {
+            raf.seek(VERSION);
+            raf.writeInt(BinarySegmentWriter.VERSION + 1);
+        } finally {
+            raf.close();
+        }
+        expectIOException(f, "version " + (BinarySegmentWriter.VERSION + 1));
+    }
+
+    @Test
+    public void rejectsTruncatedFiles() throws IOException {
+        File f = binaryFile(50);
+        long size = f.length();
+        for (long length = size - 1; length >= 0; length -= 3) {
+            RandomAccessFile raf = new RandomAccessFile(f, "rw");
+            try {
+                raf.setLength(length);
+            } finally {
+                raf.close();
+            }
+            expectIOException(f, "");
+        }
+    }
+
+    /**
+     * Convert the text to binary and back with the "c" mode of PointSearch,
+     * and check that the result is the same text
+     */
+    private void assertRoundTrip(String text) throws IOException {
+        File txt = new File(folder.getRoot(), "in.txt");
+        File bin = new File(folder.getRoot(), "out.bin");
+        File back = new File(folder.getRoot(), "back.txt");
+        byte[] bytes = text.getBytes("US-ASCII");
+        FileOutputStream out = new FileOutputStream(txt);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+        PointSearch.main(new String[]{"c", txt.getPath(), bin.getPath()});
+        assertTrue(BinarySegmentReader.isBinary(bin));
+        PointSearch.main(new String[]{"c", bin.getPath(), back.getPath()});
+        assertArrayEquals(bytes, Files.readAllBytes(back.toPath()));
+        txt.delete();
+        bin.delete();
+        back.delete();
+    }
+
+    /**
+     * A binary segment file of n segments with large coordinates, so the
+     * varints take several bytes
+     */
+    private File binaryFile(int n) throws IOException {
+        Random r = new Random(n);
+        SegmentTable t = new SegmentTable();
+        for (int i = 0; i < n; i++) {
+            t.add(r.nextInt(), r.nextInt(), r.nextInt(), r.nextInt());
+        }
+        File f = folder.newFile();
+        BinarySegmentWriter.write(t, f);
+        return f;
+    }
+
+    private static void expectIOException(File f, String message) {
+        try {
+            BinarySegmentReader.readTable(f);
+            fail("Read a corrupt binary segment file of " + f.length() + " bytes");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains(message));
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+
+/**
+ * Tests that the other builders give the same map as the randomized
+ * construction, and pick their seeds as documented
+ *
+ * @author Tyler Chenhall
+ */
+public class MapBuilderTest {
+
+    @Test
+    public void slabBuildMatchesRandomizedBuild() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int seed = 0; seed < 20; seed++) {
+                Segment[] segs = seed % 2 == 0 ? TestSegments.grid(10, 5, seed) : TestSegments.split(25, 50, seed);
+                SearchStructure expected = new SearchStructure(segs, 0, 50, 0, 50, seed);
+                for (int slabs = 1; slabs <= 9; slabs += 4) {
+                    TestMaps.assertSameMap(expected, MapBuilder.buildParallel(segs, 0, 50, 0, 50, seed, slabs, pool), 50, seed);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void sweepBuildMatchesRandomizedBuild() {
+        for (int seed = 0; seed < 20; seed++) {
+            Segment[] segs = seed % 2 == 0 ? TestSegments.grid(10, 5, seed) : TestSegments.split(25, 50, seed);
+            SearchStructure expected = new SearchStructure(segs, 0, 50, 0, 50, seed);
+            TestMaps.assertSameMap(expected, MapBuilder.buildSweep(segs, 0, 50, 0, 50), 50, seed);
+        }
+    }
+
+    @Test
+    public void depthBoundBuildTakesTheFirstSeedWithinTheBound() {
+        for (int seed = 0; seed < 10; seed++) {
+            Segment[] segs = seed % 2 == 0 ? TestSegments.grid(12, 5, seed) : TestSegments.split(40, 60, seed);
+            long[] seeds = candidateSeeds(seed, 8);
+            int[] depths = depths(segs, seeds);
+            //a bound which some, but usually not all, of the seeds meet
+            int[] sorted = depths.clone();
+            Arrays.sort(sorted);
+            int bound = sorted[sorted.length / 2];
+            double factor = (bound + 0.5) / Math.log(segs.length);
+            int expected = 0;
+            while (depths[expected] > bound) {
+                expected++;
+            }
+            SearchStructure ss = MapBuilder.buildWithDepthBound(segs, 0, 60, 0, 60, seed, factor, seeds.length);
+            assertEquals(seeds[expected], ss.getSeed());
+            assertTrue(ss.getMaxDepth() <= bound);
+            TestMaps.assertSameMap(new SearchStructure(segs, 0, 60, 0, 60, seed), ss, 60, seed);
+            //the same arguments give the same map
+            SearchStructure again = MapBuilder.buildWithDepthBound(segs, 0, 60, 0, 60, seed, factor, seeds.length);
+            assertEquals(ss.getSeed(), again.getSeed());
+            assertEquals(TestMaps.shape(ss), TestMaps.shape(again));
+
+            //a bound no seed meets gives the shallowest map, the earliest on a tie
+            ss = MapBuilder.buildWithDepthBound(segs, 0, 60, 0, 60, seed, 0.0, seeds.length);
+            assertEquals(seeds[shallowest(depths)], ss.getSeed());
+        }
+    }
+
+    @Test
+    public void shallowestBuildKeepsTheShallowestSeed() {
+        ForkJoinPool[] pools = {new ForkJoinPool(1), new ForkJoinPool(4)};
+        try {
+            for (int seed = 0; seed < 10; seed++) {
+                Segment[] segs = seed % 2 == 0 ? TestSegments.grid(12, 5, seed) : TestSegments.split(40, 60, seed);
+                long[] seeds = candidateSeeds(seed, 6);
+                int[] depths = depths(segs, seeds);
+                for (ForkJoinPool pool : pools) {
+                    //the result does not depend on the number of threads
+                    SearchStructure ss = MapBuilder.buildShallowest(segs, 0, 60, 0, 60, seed, seeds.length, pool);
+                    assertEquals(seeds[shallowest(depths)], ss.getSeed());
+                    assertEquals(depths[shallowest(depths)], ss.getMaxDepth());
+                    TestMaps.assertSameMap(new SearchStructure(segs, 0, 60, 0, 60, seed), ss, 60, seed);
+                }
+            }
+        } finally {
+            for (ForkJoinPool pool : pools) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * The seeds MapBuilder draws from the given seed, in order
+     */
+    private static long[] candidateSeeds(long seed, int count) {
+        Random r = new Random(seed);
+        long[] seeds = new long[count];
+        for (int i = 0; i < count; i++) {
+            seeds[i] = r.nextLong();
+        }
+        return seeds;
+    }
+
+    private static int[] depths(Segment[] segs, long[] seeds) {
+        int[] depths = new int[seeds.length];
+        for (int i = 0; i < seeds.length; i++) {
+            depths[i] = new SearchStructure(segs, 0, 60, 0, 60, seeds[i]).getMaxDepth();
+        }
+        return depths;
+    }
+
+    private static int shallowest(int[] depths) {
+        int best = 0;
+        for (int i = 1; i < depths.length; i++) {
+            if (depths[i] < depths[best]) {
+                best = i;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,87 @@
+package data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of writing and reading map snapshots
+ *
+ * @author Tyler Chenhall
+ */
+public class MapSnapshotTest {
+
+    //offset of the point count, after the magic, version, box and segment count
+    private static final int POINT_COUNT = 7 * 4;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsWhatWasWritten() throws IOException {
+        SearchStructure ss = new SearchStructure(TestSegments.grid(10, 5, 1), 0, 50, 0, 50, 1);
+        File f = folder.newFile();
+        MapSnapshot.write(ss, f);
+        SearchStructure loaded = MapSnapshot.read(f);
+        assertEquals(ss.getSegmentCount(), loaded.getSegmentCount());
+        Random r = new Random(1);
+        for (int i = 0; i < 2000; i++) {
+            int x = r.nextInt(51);
+            int y = r.nextInt(51);
+            Trapezoid a = ss.findPointTrap(x, y);
+            Trapezoid b = loaded.findPointTrap(x, y);
+            assertEquals(a.getLeftBound(), b.getLeftBound());
+            assertEquals(a.getRightBound(), b.getRightBound());
+            assertEquals(a.getUpperBound(), b.getUpperBound());
+            assertEquals(a.getLowerBound(), b.getLowerBound());
+        }
+    }
+
+    @Test
+    public void rejectsTruncatedFiles() throws IOException {
+        File f = folder.newFile();
+        MapSnapshot.write(new SearchStructure(TestSegments.grid(4, 5, 2), 0, 20, 0, 20, 2), f);
+        long size = f.length();
+        for (long length = size - 1; length >= 0; length -= 7) {
+            RandomAccessFile raf = new RandomAccessFile(f, "rw");
+            try {
+                raf.setLength(length);
+            } finally {
+                raf.close();
+            }
+            expectIOException(f);
+        }
+    }
+
+    @Test
+    public void rejectsCountsLargerThanTheFile() throws IOException {
+        File f = folder.newFile();
+        MapSnapshot.write(new SearchStructure(TestSegments.grid(4, 5, 3), 0, 20, 0, 20, 3), f);
+        for (int count : new int[]{Integer.MAX_VALUE, 1 << 29, 100000}) {
+            RandomAccessFile raf = new RandomAccessFile(f, "rw");
+            try {
+                raf.seek(POINT_COUNT);
+                raf.writeInt(count);
+            } finally {
+                raf.close();
+            }
+            expectIOException(f);
+        }
+    }
+
+    private static void expectIOException(File f) {
+        try {
+            MapSnapshot.read(f);
+            fail("Read a corrupt snapshot of " + f.length() + " bytes");
+        } catch (IOException ex) {
+            //expected
+        }
+    }
+}
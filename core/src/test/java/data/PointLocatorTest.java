@@ -0,0 +1,303 @@
+package data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+
+/**
+ * Tests that the compiled PointLocator answers like the search structure it
+ * was compiled from
+ *
+ * @author Tyler Chenhall
+ */
+public class PointLocatorTest {
+
+    @Test
+    public void locatesLikeTheSearchStructure() {
+        for (int seed = 0; seed < 20; seed++) {
+            Segment[] segs = TestSegments.grid(10, 6, seed);
+            SearchStructure ss = new SearchStructure(segs, 0, 60, 0, 60);
+            PointLocator pl = ss.compile();
+            Random r = new Random(seed);
+            int[] xs = new int[2000];
+            int[] ys = new int[2000];
+            for (int i = 0; i < xs.length; i++) {
+                xs[i] = r.nextInt(61);
+                ys[i] = r.nextInt(61);
+            }
+            int[] ids = new int[xs.length];
+            pl.locate(xs, ys, ids);
+            for (int i = 0; i < xs.length; i++) {
+                Trapezoid t = ss.findPointTrap(new Point(xs[i], ys[i]));
+                assertSame(t, pl.findPointTrap(new Point(xs[i], ys[i])));
+                assertSame(t, pl.getTrapezoid(ids[i]));
+            }
+        }
+    }
+
+    @Test
+    public void locatesInParallelLikeSequentially() throws InterruptedException {
+        Segment[] segs = TestSegments.split(200, 1000, 1);
+        PointLocator pl = new SearchStructure(segs, 0, 1000, 0, 1000, 1).compile();
+        //large enough to be split into several pieces of PARALLEL_GRAIN
+        int n = 5 * PointLocator.PARALLEL_GRAIN + 17;
+        Random r = new Random(1);
+        int[] xs = new int[n];
+        int[] ys = new int[n];
+        int[] expected = new int[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = r.nextInt(1001);
+            ys[i] = r.nextInt(1001);
+            expected[i] = pl.locate(xs[i], ys[i]);
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            int[] out = new int[n];
+            pl.locateParallel(xs, ys, out, pool);
+            assertArrayEquals(expected, out);
+            for (int parts : new int[]{1, 3, 16}) {
+                out = new int[n];
+                pl.locateParallel(xs, ys, out, executor, parts);
+                assertArrayEquals(expected, out);
+            }
+        } finally {
+            pool.shutdown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void labelsClosedRectanglesAsFaces() {
+        int side = 6;
+        int cell = 10;
+        int size = side * cell;
+        for (int seed = 0; seed < 10; seed++) {
+            Segment[] segs = TestSegments.rectangles(side, cell, seed);
+            PointLocator pl = new SearchStructure(segs, 0, size, 0, size, seed).compile();
+            assertFaceLabelsMatchFloodFill(pl);
+            //points with the same brute-force region must share a face, and
+            //points of different regions must not
+            HashMap<String, Integer> faceOfRegion = new HashMap<String, Integer>();
+            HashMap<Integer, String> regionOfFace = new HashMap<Integer, String>();
+            for (int x = 0; x <= size; x++) {
+                for (int y = 0; y <= size; y++) {
+                    String region = region(segs, x, y);
+                    if (region == null) {
+                        continue;
+                    }
+                    int face = pl.locateFace(x, y);
+                    assertEquals(face, pl.getFace(pl.locate(x, y)));
+                    Integer f = faceOfRegion.put(region, face);
+                    if (f != null) {
+                        assertEquals(region + " at " + x + " " + y, f.intValue(), face);
+                    }
+                    String g = regionOfFace.put(face, region);
+                    if (g != null) {
+                        assertEquals("face at " + x + " " + y, g, region);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void labelsFacesLikeAFloodFill() {
+        for (int seed = 0; seed < 10; seed++) {
+            Segment[] segs = seed % 2 == 0 ? TestSegments.grid(10, 5, seed) : TestSegments.split(40, 50, seed);
+            assertFaceLabelsMatchFloodFill(new SearchStructure(segs, 0, 50, 0, 50, seed).compile());
+        }
+    }
+
+    @Test
+    public void findsSegmentsAboveAndBelowLikeAScan() {
+        for (int seed = 0; seed < 20; seed++) {
+            Segment[] base = seed % 2 == 0 ? TestSegments.grid(10, 6, seed) : TestSegments.split(30, 60, seed);
+            //double the x-coordinates, and query at odd x only, so that no
+            //query lies on a vertical line through an endpoint
+            Segment[] segs = new Segment[base.length];
+            for (int i = 0; i < segs.length; i++) {
+                Point l = base[i].getLeftEndPoint();
+                Point r = base[i].getRightEndPoint();
+                segs[i] = new Segment(new Point(2 * l.getX(), l.getY()), new Point(2 * r.getX(), r.getY()));
+            }
+            SearchStructure ss = new SearchStructure(segs, 0, 120, 0, 60, seed);
+            //number the segments in an order other than the input order
+            Segment[] order = segs.clone();
+            Collections.shuffle(Arrays.asList(order), new Random(seed));
+            PointLocator pl = ss.compile(order);
+            IdentityHashMap<Segment, Integer> ids = new IdentityHashMap<Segment, Integer>();
+            for (int i = 0; i < order.length; i++) {
+                ids.put(order[i], i);
+            }
+            Random r = new Random(seed);
+            int[] xs = new int[3000];
+            int[] ys = new int[3000];
+            int[] above = new int[3000];
+            int[] below = new int[3000];
+            for (int i = 0; i < xs.length; i++) {
+                xs[i] = 2 * r.nextInt(60) + 1;
+                ys[i] = r.nextInt(61);
+                above[i] = scan(segs, xs[i], ys[i], true);
+                below[i] = scan(segs, xs[i], ys[i], false);
+                Segment a = above[i] < 0 ? null : segs[above[i]];
+                Segment b = below[i] < 0 ? null : segs[below[i]];
+                assertSame(a, ss.findSegmentAbove(xs[i], ys[i]));
+                assertSame(b, ss.findSegmentBelow(xs[i], ys[i]));
+                int aid = a == null ? PointLocator.NO_SEGMENT : ids.get(a);
+                int bid = b == null ? PointLocator.NO_SEGMENT : ids.get(b);
+                assertEquals(aid, pl.locateAbove(xs[i], ys[i]));
+                assertEquals(bid, pl.locateBelow(xs[i], ys[i]));
+                above[i] = aid;
+                below[i] = bid;
+            }
+            int[] out = new int[xs.length];
+            pl.locateAbove(xs, ys, out);
+            assertArrayEquals(above, out);
+            pl.locateBelow(xs, ys, out);
+            assertArrayEquals(below, out);
+            for (int i = 0; i < order.length; i++) {
+                assertSame(order[i], pl.getSegment(i));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsSegmentArraysMissingASegment() {
+        Segment[] segs = TestSegments.grid(4, 6, 1);
+        SearchStructure ss = new SearchStructure(segs, 0, 24, 0, 24, 1);
+        ss.compile(Arrays.copyOf(segs, segs.length - 1));
+    }
+
+    /**
+     * Find the segment first hit by a vertical ray up (or down) from (x, y),
+     * by checking every segment.  A point on a segment counts as below it.
+     * @return The index of the segment, or -1 if the ray hits none
+     */
+    private static int scan(Segment[] segs, int x, int y, boolean up) {
+        int best = -1;
+        for (int i = 0; i < segs.length; i++) {
+            Point l = segs[i].getLeftEndPoint();
+            Point r = segs[i].getRightEndPoint();
+            if (x <= l.getX() || x >= r.getX()) {
+                continue;
+            }
+            //the height of the segment at x is (num / den)
+            long den = r.getX() - l.getX();
+            long num = l.getY() * den + (long) (r.getY() - l.getY()) * (x - l.getX());
+            boolean isAbove = num >= y * den;
+            if (isAbove != up) {
+                continue;
+            }
+            if (best < 0) {
+                best = i;
+                continue;
+            }
+            Point bl = segs[best].getLeftEndPoint();
+            Point br = segs[best].getRightEndPoint();
+            long bden = br.getX() - bl.getX();
+            long bnum = bl.getY() * bden + (long) (br.getY() - bl.getY()) * (x - bl.getX());
+            //keep the segment nearest to the point
+            if (up ? num * bden < bnum * den : num * bden > bnum * den) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * The region of the point (x, y) among the rectangles: the innermost
+     * rectangle strictly containing it, or "outside"; or null if the point
+     * lies on a rectangle
+     */
+    private static String region(Segment[] rects, int x, int y) {
+        String region = "outside";
+        int area = Integer.MAX_VALUE;
+        //the rectangles come as four segments: bottom, right, top, left
+        for (int i = 0; i < rects.length; i += 4) {
+            int left = rects[i].getMinX();
+            int right = rects[i].getMaxX();
+            int bottom = rects[i].getMinY();
+            int top = rects[i + 2].getMinY();
+            boolean inX = x >= left && x <= right;
+            boolean inY = y >= bottom && y <= top;
+            if (inX && inY && (x == left || x == right || y == bottom || y == top)) {
+                return null;
+            }
+            if (inX && inY && (right - left) * (top - bottom) < area) {
+                area = (right - left) * (top - bottom);
+                region = "inside " + i;
+            }
+        }
+        return region;
+    }
+
+    /**
+     * Check that the faces of the locator are the connected components of the
+     * trapezoid neighbor links, found with a breadth first flood fill, and
+     * that the face lists hold exactly the trapezoids of each face
+     */
+    private static void assertFaceLabelsMatchFloodFill(PointLocator pl) {
+        int n = pl.getTrapezoidCount();
+        IdentityHashMap<Trapezoid, Integer> ids = new IdentityHashMap<Trapezoid, Integer>();
+        for (int i = 0; i < n; i++) {
+            ids.put(pl.getTrapezoid(i), i);
+        }
+        int[] component = new int[n];
+        Arrays.fill(component, -1);
+        int components = 0;
+        for (int i = 0; i < n; i++) {
+            if (component[i] >= 0) {
+                continue;
+            }
+            ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+            component[i] = components;
+            queue.add(i);
+            while (!queue.isEmpty()) {
+                Trapezoid t = pl.getTrapezoid(queue.poll());
+                Trapezoid[] next = {t.getUpperLeftNeighbor(), t.getLowerLeftNeighbor(),
+                    t.getUpperRightNeighbor(), t.getLowerRightNeighbor()};
+                for (Trapezoid u : next) {
+                    Integer j = u == null ? null : ids.get(u);
+                    if (j != null && component[j] < 0) {
+                        component[j] = components;
+                        queue.add(j);
+                    }
+                }
+            }
+            components++;
+        }
+        assertEquals(components, pl.getFaceCount());
+        int[] faceOf = new int[components];
+        Arrays.fill(faceOf, -1);
+        boolean[] used = new boolean[components];
+        for (int i = 0; i < n; i++) {
+            if (faceOf[component[i]] < 0) {
+                faceOf[component[i]] = pl.getFace(i);
+                assertFalse("two components share a face", used[pl.getFace(i)]);
+                used[pl.getFace(i)] = true;
+            }
+            assertEquals(faceOf[component[i]], pl.getFace(i));
+        }
+        int listed = 0;
+        for (int f = 0; f < pl.getFaceCount(); f++) {
+            for (int k = 0; k < pl.getFaceSize(f); k++) {
+                assertEquals(f, pl.getFace(pl.getFaceTrapezoid(f, k)));
+                listed++;
+            }
+        }
+        assertEquals(n, listed);
+    }
+}
@@ -0,0 +1,121 @@
+package data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+
+/**
+ * Tests of the randomized incremental construction
+ *
+ * @author Tyler Chenhall
+ */
+public class SearchStructureTest {
+
+    @Test
+    public void linksNeighborsBothWays() {
+        for (int seed = 0; seed < 20; seed++) {
+            SearchStructure ss = new SearchStructure(TestSegments.grid(10, 5, seed), 0, 50, 0, 50);
+            Set<Trapezoid> traps = checkLinks(ss.findPointTrap(new Point(0, 0)));
+            for (int x = 0; x <= 50; x++) {
+                for (int y = 0; y <= 50; y++) {
+                    assertTrue(traps.contains(ss.findPointTrap(new Point(x, y))));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void removeGivesTheMapOfTheRemainingSegments() {
+        for (int seed = 0; seed < 10; seed++) {
+            Segment[] segs = seed % 2 == 0 ? TestSegments.grid(6, 5, seed) : TestSegments.split(15, 30, seed);
+            int size = 30;
+            SearchStructure ss = new SearchStructure(segs, 0, size, 0, size, seed);
+            ArrayList<Segment> left = new ArrayList<Segment>(Arrays.asList(segs));
+            Collections.shuffle(left, new Random(seed));
+            while (!left.isEmpty()) {
+                Segment s = left.remove(left.size() - 1);
+                //an equal segment, not the object in the map
+                Segment copy = segment(s.getLeftEndPoint().getX(), s.getLeftEndPoint().getY(),
+                        s.getRightEndPoint().getX(), s.getRightEndPoint().getY());
+                assertTrue(ss.remove(copy));
+                assertFalse(ss.remove(copy));
+                assertEquals(left.size(), ss.getSegmentCount());
+                SearchStructure fresh = new SearchStructure(left.toArray(new Segment[left.size()]), 0, size, 0, size, seed);
+                TestMaps.assertSameMap(fresh, ss, size, seed);
+            }
+        }
+    }
+
+    /**
+     * Inserted in this order, a segment ends on the wall of a trapezoid whose
+     * top and bottom segments share an endpoint beyond that wall.  The
+     * trapezoid used to be taken for a triangle and lose its neighbors on
+     * that side, so the last insertion walked off a missing link.
+     */
+    @Test
+    public void keepsNeighborsOfTrapezoidsWhoseBoundsMeetLater() {
+        SearchStructure ss = new SearchStructure(new Segment[0], 100, 150, 400, 450);
+        ss.insert(segment(122, 425, 128, 421));
+        ss.insert(segment(124, 410, 128, 421));
+        ss.insert(segment(124, 416, 125, 416));
+        ss.insert(segment(122, 417, 124, 416));
+        ss.insert(segment(123, 419, 124, 419));
+        checkLinks(ss.findPointTrap(new Point(101, 401)));
+    }
+
+    static Segment segment(int x1, int y1, int x2, int y2) {
+        return new Segment(new Point(x1, y1), new Point(x2, y2));
+    }
+
+    /**
+     * Walk all trapezoids reachable from start through the neighbor links,
+     * checking that each neighbor links back
+     * @return The trapezoids found
+     */
+    static Set<Trapezoid> checkLinks(Trapezoid start) {
+        Set<Trapezoid> seen = Collections.newSetFromMap(new IdentityHashMap<Trapezoid, Boolean>());
+        ArrayDeque<Trapezoid> queue = new ArrayDeque<Trapezoid>();
+        seen.add(start);
+        queue.add(start);
+        while (!queue.isEmpty()) {
+            Trapezoid t = queue.poll();
+            Trapezoid n = t.getUpperLeftNeighbor();
+            if (n != null) {
+                assertSame("upper left neighbor of " + t, t, n.getUpperRightNeighbor());
+                visit(n, seen, queue);
+            }
+            n = t.getLowerLeftNeighbor();
+            if (n != null) {
+                assertSame("lower left neighbor of " + t, t, n.getLowerRightNeighbor());
+                visit(n, seen, queue);
+            }
+            n = t.getUpperRightNeighbor();
+            if (n != null) {
+                assertSame("upper right neighbor of " + t, t, n.getUpperLeftNeighbor());
+                visit(n, seen, queue);
+            }
+            n = t.getLowerRightNeighbor();
+            if (n != null) {
+                assertSame("lower right neighbor of " + t, t, n.getLowerLeftNeighbor());
+                visit(n, seen, queue);
+            }
+        }
+        return seen;
+    }
+
+    private static void visit(Trapezoid t, Set<Trapezoid> seen, ArrayDeque<Trapezoid> queue) {
+        if (seen.add(t)) {
+            queue.add(t);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Tests SegmentGrid against a scan of every segment
+ *
+ * @author Tyler Chenhall
+ */
+public class SegmentGridTest {
+
+    @Test
+    public void matchesBruteForceScan() {
+        int[] cellSizes = {1, 7, 50, 1000};
+        for (int seed = 0; seed < 5; seed++) {
+            Random r = new Random(seed);
+            int cellSize = cellSizes[seed % cellSizes.length];
+            SegmentGrid grid = new SegmentGrid(cellSize);
+            ArrayList<Segment> all = new ArrayList<Segment>();
+            for (int i = 0; i < 3000; i++) {
+                Segment s = randomSegment(r, 400);
+                boolean expected = false;
+                for (int j = 0; j < all.size() && !expected; j++) {
+                    expected = all.get(j).crosses(s);
+                }
+                assertEquals("seed " + seed + ", segment " + i, expected, grid.crossesAny(s));
+                //keep the crossing segments too, so the grid gets crowded
+                grid.add(s);
+                all.add(s);
+            }
+            assertEquals(all.size(), grid.size());
+        }
+    }
+
+    @Test
+    public void handlesLargeCoordinates() {
+        //the run of the first segment and the rise of the second do not fit in an int
+        SegmentGrid grid = new SegmentGrid(1 << 24);
+        grid.add(new Segment(new Point(-2000000000, 0), new Point(2000000000, 1 << 26)));
+        grid.add(new Segment(new Point(0, -2000000000), new Point(1 << 26, 2000000000)));
+        assertTrue(grid.crossesAny(new Segment(new Point(-5, (1 << 25) + 5), new Point(5, (1 << 25) - 5))));
+        assertTrue(grid.crossesAny(new Segment(new Point((1 << 25) - 5, 5), new Point((1 << 25) + 5, -5))));
+        assertFalse(grid.crossesAny(new Segment(new Point(-(1 << 25), 1 << 25), new Point(-(1 << 24), 1 << 25))));
+    }
+
+    /**
+     * A short segment, or (one time in ten) a long one, or (one time in five)
+     * a vertical one
+     */
+    private static Segment randomSegment(Random r, int size) {
+        int x = r.nextInt(size);
+        int y = r.nextInt(size);
+        int k = r.nextInt(10);
+        if (k < 2) {
+            return new Segment(new Point(x, y), new Point(x, r.nextInt(size)));
+        } else if (k == 2) {
+            return new Segment(new Point(x, y), new Point(r.nextInt(size), r.nextInt(size)));
+        }
+        return new Segment(new Point(x, y), new Point(x - 15 + r.nextInt(31), y - 15 + r.nextInt(31)));
+    }
+}
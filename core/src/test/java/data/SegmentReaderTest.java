@@ -0,0 +1,122 @@
+package data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of reading segment text files, and of the errors reported for
+ * malformed ones
+ *
+ * @author Tyler Chenhall
+ */
+public class SegmentReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsSegments() throws IOException {
+        SegmentTable t = SegmentReader.readTable(file("3\n1   2     3   4\n\n  -5 6\t7 -8\r\n+9 2147483647 -2147483648 0\n"));
+        assertEquals(3, t.size());
+        assertEquals(1, t.getLeftX(0));
+        assertEquals(4, t.getRightY(0));
+        //the table keeps the left endpoint first
+        assertEquals(-5, t.getLeftX(1));
+        assertEquals(6, t.getLeftY(1));
+        assertEquals(7, t.getRightX(1));
+        assertEquals(-8, t.getRightY(1));
+        assertEquals(Integer.MIN_VALUE, t.getLeftX(2));
+        assertEquals(0, t.getLeftY(2));
+        assertEquals(9, t.getRightX(2));
+        assertEquals(Integer.MAX_VALUE, t.getRightY(2));
+    }
+
+    @Test
+    public void readsLongFilesAcrossBuffers() throws IOException {
+        int n = 50000;
+        StringBuilder sb = new StringBuilder();
+        sb.append(n).append('\n');
+        for (int i = 0; i < n; i++) {
+            sb.append(i).append(' ').append(-i).append(' ').append(i + 1).append(' ').append(i * 7).append('\n');
+        }
+        SegmentReader in = new SegmentReader(file(sb.toString()));
+        try {
+            assertEquals(n, in.getCount());
+            for (int i = 0; i < n; i++) {
+                assertTrue(in.next());
+                assertEquals(i, in.getX1());
+                assertEquals(-i, in.getY1());
+                assertEquals(i + 1, in.getX2());
+                assertEquals(i * 7, in.getY2());
+                assertEquals(i + 2, in.getLineNumber());
+            }
+            assertFalse(in.next());
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void reportsShortFiles() throws IOException {
+        expectError("3\n1 2 3 4\n5 6 7 8\n", 4, "expected 3 segments but the file ends after 2");
+        expectError("2\n1 2 3 4\n5 6\n", 4, "expected 2 segments but the file ends after 1");
+        expectError("", 1, "missing segment count");
+    }
+
+    @Test
+    public void reportsLongFiles() throws IOException {
+        expectError("1\n1 2 3 4\n5 6 7 8\n", 3, "more segments than the declared count of 1");
+        expectError("0\n\n\n1\n", 4, "more segments than the declared count of 0");
+    }
+
+    @Test
+    public void reportsBadCharacters() throws IOException {
+        expectError("2\n1 2 3 4\n5 6 7x 8\n", 3, "unexpected character 'x'");
+        expectError("1\n1 2 3,4\n", 2, "unexpected character ','");
+        expectError("1\n1 2 - 4\n", 2, "expected a number");
+        expectError("two\n1 2 3 4\n", 1, "unexpected character 't'");
+    }
+
+    @Test
+    public void reportsNumbersOutOfRange() throws IOException {
+        expectError("1\n1 2 3 2147483648\n", 2, "coordinate 2147483648 out of range");
+        expectError("1\n\n-2147483649 2 3 4\n", 3, "coordinate -2147483649 out of range");
+        expectError("1\n1 2 3 99999999999999999999\n", 2, "number out of range");
+        expectError("-1\n", 1, "invalid segment count -1");
+        expectError("4294967295\n", 1, "invalid segment count 4294967295");
+    }
+
+    /**
+     * Read the text as a segment file, and check that it fails with the given
+     * message at the given line
+     */
+    private void expectError(String text, int line, String message) throws IOException {
+        File f = file(text);
+        try {
+            SegmentReader.readTable(f);
+            fail("Read a malformed segment file: " + text);
+        } catch (IOException ex) {
+            assertEquals("Malformed segment file at line " + line + ": " + message, ex.getMessage());
+        }
+    }
+
+    private File file(String text) throws IOException {
+        File f = folder.newFile();
+        FileOutputStream out = new FileOutputStream(f);
+        try {
+            out.write(text.getBytes("US-ASCII"));
+        } finally {
+            out.close();
+        }
+        return f;
+    }
+}
@@ -0,0 +1,208 @@
+package data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import org.junit.Test;
+
+/**
+ * Tests of SegmentSplitter
+ *
+ * @author Tyler Chenhall
+ */
+public class SegmentSplitterTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsCoordinatesOutOfRange() {
+        SegmentTable t = new SegmentTable();
+        t.add(0, 0, 10, 10);
+        t.add(0, 10, 1 << 30, 0);
+        SegmentSplitter.split(t);
+    }
+
+    @Test
+    public void splitsSegmentsUpToTheLimit() {
+        int max = (1 << 30) - 1;
+        for (int seed = 0; seed < 20; seed++) {
+            Random r = new Random(seed);
+            SegmentTable t = new SegmentTable();
+            for (int i = 0; i < 30; i++) {
+                t.add(r.nextInt(2 * max + 1) - max, r.nextInt(2 * max + 1) - max,
+                        r.nextInt(2 * max + 1) - max, r.nextInt(2 * max + 1) - max);
+            }
+            SegmentTable pieces = SegmentSplitter.split(t);
+            assertNull(SegmentValidator.findCrossing(pieces));
+            for (int i = 0; i < pieces.size(); i++) {
+                assertTrue(nearSegment(t, pieces.getLeftX(i), pieces.getLeftY(i)));
+                assertTrue(nearSegment(t, pieces.getRightX(i), pieces.getRightY(i)));
+            }
+        }
+    }
+
+    /**
+     * Split small random sets of segments on small grids, where most meetings
+     * are degenerate, and compare with splitting each segment at every point
+     * where another one meets it
+     */
+    @Test
+    public void matchesPairwiseSplit() {
+        Random r = new Random(1);
+        for (int trial = 0; trial < 3000; trial++) {
+            int g = trial % 2 == 0 ? 8 : 30;
+            int n = 2 + r.nextInt(trial % 2 == 0 ? 6 : 20);
+            SegmentTable t = new SegmentTable();
+            for (int i = 0; i < n; i++) {
+                if (r.nextInt(6) == 0) {
+                    int x = r.nextInt(g);
+                    t.add(x, r.nextInt(g), x, r.nextInt(g));
+                } else {
+                    t.add(r.nextInt(g), r.nextInt(g), r.nextInt(g), r.nextInt(g));
+                }
+            }
+            SegmentTable pieces = SegmentSplitter.split(t);
+            Set<String> got = new HashSet<String>();
+            for (int i = 0; i < pieces.size(); i++) {
+                assertTrue("duplicate piece", got.add(key(pieces.getLeftX(i), pieces.getLeftY(i),
+                        pieces.getRightX(i), pieces.getRightY(i))));
+                assertTrue(nearSegment(t, pieces.getLeftX(i), pieces.getLeftY(i)));
+                assertTrue(nearSegment(t, pieces.getRightX(i), pieces.getRightY(i)));
+            }
+            Segment[] segs = pieces.toSegments();
+            for (int i = 0; i < segs.length; i++) {
+                for (int j = i + 1; j < segs.length; j++) {
+                    assertFalse("trial " + trial, SegmentValidatorTest.meetBadly(segs[i], segs[j]));
+                }
+            }
+            //when rounding the meeting points makes no new crossings, one
+            //split pass is all it takes, and its pieces are known exactly
+            Set<String> expected = pairwiseSplit(t);
+            if (isClean(expected)) {
+                assertEquals("trial " + trial, expected, got);
+            }
+        }
+    }
+
+    /**
+     * Split each segment of the table at the points where the others meet
+     * it, rounded half up to integers
+     * @return The pieces, as keys
+     */
+    private static Set<String> pairwiseSplit(SegmentTable t) {
+        Set<String> out = new HashSet<String>();
+        for (int i = 0; i < t.size(); i++) {
+            long x1 = t.getLeftX(i);
+            long y1 = t.getLeftY(i);
+            long dx = t.getRightX(i) - x1;
+            long dy = t.getRightY(i) - y1;
+            if (dx == 0 && dy == 0) {
+                continue;
+            }
+            //the meeting points along segment i, by their parameter (as a
+            //fraction over the common denominator 2^40)
+            TreeMap<Long, long[]> points = new TreeMap<Long, long[]>();
+            for (int j = 0; j < t.size(); j++) {
+                long u1 = t.getLeftX(j);
+                long v1 = t.getLeftY(j);
+                long ex = t.getRightX(j) - u1;
+                long ey = t.getRightY(j) - v1;
+                if (j == i || (ex == 0 && ey == 0)) {
+                    continue;
+                }
+                long den = dx * ey - dy * ex;
+                if (den == 0) {
+                    if (dx * (v1 - y1) - dy * (u1 - x1) != 0) {
+                        continue;
+                    }
+                    //collinear: the endpoints of j inside i
+                    long len = dx * dx + dy * dy;
+                    long[][] ends = {{u1, v1}, {u1 + ex, v1 + ey}};
+                    for (long[] e : ends) {
+                        long k = (e[0] - x1) * dx + (e[1] - y1) * dy;
+                        if (k > 0 && k < len) {
+                            points.put((k << 40) / len, e);
+                        }
+                    }
+                } else {
+                    long tn = (u1 - x1) * ey - (v1 - y1) * ex;
+                    long sn = (u1 - x1) * dy - (v1 - y1) * dx;
+                    if (den < 0) {
+                        den = -den;
+                        tn = -tn;
+                        sn = -sn;
+                    }
+                    if (tn <= 0 || tn >= den || sn < 0 || sn > den) {
+                        continue;
+                    }
+                    long px = x1 * den + dx * tn;
+                    long py = y1 * den + dy * tn;
+                    points.put((tn << 40) / den, new long[]{Math.floorDiv(2 * px + den, 2 * den),
+                        Math.floorDiv(2 * py + den, 2 * den)});
+                }
+            }
+            ArrayList<long[]> cuts = new ArrayList<long[]>(points.values());
+            cuts.add(new long[]{x1 + dx, y1 + dy});
+            long cx = x1;
+            long cy = y1;
+            for (long[] c : cuts) {
+                if (c[0] != cx || c[1] != cy) {
+                    out.add(key(cx, cy, c[0], c[1]));
+                }
+                cx = c[0];
+                cy = c[1];
+            }
+        }
+        return out;
+    }
+
+    private static boolean isClean(Set<String> pieces) {
+        ArrayList<Segment> segs = new ArrayList<Segment>();
+        for (String k : pieces) {
+            String[] c = k.split(",");
+            segs.add(SearchStructureTest.segment(Integer.parseInt(c[0]), Integer.parseInt(c[1]),
+                    Integer.parseInt(c[2]), Integer.parseInt(c[3])));
+        }
+        for (int i = 0; i < segs.size(); i++) {
+            for (int j = i + 1; j < segs.size(); j++) {
+                if (SegmentValidatorTest.meetBadly(segs.get(i), segs.get(j))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A key for a piece which does not depend on the order of its ends
+     */
+    private static String key(long x1, long y1, long x2, long y2) {
+        if (x1 > x2 || (x1 == x2 && y1 > y2)) {
+            return x2 + "," + y2 + "," + x1 + "," + y1;
+        }
+        return x1 + "," + y1 + "," + x2 + "," + y2;
+    }
+
+    /**
+     * Check whether the point is within a unit or two (allowing for rounding)
+     * of some segment of the table
+     */
+    static boolean nearSegment(SegmentTable t, double x, double y) {
+        for (int i = 0; i < t.size(); i++) {
+            double lx = t.getLeftX(i);
+            double ly = t.getLeftY(i);
+            double dx = t.getRightX(i) - lx;
+            double dy = t.getRightY(i) - ly;
+            double k = Math.max(0, Math.min(1, ((x - lx) * dx + (y - ly) * dy) / (dx * dx + dy * dy)));
+            if (Math.hypot(lx + k * dx - x, ly + k * dy - y) <= 2) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,89 @@
+package data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Tests SegmentValidator against a check of every pair of segments
+ *
+ * @author Tyler Chenhall
+ */
+public class SegmentValidatorTest {
+
+    @Test
+    public void matchesPairwiseCheck() {
+        Random r = new Random(1);
+        for (int trial = 0; trial < 20000; trial++) {
+            //few segments on a small grid, so most meetings are degenerate
+            int n = 2 + r.nextInt(trial % 3 == 0 ? 30 : 8);
+            int g = 3 + r.nextInt(8);
+            Segment[] segs = new Segment[n];
+            for (int i = 0; i < n; i++) {
+                Point p;
+                Point q;
+                do {
+                    p = new Point(r.nextInt(g), r.nextInt(g));
+                    q = new Point(r.nextInt(g), r.nextInt(g));
+                } while (i % 5 != 4 && p.equals(q));
+                segs[i] = new Segment(p, q);
+            }
+            boolean bad = false;
+            for (int i = 0; i < n && !bad; i++) {
+                for (int j = i + 1; j < n && !bad; j++) {
+                    bad = meetBadly(segs[i], segs[j]);
+                }
+            }
+            Segment[] pair = SegmentValidator.findCrossing(segs);
+            assertEquals("trial " + trial, bad, pair != null);
+            if (pair != null) {
+                assertNotSame(pair[0], pair[1]);
+                assertTrue(meetBadly(pair[0], pair[1]));
+            }
+        }
+    }
+
+    @Test
+    public void acceptsValidSets() {
+        for (int seed = 0; seed < 10; seed++) {
+            assertNull(SegmentValidator.findCrossing(TestSegments.grid(30, 5, seed)));
+        }
+    }
+
+    /**
+     * Check whether two segments share a point which is not a common
+     * endpoint (segments of zero length never do)
+     */
+    static boolean meetBadly(Segment a, Segment b) {
+        Point al = a.getLeftEndPoint();
+        Point ar = a.getRightEndPoint();
+        Point bl = b.getLeftEndPoint();
+        Point br = b.getRightEndPoint();
+        if (al.equals(ar) || bl.equals(br)) {
+            return false;
+        }
+        long o1 = orient(al, ar, bl);
+        long o2 = orient(al, ar, br);
+        long o3 = orient(bl, br, al);
+        long o4 = orient(bl, br, ar);
+        if (o1 == 0 && o2 == 0) {
+            //collinear: bad if the overlap has positive length
+            Point lo = al.compareTo(bl) > 0 ? al : bl;
+            Point hi = ar.compareTo(br) < 0 ? ar : br;
+            return lo.compareTo(hi) < 0;
+        }
+        if (o1 * o2 > 0 || o3 * o4 > 0) {
+            return false;
+        }
+        return !(al.equals(bl) || al.equals(br) || ar.equals(bl) || ar.equals(br));
+    }
+
+    private static long orient(Point a, Point b, Point p) {
+        return Long.signum((long) (b.getX() - a.getX()) * (p.getY() - a.getY())
+                - (long) (b.getY() - a.getY()) * (p.getX() - a.getX()));
+    }
+}
@@ -0,0 +1,71 @@
+package data;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Comparisons of maps built in different ways, which must have the same
+ * trapezoids and neighbor links
+ *
+ * @author Tyler Chenhall
+ */
+final class TestMaps {
+
+    private TestMaps() {
+    }
+
+    /**
+     * Describe each trapezoid of the map (the leaves of its search structure)
+     * by its bounds and the bounds of its neighbors, in sorted order, so that
+     * equal maps have equal descriptions
+     */
+    static List<String> shape(SearchStructure ss) {
+        IdentityHashMap<Trapezoid, Boolean> traps = new IdentityHashMap<Trapezoid, Boolean>();
+        collect(ss.getRoot(), traps, new IdentityHashMap<Node, Boolean>());
+        List<String> out = new ArrayList<String>();
+        for (Trapezoid t : traps.keySet()) {
+            out.add(key(t) + " | ul " + key(t.getUpperLeftNeighbor()) + " | ll " + key(t.getLowerLeftNeighbor())
+                    + " | ur " + key(t.getUpperRightNeighbor()) + " | lr " + key(t.getLowerRightNeighbor()));
+        }
+        Collections.sort(out);
+        return out;
+    }
+
+    private static void collect(Node n, IdentityHashMap<Trapezoid, Boolean> traps, IdentityHashMap<Node, Boolean> seen) {
+        if (seen.put(n, Boolean.TRUE) != null) {
+            return;
+        }
+        if (n instanceof Leaf) {
+            traps.put(((Leaf) n).getData(), Boolean.TRUE);
+        } else {
+            collect(n.getLeftChildNode(), traps, seen);
+            collect(n.getRightChildNode(), traps, seen);
+        }
+    }
+
+    private static String key(Trapezoid t) {
+        if (t == null) {
+            return "-";
+        }
+        return "[" + t.getLeftBound() + " / " + t.getRightBound() + " / " + t.getUpperBound() + " / " + t.getLowerBound() + "]";
+    }
+
+    /**
+     * Check that two maps have the same trapezoids and neighbor links, and
+     * that queries in the box [0, size]^2 find the same trapezoids
+     */
+    static void assertSameMap(SearchStructure expected, SearchStructure actual, int size, long seed) {
+        assertEquals(shape(expected), shape(actual));
+        Random r = new Random(seed);
+        for (int i = 0; i < 1000; i++) {
+            int x = r.nextInt(size + 1);
+            int y = r.nextInt(size + 1);
+            assertEquals("query " + x + " " + y, key(expected.findPointTrap(x, y)), key(actual.findPointTrap(x, y)));
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package data;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Random segment sets for the tests
+ *
+ * @author Tyler Chenhall
+ */
+final class TestSegments {
+
+    private TestSegments() {
+    }
+
+    /**
+     * Generate a valid (non-crossing) segment set: one segment inside each
+     * cell of a side x side grid of cells of the given size.  The cells are
+     * small, so many endpoints share an x-coordinate, and some segments are
+     * vertical.
+     *
+     * @param side The number of cells in each direction
+     * @param cell The size of a cell (at least 3)
+     * @param seed The random seed
+     * @return The segments
+     */
+    static Segment[] grid(int side, int cell, long seed) {
+        Random r = new Random(seed);
+        Segment[] segs = new Segment[side * side];
+        for (int i = 0; i < segs.length; i++) {
+            int x0 = (i % side) * cell;
+            int y0 = (i / side) * cell;
+            Point p;
+            Point q;
+            do {
+                p = new Point(x0 + 1 + r.nextInt(cell - 1), y0 + 1 + r.nextInt(cell - 1));
+                q = new Point(r.nextInt(5) == 0 ? p.getX() : x0 + 1 + r.nextInt(cell - 1), y0 + 1 + r.nextInt(cell - 1));
+            } while (p.equals(q));
+            segs[i] = new Segment(p, q);
+        }
+        return segs;
+    }
+
+    /**
+     * Generate a set of closed rectangles: one inside each cell of a side x
+     * side grid of cells of the given size, and (in about half the cells) a
+     * second one nested inside the first.  Each rectangle is four segments
+     * meeting at its corners.
+     *
+     * @param side The number of cells in each direction
+     * @param cell The size of a cell (at least 10)
+     * @param seed The random seed
+     * @return The segments
+     */
+    static Segment[] rectangles(int side, int cell, long seed) {
+        Random r = new Random(seed);
+        ArrayList<Segment> segs = new ArrayList<Segment>();
+        for (int i = 0; i < side * side; i++) {
+            int x0 = (i % side) * cell;
+            int y0 = (i / side) * cell;
+            int left = x0 + 1 + r.nextInt(2);
+            int right = x0 + cell - 1 - r.nextInt(2);
+            int bottom = y0 + 1 + r.nextInt(2);
+            int top = y0 + cell - 1 - r.nextInt(2);
+            addRectangle(segs, left, right, bottom, top);
+            if (r.nextBoolean()) {
+                addRectangle(segs, left + 2, right - 2, bottom + 2, top - 2);
+            }
+        }
+        return segs.toArray(new Segment[segs.size()]);
+    }
+
+    private static void addRectangle(ArrayList<Segment> segs, int left, int right, int bottom, int top) {
+        segs.add(new Segment(new Point(left, bottom), new Point(right, bottom)));
+        segs.add(new Segment(new Point(right, bottom), new Point(right, top)));
+        segs.add(new Segment(new Point(right, top), new Point(left, top)));
+        segs.add(new Segment(new Point(left, top), new Point(left, bottom)));
+    }
+
+    /**
+     * Generate a valid segment set by splitting random, crossing segments
+     * (a quarter of them vertical) where they meet.  The pieces meet at many
+     * common endpoints, and there are long vertical segments.
+     *
+     * @param n The number of segments to split
+     * @param size The coordinates are in [0, size)
+     * @param seed The random seed
+     * @return The pieces
+     */
+    static Segment[] split(int n, int size, long seed) {
+        Random r = new Random(seed);
+        SegmentTable t = new SegmentTable();
+        for (int i = 0; i < n; i++) {
+            int x = r.nextInt(size);
+            t.add(x, r.nextInt(size), i % 4 == 0 ? x : r.nextInt(size), r.nextInt(size));
+        }
+        return SegmentSplitter.split(t).toSegments();
+    }
+}
@@ -0,0 +1,175 @@
+package data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.IdentityHashMap;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Tests SearchStructure.queryWindow against a brute force check of every
+ * trapezoid and segment of the map
+ *
+ * @author Tyler Chenhall
+ */
+public class WindowQueryTest {
+
+    //margin by which a window is shrunk (grown) to decide what must (may) be reported
+    private static final double E = 1e-6;
+
+    /**
+     * A window across the middle of a vertical segment, with both of its
+     * endpoints outside, must still reach the trapezoids on its right
+     */
+    @Test
+    public void crossesVerticalSegments() {
+        Segment[] segs = {
+            SearchStructureTest.segment(4, 2, 4, 8),
+            SearchStructureTest.segment(4, 8, 6, 8),
+            SearchStructureTest.segment(4, 2, 6, 2)};
+        SearchStructure ss = new SearchStructure(segs, 0, 10, 0, 10, 1);
+        Result got = query(ss, 3, 3, 7, 7);
+        assertTrue(got.traps.containsKey(ss.findPointTrap(5, 5)));
+        assertTrue(got.traps.containsKey(ss.findPointTrap(7, 5)));
+        assertEquals(1, got.segs.size());
+    }
+
+    @Test
+    public void matchesBruteForce() {
+        for (int seed = 0; seed < 20; seed++) {
+            Segment[] segs = seed % 2 == 0 ? TestSegments.grid(10, 5, seed) : TestSegments.split(20, 50, seed);
+            SearchStructure ss = new SearchStructure(segs, 0, 50, 0, 50, seed);
+            PointLocator pl = ss.compile();
+            Random r = new Random(seed);
+            for (int w = 0; w < 200; w++) {
+                int x0 = r.nextInt(60) - 5;
+                int y0 = r.nextInt(60) - 5;
+                int x1 = x0 + r.nextInt(w % 4 == 0 ? 3 : 30);
+                int y1 = y0 + r.nextInt(w % 4 == 1 ? 3 : 30);
+                Result got = query(ss, x0, y0, x1, y1);
+                //the window is clipped to the bounding box
+                double cx0 = Math.max(x0, 0);
+                double cy0 = Math.max(y0, 0);
+                double cx1 = Math.min(x1, 50);
+                double cy1 = Math.min(y1, 50);
+                String window = "window " + x0 + "," + y0 + " " + x1 + "," + y1 + " seed " + seed;
+                for (int i = 0; i < pl.getTrapezoidCount(); i++) {
+                    Trapezoid t = pl.getTrapezoid(i);
+                    if (t.getLeftBound().getX() == t.getRightBound().getX()) {
+                        continue;
+                    }
+                    boolean in = got.traps.containsKey(t);
+                    if (cx1 - cx0 > 2 * E && cy1 - cy0 > 2 * E) {
+                        assertFalse(window + " misses " + t, !in && meets(t, cx0 + E, cy0 + E, cx1 - E, cy1 - E));
+                    }
+                    assertFalse(window + " reports " + t, in && !meets(t, cx0 - E, cy0 - E, cx1 + E, cy1 + E));
+                }
+                for (Segment s : segs) {
+                    boolean in = got.segs.containsKey(s);
+                    assertFalse(window + " misses " + s, !in && meets(s, cx0 + E, cy0 + E, cx1 - E, cy1 - E));
+                    assertFalse(window + " reports " + s, in && !meets(s, cx0 - E, cy0 - E, cx1 + E, cy1 + E));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void stopsWhenTheVisitorSaysSo() {
+        SearchStructure ss = new SearchStructure(TestSegments.grid(10, 5, 1), 0, 50, 0, 50, 1);
+        final int[] count = new int[1];
+        boolean done = ss.queryWindow(0, 0, 50, 50, new WindowVisitor() {
+            @Override
+            public boolean visitTrapezoid(Trapezoid t) {
+                return ++count[0] < 10;
+            }
+
+            @Override
+            public boolean visitSegment(Segment s) {
+                return true;
+            }
+        });
+        assertFalse(done);
+        assertEquals(10, count[0]);
+    }
+
+    @Test
+    public void clearsMarksWhenTheQueryNumbersRunOut() {
+        SearchStructure ss = new SearchStructure(TestSegments.grid(10, 5, 2), 0, 50, 0, 50, 2);
+        Result first = query(ss, 12, 8, 37, 41);
+        //use up the numbers, so the next query gets the same number as the first
+        while (ss.nextWindowQuery() != WindowQuery.MAX_QUERIES - 1) {
+        }
+        Result again = query(ss, 12, 8, 37, 41);
+        assertEquals(first.traps.keySet(), again.traps.keySet());
+        assertEquals(first.segs.keySet(), again.segs.keySet());
+        assertFalse(first.traps.isEmpty());
+    }
+
+    /**
+     * The trapezoids and segments reported by a query, with the number of
+     * times each was reported (which must be once)
+     */
+    private static final class Result implements WindowVisitor {
+
+        final IdentityHashMap<Trapezoid, Boolean> traps = new IdentityHashMap<Trapezoid, Boolean>();
+        final IdentityHashMap<Segment, Boolean> segs = new IdentityHashMap<Segment, Boolean>();
+
+        @Override
+        public boolean visitTrapezoid(Trapezoid t) {
+            assertTrue("reported twice: " + t, traps.put(t, Boolean.TRUE) == null);
+            return true;
+        }
+
+        @Override
+        public boolean visitSegment(Segment s) {
+            assertTrue("reported twice: " + s, segs.put(s, Boolean.TRUE) == null);
+            return true;
+        }
+    }
+
+    private static Result query(SearchStructure ss, int x0, int y0, int x1, int y1) {
+        Result r = new Result();
+        assertTrue(ss.queryWindow(x0, y0, x1, y1, r));
+        return r;
+    }
+
+    /**
+     * Check whether the (non sliver) trapezoid meets the window, by looking
+     * at many vertical cross sections
+     */
+    private static boolean meets(Trapezoid t, double x0, double y0, double x1, double y1) {
+        double a = Math.max(t.getLeftBound().getX(), x0);
+        double b = Math.min(t.getRightBound().getX(), x1);
+        for (int i = 0; i <= 64 && a <= b; i++) {
+            double x = a + (b - a) * i / 64;
+            if (Math.max(yAt(t.getLowerBound(), x), y0) <= Math.min(yAt(t.getUpperBound(), x), y1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean meets(Segment s, double x0, double y0, double x1, double y1) {
+        Point l = s.getLeftEndPoint();
+        Point r = s.getRightEndPoint();
+        double a = Math.max(l.getX(), x0);
+        double b = Math.min(r.getX(), x1);
+        if (a > b) {
+            return false;
+        }
+        if (l.getX() == r.getX()) {
+            return Math.max(l.getY(), y0) <= Math.min(r.getY(), y1);
+        }
+        double ya = yAt(s, a);
+        double yb = yAt(s, b);
+        return !(ya < y0 && yb < y0) && !(ya > y1 && yb > y1);
+    }
+
+    private static double yAt(Segment s, double x) {
+        Point l = s.getLeftEndPoint();
+        Point r = s.getRightEndPoint();
+        return l.getY() + (r.getY() - l.getY()) * (x - l.getX()) / (r.getX() - l.getX());
+    }
+}
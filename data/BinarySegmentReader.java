@@ -0,0 +1,222 @@
+package data;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a file in the binary segment format (see BinarySegmentWriter) one
+ * segment at a time.  The varints are decoded straight out of a memory mapped
+ * view of the file, through a sliding window so that files larger than one
+ * mapping can be read.
+ *
+ * @author Tyler Chenhall
+ */
+public final class BinarySegmentReader implements Closeable {
+
+    //size of the region of the file mapped at once
+    private static final long WINDOW = 1 << 28;
+
+    private final FileChannel channel;
+    private final long size;
+    //file offset of the start of the current window
+    private long start;
+    private MappedByteBuffer buffer;
+    private final int count;
+    private int read;
+    private final int minx;
+    private final int maxx;
+    private final int miny;
+    private final int maxy;
+    //the current segment
+    private int x1;
+    private int y1;
+    private int x2;
+    private int y2;
+
+    /**
+     * Open a binary segment file and read its header
+     * @param f The file to read
+     * @throws IOException If the file cannot be read or is not a binary segment file
+     */
+    public BinarySegmentReader(File f) throws IOException {
+        channel = new FileInputStream(f).getChannel();
+        try {
+            size = channel.size();
+            if (size < BinarySegmentWriter.HEADER_SIZE) {
+                throw new IOException("Not a binary segment file: " + f);
+            }
+            map();
+            if (buffer.getInt() != BinarySegmentWriter.MAGIC) {
+                throw new IOException("Not a binary segment file: " + f);
+            }
+            int version = buffer.getInt();
+            if (version != BinarySegmentWriter.VERSION) {
+                throw new IOException("Unsupported binary segment file version " + version + ": " + f);
+            }
+            count = buffer.getInt();
+            //every segment takes at least four bytes
+            if (count < 0 || count > (size - BinarySegmentWriter.HEADER_SIZE) / 4) {
+                throw new IOException("Corrupt binary segment file: bad count " + count);
+            }
+            minx = buffer.getInt();
+            maxx = buffer.getInt();
+            miny = buffer.getInt();
+            maxy = buffer.getInt();
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Check whether the file starts like a binary segment file
+     * @param f The file to check
+     * @return True if the file begins with the binary segment magic number
+     */
+    public static boolean isBinary(File f) {
+        try {
+            DataInputStream in = new DataInputStream(new FileInputStream(f));
+            try {
+                return in.readInt() == BinarySegmentWriter.MAGIC;
+            } finally {
+                in.close();
+            }
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Read the whole file into a new segment table
+     * @param f The file to read
+     * @return The table of segments, in file order
+     * @throws IOException If the file cannot be read or is corrupt
+     */
+    public static SegmentTable readTable(File f) throws IOException {
+        BinarySegmentReader in = new BinarySegmentReader(f);
+        try {
+            SegmentTable table = new SegmentTable(in.getCount());
+            while (in.next()) {
+                table.add(in.x1, in.y1, in.x2, in.y2);
+            }
+            return table;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Get the number of segments in the file
+     * @return The segment count
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Get the minimum x value over all segments (Integer.MAX_VALUE if empty)
+     * @return The minimum x value
+     */
+    public int getMinX() {
+        return minx;
+    }
+
+    /**
+     * Get the maximum x value over all segments (Integer.MIN_VALUE if empty)
+     * @return The maximum x value
+     */
+    public int getMaxX() {
+        return maxx;
+    }
+
+    /**
+     * Get the minimum y value over all segments (Integer.MAX_VALUE if empty)
+     * @return The minimum y value
+     */
+    public int getMinY() {
+        return miny;
+    }
+
+    /**
+     * Get the maximum y value over all segments (Integer.MIN_VALUE if empty)
+     * @return The maximum y value
+     */
+    public int getMaxY() {
+        return maxy;
+    }
+
+    /**
+     * Advance to the next segment
+     * @return True if a segment was read; false once all segments have been read
+     * @throws IOException If the file is truncated or corrupt
+     */
+    public boolean next() throws IOException {
+        if (read == count) {
+            return false;
+        }
+        if (buffer.remaining() < BinarySegmentWriter.MAX_RECORD_SIZE) {
+            start += buffer.position();
+            map();
+        }
+        x1 += BinarySegmentWriter.unzigzag(getVarint());
+        y1 += BinarySegmentWriter.unzigzag(getVarint());
+        x2 = x1 + BinarySegmentWriter.unzigzag(getVarint());
+        y2 = y1 + BinarySegmentWriter.unzigzag(getVarint());
+        read++;
+        return true;
+    }
+
+    public int getX1() {
+        return x1;
+    }
+
+    public int getY1() {
+        return y1;
+    }
+
+    public int getX2() {
+        return x2;
+    }
+
+    public int getY2() {
+        return y2;
+    }
+
+    /**
+     * Create a Segment for the current segment
+     * @return A new Segment
+     */
+    public Segment getSegment() {
+        return new Segment(new Point(x1, y1), new Point(x2, y2));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void map() throws IOException {
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW, size - start));
+    }
+
+    private int getVarint() throws IOException {
+        int v = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (!buffer.hasRemaining()) {
+                throw new EOFException("Truncated binary segment file after " + read + " of " + count + " segments");
+            }
+            byte b = buffer.get();
+            v |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return v;
+            }
+        }
+        throw new IOException("Corrupt binary segment file: varint too long");
+    }
+}
@@ -0,0 +1,161 @@
+package data;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes segments in the compact binary segment format, one segment at a time.
+ *
+ * The file starts with a header of big-endian ints: magic, version, the number
+ * of segments, and the bounding box (minx, maxx, miny, maxy).  Each segment
+ * then follows as four zigzag varints: x1 and y1 as the difference from the
+ * previous segment's x1 and y1, and x2 and y2 as the difference from x1 and y1.
+ * The endpoints are kept in the order they were given, so a text file converted
+ * to binary and back gives the same numbers.
+ *
+ * The header is written last (on close), so the number of segments does not
+ * need to be known in advance.
+ *
+ * @author Tyler Chenhall
+ */
+public final class BinarySegmentWriter implements Closeable {
+
+    public static final int MAGIC = 0x54534547;
+    public static final int VERSION = 1;
+    //magic, version, count and bounding box
+    static final int HEADER_SIZE = 7 * 4;
+    //four varints of at most 5 bytes each
+    static final int MAX_RECORD_SIZE = 20;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private int count;
+    private int lastX;
+    private int lastY;
+    private int minx = Integer.MAX_VALUE;
+    private int maxx = Integer.MIN_VALUE;
+    private int miny = Integer.MAX_VALUE;
+    private int maxy = Integer.MIN_VALUE;
+
+    /**
+     * Create (or replace) a binary segment file
+     * @param f The file to write
+     * @throws IOException If the file cannot be created
+     */
+    public BinarySegmentWriter(File f) throws IOException {
+        channel = new FileOutputStream(f).getChannel();
+        buffer = ByteBuffer.allocate(1 << 16);
+        //leave the header blank, it is filled in on close
+        buffer.position(HEADER_SIZE);
+    }
+
+    /**
+     * Write a whole segment table to a binary segment file
+     * @param segs The segments to write
+     * @param f The file to write
+     * @throws IOException If the file cannot be written
+     */
+    public static void write(SegmentTable segs, File f) throws IOException {
+        BinarySegmentWriter out = new BinarySegmentWriter(f);
+        try {
+            for (int i = 0; i < segs.size(); i++) {
+                out.add(segs.getLeftX(i), segs.getLeftY(i), segs.getRightX(i), segs.getRightY(i));
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Append a segment
+     * @param x1 The x-coordinate of the first endpoint
+     * @param y1 The y-coordinate of the first endpoint
+     * @param x2 The x-coordinate of the second endpoint
+     * @param y2 The y-coordinate of the second endpoint
+     * @throws IOException If the file cannot be written
+     */
+    public void add(int x1, int y1, int x2, int y2) throws IOException {
+        if (buffer.remaining() < MAX_RECORD_SIZE) {
+            flush();
+        }
+        //int differences may wrap around, but the reader undoes them the same way
+        putVarint(zigzag(x1 - lastX));
+        putVarint(zigzag(y1 - lastY));
+        putVarint(zigzag(x2 - x1));
+        putVarint(zigzag(y2 - y1));
+        lastX = x1;
+        lastY = y1;
+        minx = Math.min(minx, Math.min(x1, x2));
+        maxx = Math.max(maxx, Math.max(x1, x2));
+        miny = Math.min(miny, Math.min(y1, y2));
+        maxy = Math.max(maxy, Math.max(y1, y2));
+        count++;
+    }
+
+    /**
+     * Append a segment, left endpoint first
+     * @param s The segment to write
+     * @throws IOException If the file cannot be written
+     */
+    public void add(Segment s) throws IOException {
+        add(s.getLeftEndPoint().getX(), s.getLeftEndPoint().getY(),
+                s.getRightEndPoint().getX(), s.getRightEndPoint().getY());
+    }
+
+    /**
+     * Get the number of segments written so far
+     * @return The segment count
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Write the header and close the file
+     * @throws IOException If the file cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(count);
+            header.putInt(minx).putInt(maxx).putInt(miny).putInt(maxy);
+            header.flip();
+            long pos = 0;
+            while (header.hasRemaining()) {
+                pos += channel.write(header, pos);
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void putVarint(int v) {
+        while ((v & ~0x7f) != 0) {
+            buffer.put((byte) ((v & 0x7f) | 0x80));
+            v >>>= 7;
+        }
+        buffer.put((byte) v);
+    }
+
+    static int zigzag(int v) {
+        return (v << 1) ^ (v >> 31);
+    }
+
+    static int unzigzag(int v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+}
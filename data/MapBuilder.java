@@ -0,0 +1,220 @@
+package data;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Builds maps whose search structure depth is kept in check, for when the
+ * worst case query time matters more than the build time.
+ *
+ * The depth of the randomized construction is O(log n) with high probability,
+ * but an unlucky insertion order can still give a deep structure.  Following
+ * the Las Vegas scheme of de Berg (section 6.4), buildWithDepthBound checks
+ * the maximum depth of each map it builds and starts again with a new seed
+ * until the depth is within factor * ln n.  buildShallowest instead builds a
+ * number of maps in parallel and keeps the shallowest one.
+ *
+ * buildParallel is for build time instead: it splits the map into vertical
+ * slabs, builds them in parallel and stitches them together (see SlabBuilder).
+ * buildSweep needs no luck at all: it builds the same map with a plane sweep
+ * and a search structure of worst case O(log n) depth (see SweepBuilder).
+ *
+ * All of them take a seed, from which the seed of every attempt (or slab) is
+ * drawn in turn, so the result only depends on the segments and the arguments
+ * (not on the thread timing).
+ *
+ * @author Tyler Chenhall
+ */
+public final class MapBuilder {
+
+    //the longest path of our maps is usually 5 to 6.5 times ln n, so this only
+    //rejects the unlucky ones
+    public static final double DEFAULT_DEPTH_FACTOR = 8.0;
+    public static final int DEFAULT_MAX_ATTEMPTS = 8;
+
+    private MapBuilder() {
+    }
+
+    /**
+     * Builds a map with maximum depth at most DEFAULT_DEPTH_FACTOR * ln n,
+     * trying at most DEFAULT_MAX_ATTEMPTS seeds
+     * @see #buildWithDepthBound(Segment[], int, int, int, int, long, double, int)
+     */
+    public static SearchStructure buildWithDepthBound(Segment[] segs, int lx, int rx, int ly, int ry, long seed) {
+        return buildWithDepthBound(segs, lx, rx, ly, ry, seed, DEFAULT_DEPTH_FACTOR, DEFAULT_MAX_ATTEMPTS);
+    }
+
+    /**
+     * Builds maps with successive seeds until one has a maximum depth of at
+     * most factor * ln n.  If no attempt succeeds, the shallowest map is
+     * returned.
+     *
+     * @param segs The list of segments to build a search structure for
+     * @param lx initial left bound
+     * @param rx initial right bound
+     * @param ly initial lower bound
+     * @param ry initial upper bound
+     * @param seed The seed from which the seed of each attempt is drawn
+     * @param factor The allowed depth, as a multiple of ln n
+     * @param maxAttempts The maximum number of maps to build
+     * @return The first map within the depth bound, or else the shallowest map
+     */
+    public static SearchStructure buildWithDepthBound(Segment[] segs, int lx, int rx, int ly, int ry, long seed,
+            double factor, int maxAttempts) {
+        long t1 = System.nanoTime();
+        int bound = depthBound(segs, factor);
+        Random seeds = new Random(seed);
+        SearchStructure best = null;
+        int bestDepth = Integer.MAX_VALUE;
+        for (int i = 0; i < Math.max(maxAttempts, 1); i++) {
+            SearchStructure ss = new SearchStructure(segs, lx, rx, ly, ry, seeds.nextLong());
+            int depth = ss.getMaxDepth();
+            if (depth < bestDepth) {
+                best = ss;
+                bestDepth = depth;
+            }
+            if (depth <= bound) {
+                break;
+            }
+        }
+        best.setBuildTime(System.nanoTime() - t1);
+        return best;
+    }
+
+    /**
+     * Builds one map for each of the given number of seeds in the pool, and
+     * keeps the one with the smallest maximum depth (the earliest seed on a tie).
+     *
+     * @param segs The list of segments to build a search structure for
+     * @param lx initial left bound
+     * @param rx initial right bound
+     * @param ly initial lower bound
+     * @param ry initial upper bound
+     * @param seed The seed from which the seed of each candidate is drawn
+     * @param candidates The number of maps to build
+     * @param pool The pool to build the maps in
+     * @return The shallowest map
+     */
+    public static SearchStructure buildShallowest(Segment[] segs, int lx, int rx, int ly, int ry, long seed,
+            int candidates, ForkJoinPool pool) {
+        long t1 = System.nanoTime();
+        Random seeds = new Random(seed);
+        long[] candidateSeeds = new long[Math.max(candidates, 1)];
+        for (int i = 0; i < candidateSeeds.length; i++) {
+            candidateSeeds[i] = seeds.nextLong();
+        }
+        SearchStructure best = pool.invoke(new RaceTask(segs, lx, rx, ly, ry, candidateSeeds, 0, candidateSeeds.length));
+        best.setBuildTime(System.nanoTime() - t1);
+        return best;
+    }
+
+    /**
+     * Builds a map by cutting the bounding box into vertical slabs holding
+     * about the same number of segment endpoints, building the map of each
+     * slab in the pool, and stitching the slab maps together under a balanced
+     * layer of XNodes on the slab boundaries.  The result has the same
+     * trapezoids and neighbor links as the sequential construction, so every
+     * query gives the same answer.
+     *
+     * Segments which cross a slab boundary go into the map of every slab they
+     * overlap, so the total work grows with the number of such segments; a
+     * handful of slabs per core is usually best.
+     *
+     * @param segs The list of segments to build a search structure for
+     * @param lx initial left bound
+     * @param rx initial right bound
+     * @param ly initial lower bound
+     * @param ry initial upper bound
+     * @param seed The seed from which the seed of each slab is drawn
+     * @param slabs The number of slabs (fewer are used if the endpoints share x-coordinates)
+     * @param pool The pool to build the slabs in
+     * @return The stitched map
+     */
+    public static SearchStructure buildParallel(Segment[] segs, int lx, int rx, int ly, int ry, long seed,
+            int slabs, ForkJoinPool pool) {
+        return SlabBuilder.build(segs, lx, rx, ly, ry, seed, slabs, pool);
+    }
+
+    /**
+     * Builds a map with a left to right plane sweep over the sorted segment
+     * endpoints.  The result has the same trapezoids and neighbor links as
+     * the randomized construction, but the build is deterministic and the
+     * search structure has a worst case depth of O(log n) (about 2.5 log2 n),
+     * at the cost of O(n log n) nodes instead of an expected O(n).
+     *
+     * @param segs The list of segments to build a search structure for
+     * @param lx initial left bound
+     * @param rx initial right bound
+     * @param ly initial lower bound
+     * @param ry initial upper bound
+     * @return The swept map
+     */
+    public static SearchStructure buildSweep(Segment[] segs, int lx, int rx, int ly, int ry) {
+        return SweepBuilder.build(segs, lx, rx, ly, ry);
+    }
+
+    /**
+     * The depth allowed for the given segments
+     */
+    private static int depthBound(Segment[] segs, double factor) {
+        int n = 0;
+        for (int i = 0; i < segs.length; i++) {
+            if (segs[i] != null) {
+                n++;
+            }
+        }
+        return (int) (factor * Math.log(Math.max(n, 2)));
+    }
+
+    /**
+     * Builds the maps for a range of seeds, splitting the range in half until
+     * one seed is left, and returns the shallowest
+     */
+    @SuppressWarnings("serial")
+    private static final class RaceTask extends RecursiveTask<SearchStructure> {
+
+        private final Segment[] segs;
+        private final int lx;
+        private final int rx;
+        private final int ly;
+        private final int ry;
+        private final long[] seeds;
+        private final int from;
+        private final int to;
+        //depth of the map returned by compute
+        private int depth;
+
+        RaceTask(Segment[] segs, int lx, int rx, int ly, int ry, long[] seeds, int from, int to) {
+            this.segs = segs;
+            this.lx = lx;
+            this.rx = rx;
+            this.ly = ly;
+            this.ry = ry;
+            this.seeds = seeds;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected SearchStructure compute() {
+            if (to - from == 1) {
+                SearchStructure ss = new SearchStructure(segs, lx, rx, ly, ry, seeds[from]);
+                depth = ss.getMaxDepth();
+                return ss;
+            }
+            int mid = (from + to) >>> 1;
+            RaceTask left = new RaceTask(segs, lx, rx, ly, ry, seeds, from, mid);
+            RaceTask right = new RaceTask(segs, lx, rx, ly, ry, seeds, mid, to);
+            right.fork();
+            SearchStructure l = left.compute();
+            SearchStructure r = right.join();
+            if (right.depth < left.depth) {
+                depth = right.depth;
+                return r;
+            }
+            depth = left.depth;
+            return l;
+        }
+    }
+}
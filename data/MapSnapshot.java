@@ -0,0 +1,358 @@
+package data;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Random;
+
+/**
+ * Reads and writes a fully built SearchStructure as a binary file, so that a
+ * map only has to be constructed once.  Loading a snapshot is a single linear
+ * pass over a memory mapped file, with no geometry and no random choices.
+ *
+ * The file is a sequence of big-endian ints:
+ *      magic, version
+ *      minx, maxx, miny, maxy, number of segments in the map
+ *      #points, then x y for each point
+ *      #segments, then the left and right point index of each segment,
+ *          followed by the index of the upper and lower bounding box segments
+ *      #trapezoids, then for each trapezoid the left and right point index, the
+ *          upper and lower segment index, and the upper left, lower left, upper
+ *          right and lower right neighbor index (-1 for no neighbor)
+ *      #nodes, root node index, then for each node a tag byte (X_NODE, Y_NODE
+ *          or LEAF), the index of its point, segment or trapezoid, and (except
+ *          for leaves) the index of its left and right child
+ * Shared objects are written once, so the loaded map has the same sharing of
+ * points, segments and nodes as the one which was saved.
+ *
+ * @author Tyler Chenhall
+ */
+public final class MapSnapshot {
+
+    public static final int MAGIC = 0x544d4150;
+    public static final int VERSION = 1;
+
+    private static final byte X_NODE = 0;
+    private static final byte Y_NODE = 1;
+    private static final byte LEAF = 2;
+    //size of the region of the file mapped at once
+    private static final long WINDOW = 1 << 28;
+
+    private MapSnapshot() {
+    }
+
+    /**
+     * Write the map to the given file, replacing any existing file
+     * @param ss The map to save
+     * @param f The file to write
+     * @throws IOException If the file could not be written
+     */
+    public static void write(SearchStructure ss, File f) throws IOException {
+        //number every node, trapezoid, segment and point once
+        IdentityHashMap<Object, Integer> ids = new IdentityHashMap<Object, Integer>();
+        ArrayList<Node> nodes = new ArrayList<Node>();
+        ArrayList<Trapezoid> traps = new ArrayList<Trapezoid>();
+        ArrayList<Segment> segs = new ArrayList<Segment>();
+        ArrayList<Point> points = new ArrayList<Point>();
+        number(ss.getRoot(), nodes, ids);
+        for (int i = 0; i < nodes.size(); i++) {
+            Node n = nodes.get(i);
+            if (n instanceof Leaf) {
+                Trapezoid t = ((Leaf) n).getData();
+                number(t, traps, ids);
+                number(t.getUpperBound(), segs, ids);
+                number(t.getLowerBound(), segs, ids);
+                number(t.getLeftBound(), points, ids);
+                number(t.getRightBound(), points, ids);
+            } else {
+                if (n instanceof XNode) {
+                    number(((XNode) n).getData(), points, ids);
+                } else {
+                    number(((YNode) n).getData(), segs, ids);
+                }
+                number(n.getLeftChildNode(), nodes, ids);
+                number(n.getRightChildNode(), nodes, ids);
+            }
+        }
+        number(ss.getBoxTop(), segs, ids);
+        number(ss.getBoxBottom(), segs, ids);
+        for (int i = 0; i < segs.size(); i++) {
+            number(segs.get(i).getLeftEndPoint(), points, ids);
+            number(segs.get(i).getRightEndPoint(), points, ids);
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f), 1 << 16));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(ss.getMinX());
+            out.writeInt(ss.getMaxX());
+            out.writeInt(ss.getMinY());
+            out.writeInt(ss.getMaxY());
+            out.writeInt(ss.getSegmentCount());
+
+            out.writeInt(points.size());
+            for (int i = 0; i < points.size(); i++) {
+                out.writeInt(points.get(i).getX());
+                out.writeInt(points.get(i).getY());
+            }
+
+            out.writeInt(segs.size());
+            for (int i = 0; i < segs.size(); i++) {
+                out.writeInt(ids.get(segs.get(i).getLeftEndPoint()));
+                out.writeInt(ids.get(segs.get(i).getRightEndPoint()));
+            }
+            out.writeInt(ids.get(ss.getBoxTop()));
+            out.writeInt(ids.get(ss.getBoxBottom()));
+
+            out.writeInt(traps.size());
+            for (int i = 0; i < traps.size(); i++) {
+                Trapezoid t = traps.get(i);
+                out.writeInt(ids.get(t.getLeftBound()));
+                out.writeInt(ids.get(t.getRightBound()));
+                out.writeInt(ids.get(t.getUpperBound()));
+                out.writeInt(ids.get(t.getLowerBound()));
+                out.writeInt(id(t.getUpperLeftNeighbor(), ids));
+                out.writeInt(id(t.getLowerLeftNeighbor(), ids));
+                out.writeInt(id(t.getUpperRightNeighbor(), ids));
+                out.writeInt(id(t.getLowerRightNeighbor(), ids));
+            }
+
+            out.writeInt(nodes.size());
+            out.writeInt(0);
+            for (int i = 0; i < nodes.size(); i++) {
+                Node n = nodes.get(i);
+                if (n instanceof Leaf) {
+                    out.writeByte(LEAF);
+                    out.writeInt(ids.get(((Leaf) n).getData()));
+                } else {
+                    if (n instanceof XNode) {
+                        out.writeByte(X_NODE);
+                        out.writeInt(ids.get(((XNode) n).getData()));
+                    } else {
+                        out.writeByte(Y_NODE);
+                        out.writeInt(ids.get(((YNode) n).getData()));
+                    }
+                    out.writeInt(ids.get(n.getLeftChildNode()));
+                    out.writeInt(ids.get(n.getRightChildNode()));
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Give an object the next index of its list, unless it already has one
+     */
+    private static <T> void number(T o, ArrayList<T> list, IdentityHashMap<Object, Integer> ids) {
+        if (!ids.containsKey(o)) {
+            ids.put(o, list.size());
+            list.add(o);
+        }
+    }
+
+    /**
+     * Get the index of a trapezoid, or -1 if there is no trapezoid (or it is
+     * not part of the map)
+     */
+    private static int id(Trapezoid t, IdentityHashMap<Object, Integer> ids) {
+        Integer i = t == null ? null : ids.get(t);
+        return i == null ? -1 : i;
+    }
+
+    /**
+     * Check whether the file starts like a map snapshot
+     * @param f The file to check
+     * @return True if the file begins with the snapshot magic number
+     */
+    public static boolean isSnapshot(File f) {
+        try {
+            DataInputStream in = new DataInputStream(new FileInputStream(f));
+            try {
+                return in.readInt() == MAGIC;
+            } finally {
+                in.close();
+            }
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Load a map written by write.  The loaded map can be queried and changed
+     * like one built from segments; its build time is the time taken to load.
+     * @param f The snapshot file
+     * @return The loaded map
+     * @throws IOException If the file could not be read or is not a valid snapshot
+     */
+    public static SearchStructure read(File f) throws IOException {
+        long t1 = System.nanoTime();
+        FileInputStream stream = new FileInputStream(f);
+        try {
+            Input in = new Input(stream.getChannel());
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a map snapshot: " + f);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported map snapshot version " + version + ": " + f);
+            }
+            int minx = in.readInt();
+            int maxx = in.readInt();
+            int miny = in.readInt();
+            int maxy = in.readInt();
+            int segmentCount = in.readInt();
+
+            Point[] points = new Point[in.readCount(8)];
+            for (int i = 0; i < points.length; i++) {
+                points[i] = new Point(in.readInt(), in.readInt());
+            }
+
+            Segment[] segs = new Segment[in.readCount(8)];
+            for (int i = 0; i < segs.length; i++) {
+                segs[i] = new Segment(in.readIndex(points), in.readIndex(points));
+            }
+            Segment boxTop = in.readIndex(segs);
+            Segment boxBottom = in.readIndex(segs);
+
+            Trapezoid[] traps = new Trapezoid[in.readCount(32)];
+            int[] neighbors = new int[traps.length * 4];
+            for (int i = 0; i < traps.length; i++) {
+                traps[i] = new Trapezoid(in.readIndex(points), in.readIndex(points),
+                        in.readIndex(segs), in.readIndex(segs));
+                for (int j = 0; j < 4; j++) {
+                    neighbors[4 * i + j] = in.readInt();
+                }
+            }
+            for (int i = 0; i < traps.length; i++) {
+                traps[i].setUpperLeftNeighbor(neighbor(neighbors[4 * i], traps));
+                traps[i].setLowerLeftNeighbor(neighbor(neighbors[4 * i + 1], traps));
+                traps[i].setUpperRightNeighbor(neighbor(neighbors[4 * i + 2], traps));
+                traps[i].setLowerRightNeighbor(neighbor(neighbors[4 * i + 3], traps));
+            }
+
+            //create the nodes first, then link the children (which also
+            //restores the parent lists)
+            Node[] nodes = new Node[in.readCount(5)];
+            int root = in.readInt();
+            int[] children = new int[nodes.length * 2];
+            for (int i = 0; i < nodes.length; i++) {
+                byte tag = in.readByte();
+                if (tag == LEAF) {
+                    Trapezoid t = in.readIndex(traps);
+                    Leaf leaf = new Leaf(t);
+                    t.setLeaf(leaf);
+                    nodes[i] = leaf;
+                    children[2 * i] = -1;
+                } else {
+                    if (tag == X_NODE) {
+                        nodes[i] = new XNode(in.readIndex(points));
+                    } else if (tag == Y_NODE) {
+                        nodes[i] = new YNode(in.readIndex(segs));
+                    } else {
+                        throw new IOException("Corrupt map snapshot: bad node tag " + tag);
+                    }
+                    children[2 * i] = in.readInt();
+                    children[2 * i + 1] = in.readInt();
+                }
+            }
+            for (int i = 0; i < nodes.length; i++) {
+                if (children[2 * i] >= 0) {
+                    nodes[i].setLeftChildNode(index(children[2 * i], nodes));
+                    nodes[i].setRightChildNode(index(children[2 * i + 1], nodes));
+                }
+            }
+
+            SearchStructure ss = new SearchStructure(index(root, nodes), minx, maxx, miny, maxy,
+                    boxTop, boxBottom, segmentCount, new Random().nextLong());
+            ss.setBuildTime(System.nanoTime() - t1);
+            return ss;
+        } finally {
+            stream.close();
+        }
+    }
+
+    private static Trapezoid neighbor(int i, Trapezoid[] traps) throws IOException {
+        return i == -1 ? null : index(i, traps);
+    }
+
+    private static <T> T index(int i, T[] arr) throws IOException {
+        if (i < 0 || i >= arr.length) {
+            throw new IOException("Corrupt map snapshot: index " + i + " out of range");
+        }
+        return arr[i];
+    }
+
+    /**
+     * Reads primitives from a file channel through a sliding memory mapped
+     * window, so that files larger than one mapping can be read.
+     */
+    private static final class Input {
+
+        private final FileChannel channel;
+        private final long size;
+        //file offset of the start of the current window
+        private long start;
+        private MappedByteBuffer buffer;
+
+        Input(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+        }
+
+        int readInt() throws IOException {
+            ensure(4);
+            return buffer.getInt();
+        }
+
+        byte readByte() throws IOException {
+            ensure(1);
+            return buffer.get();
+        }
+
+        /**
+         * Read an array length, checking that the rest of the file has room
+         * for that many records of at least the given size (so a corrupt
+         * count fails here rather than in a huge allocation)
+         */
+        int readCount(int recordSize) throws IOException {
+            int n = readInt();
+            if (n < 0) {
+                throw new IOException("Corrupt map snapshot: negative count");
+            }
+            if ((long) n * recordSize > size - start - buffer.position()) {
+                throw new IOException("Corrupt map snapshot: " + n + " records do not fit in the rest of the file");
+            }
+            return n;
+        }
+
+        /**
+         * Read an index into the array and return the element
+         */
+        <T> T readIndex(T[] arr) throws IOException {
+            return index(readInt(), arr);
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer == null || buffer.remaining() < bytes) {
+                if (buffer != null) {
+                    start += buffer.position();
+                }
+                if (start + bytes > size) {
+                    throw new EOFException("Truncated map snapshot");
+                }
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW, size - start));
+            }
+        }
+    }
+}
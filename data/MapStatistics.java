@@ -0,0 +1,287 @@
+package data;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+/**
+ * A report on the shape and size of a built trapezoidal map: node counts,
+ * depth of the search structure, sharing of nodes between parents, an
+ * estimate of the memory the map retains, and the path lengths of any
+ * sampled queries (see SearchStructure.setPathSampling).
+ *
+ * The expected query path length of the randomized construction is
+ * O(log n), so a depth which is a large multiple of ln n means the random
+ * order was an unlucky one.
+ *
+ * The byte estimates assume a 64 bit JVM with compressed references (12 byte
+ * object headers, 4 byte references, 8 byte alignment), and leave out the
+ * Polygon and Line2D objects which are only created for display.
+ *
+ * @author Tyler Chenhall
+ */
+public final class MapStatistics {
+
+    //estimated object sizes in bytes
+    private static final int NODE_BYTES = 32;
+    private static final int ARRAY_LIST_BYTES = 24;
+    private static final int TRAPEZOID_BYTES = 56;
+    private static final int SEGMENT_BYTES = 24;
+    private static final int POINT_BYTES = 24;
+
+    private int segmentCount;
+    private int xNodes;
+    private int yNodes;
+    private int leaves;
+    private int trapezoids;
+    private int sharedNodes;
+    private int maxDepth;
+    private double averageLeafDepth;
+    private long nodeBytes;
+    private long trapezoidBytes;
+    private long segmentBytes;
+    private long sampledQueries;
+    private double averagePathLength;
+    private int maxPathLength;
+
+    private MapStatistics() {
+    }
+
+    /**
+     * Walk the map and collect its statistics
+     */
+    static MapStatistics of(SearchStructure ss) {
+        MapStatistics stats = new MapStatistics();
+        stats.segmentCount = ss.getSegmentCount();
+        stats.sampledQueries = ss.getSampledQueries();
+        if (stats.sampledQueries > 0) {
+            stats.averagePathLength = ss.getSampledPathSteps() / (double) stats.sampledQueries;
+        }
+        stats.maxPathLength = ss.getMaxSampledPath();
+
+        //number the nodes and count the edges into each of them
+        IdentityHashMap<Node, Integer> ids = new IdentityHashMap<Node, Integer>();
+        ArrayList<Node> nodes = new ArrayList<Node>();
+        ArrayList<Integer> inDegree = new ArrayList<Integer>();
+        ids.put(ss.getRoot(), 0);
+        nodes.add(ss.getRoot());
+        inDegree.add(0);
+        for (int i = 0; i < nodes.size(); i++) {
+            Node n = nodes.get(i);
+            if (n instanceof Leaf) {
+                continue;
+            }
+            Node[] children = {n.getLeftChildNode(), n.getRightChildNode()};
+            for (int j = 0; j < children.length; j++) {
+                Integer id = ids.get(children[j]);
+                if (id == null) {
+                    ids.put(children[j], nodes.size());
+                    nodes.add(children[j]);
+                    inDegree.add(1);
+                } else {
+                    inDegree.set(id, inDegree.get(id) + 1);
+                }
+            }
+        }
+
+        //longest path from the root to each node, visiting the nodes in
+        //topological order (a node once all edges into it have been seen)
+        int[] remaining = new int[nodes.size()];
+        int[] depth = new int[nodes.size()];
+        for (int i = 0; i < remaining.length; i++) {
+            remaining[i] = inDegree.get(i);
+            if (remaining[i] > 1) {
+                stats.sharedNodes++;
+            }
+        }
+        int[] queue = new int[nodes.size()];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = 0;
+        long leafDepths = 0;
+        IdentityHashMap<Object, Boolean> seen = new IdentityHashMap<Object, Boolean>();
+        while (head < tail) {
+            int i = queue[head++];
+            Node n = nodes.get(i);
+            stats.nodeBytes += NODE_BYTES + ARRAY_LIST_BYTES + arrayBytes(n.getParentNodes().size());
+            if (n instanceof Leaf) {
+                stats.leaves++;
+                leafDepths += depth[i];
+                stats.maxDepth = Math.max(stats.maxDepth, depth[i]);
+                Trapezoid t = ((Leaf) n).getData();
+                if (seen.put(t, Boolean.TRUE) == null) {
+                    stats.trapezoids++;
+                    stats.trapezoidBytes += TRAPEZOID_BYTES;
+                }
+                stats.segmentBytes += segmentBytes(t.getUpperBound(), seen) + segmentBytes(t.getLowerBound(), seen)
+                        + pointBytes(t.getLeftBound(), seen) + pointBytes(t.getRightBound(), seen);
+                continue;
+            }
+            if (n instanceof XNode) {
+                stats.xNodes++;
+                stats.segmentBytes += pointBytes(((XNode) n).getData(), seen);
+            } else {
+                stats.yNodes++;
+                stats.segmentBytes += segmentBytes(((YNode) n).getData(), seen);
+            }
+            Node[] children = {n.getLeftChildNode(), n.getRightChildNode()};
+            for (int j = 0; j < children.length; j++) {
+                int c = ids.get(children[j]);
+                depth[c] = Math.max(depth[c], depth[i] + 1);
+                if (--remaining[c] == 0) {
+                    queue[tail++] = c;
+                }
+            }
+        }
+        if (stats.leaves > 0) {
+            stats.averageLeafDepth = leafDepths / (double) stats.leaves;
+        }
+        return stats;
+    }
+
+    /**
+     * Size of the array behind an ArrayList which started with capacity 1
+     * and grew to hold the given number of elements
+     */
+    private static long arrayBytes(int size) {
+        int capacity = 1;
+        while (capacity < size) {
+            capacity = Math.max(capacity + 1, capacity + (capacity >> 1));
+        }
+        return (16 + 4L * capacity + 7) & ~7L;
+    }
+
+    private static long segmentBytes(Segment s, IdentityHashMap<Object, Boolean> seen) {
+        if (seen.put(s, Boolean.TRUE) != null) {
+            return 0;
+        }
+        return SEGMENT_BYTES + pointBytes(s.getLeftEndPoint(), seen) + pointBytes(s.getRightEndPoint(), seen);
+    }
+
+    private static long pointBytes(Point p, IdentityHashMap<Object, Boolean> seen) {
+        return seen.put(p, Boolean.TRUE) == null ? POINT_BYTES : 0;
+    }
+
+    /**
+     * Get the number of segments in the map
+     * @return The segment count
+     */
+    public int getSegmentCount() {
+        return segmentCount;
+    }
+
+    public int getXNodeCount() {
+        return xNodes;
+    }
+
+    public int getYNodeCount() {
+        return yNodes;
+    }
+
+    public int getLeafCount() {
+        return leaves;
+    }
+
+    public int getTrapezoidCount() {
+        return trapezoids;
+    }
+
+    /**
+     * Get the number of nodes which can be reached from more than one parent
+     * @return The number of shared nodes
+     */
+    public int getSharedNodeCount() {
+        return sharedNodes;
+    }
+
+    /**
+     * Get the length of the longest path from the root to a leaf, which bounds
+     * the number of steps of any query
+     * @return The maximum depth
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Get the average over all leaves of the longest path to the leaf
+     * @return The average leaf depth
+     */
+    public double getAverageLeafDepth() {
+        return averageLeafDepth;
+    }
+
+    /**
+     * Get the estimated bytes retained by the nodes of the search structure,
+     * including their parent lists
+     * @return The estimated bytes
+     */
+    public long getNodeBytes() {
+        return nodeBytes;
+    }
+
+    /**
+     * Get the estimated bytes retained by the trapezoids
+     * @return The estimated bytes
+     */
+    public long getTrapezoidBytes() {
+        return trapezoidBytes;
+    }
+
+    /**
+     * Get the estimated bytes retained by the segments and points
+     * @return The estimated bytes
+     */
+    public long getSegmentBytes() {
+        return segmentBytes;
+    }
+
+    /**
+     * Get the estimated bytes retained by the whole map
+     * @return The estimated bytes
+     */
+    public long getTotalBytes() {
+        return nodeBytes + trapezoidBytes + segmentBytes;
+    }
+
+    /**
+     * Get the number of queries whose path length was sampled
+     * @return The number of sampled queries
+     */
+    public long getSampledQueries() {
+        return sampledQueries;
+    }
+
+    /**
+     * Get the average number of nodes visited by the sampled queries
+     * @return The average path length, or 0 if nothing was sampled
+     */
+    public double getAveragePathLength() {
+        return averagePathLength;
+    }
+
+    /**
+     * Get the largest number of nodes visited by a sampled query
+     * @return The maximum path length, or 0 if nothing was sampled
+     */
+    public int getMaxPathLength() {
+        return maxPathLength;
+    }
+
+    @Override
+    public String toString() {
+        double ln = Math.log(Math.max(segmentCount, 2));
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("segments: %d, trapezoids: %d%n", segmentCount, trapezoids));
+        sb.append(String.format("nodes: %d x, %d y, %d leaves, %d shared%n", xNodes, yNodes, leaves, sharedNodes));
+        sb.append(String.format("depth: max %d (%.1f ln n), average leaf %.1f (%.1f ln n)%n",
+                maxDepth, maxDepth / ln, averageLeafDepth, averageLeafDepth / ln));
+        sb.append(String.format("memory: %.1f MB (nodes %.1f, trapezoids %.1f, segments %.1f), %.0f bytes per segment%n",
+                getTotalBytes() / 1e6, nodeBytes / 1e6, trapezoidBytes / 1e6, segmentBytes / 1e6,
+                getTotalBytes() / (double) Math.max(segmentCount, 1)));
+        if (sampledQueries > 0) {
+            sb.append(String.format("sampled queries: %d, path length average %.1f, max %d%n",
+                    sampledQueries, averagePathLength, maxPathLength));
+        }
+        return sb.toString();
+    }
+}
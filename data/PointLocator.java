@@ -0,0 +1,682 @@
+package data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * An immutable, array-encoded copy of the search structure of a finished
+ * trapezoidal map. The Node/XNode/YNode/Leaf graph is flattened into primitive
+ * arrays so that a query is a simple loop over ints (no virtual dispatch and no
+ * object hops).
+ *
+ * Each inner node occupies NODE_SIZE consecutive ints of the node array:
+ *      [left child, right child, c0, c1, c2, c3]
+ * An x-node stores its point in (c0, c1). A y-node stores its segment as
+ * (lx, ly, rx, ry). Leaves are not stored as nodes at all; a child index
+ * which is negative refers to the trapezoid with id ~child.
+ *
+ * Nodes are numbered breadth first from the root, so the top levels of the
+ * structure (visited by every query) are packed together.
+ *
+ * Each trapezoid is also labeled with the face of the segment arrangement it
+ * lies in (the connected region of the plane minus the segments).  Neighboring
+ * trapezoids meet at a wall rather than at a segment, so the faces are the
+ * connected components of the neighbor links, which are found once with a
+ * union-find pass when the locator is built.  The face of a query point is then
+ * a single array lookup after locate.
+ *
+ * In the same way, each trapezoid keeps the ids of its upper and lower
+ * segments, so the segment directly above or below a query point (the first
+ * segment hit by a vertical ray) also costs one lookup after locate.  The
+ * segments of the bounding box are not reported; NO_SEGMENT is returned
+ * instead.
+ *
+ * The locator is a snapshot: it reflects the SearchStructure at the time
+ * SearchStructure.compile() was called. All of its fields are final and the
+ * arrays are never written after construction, so any number of threads may
+ * query one locator concurrently without synchronization (the locate methods
+ * only read the arrays, never the Trapezoid objects).
+ *
+ * @author Tyler Chenhall
+ */
+public final class PointLocator {
+
+    //segment id returned when only the bounding box lies above or below a point
+    public static final int NO_SEGMENT = -1;
+
+    static final byte X_NODE = 0;
+    static final byte Y_NODE = 1;
+    static final int NODE_SIZE = 6;
+    //batches smaller than this are answered in the given order
+    static final int SORT_THRESHOLD = 256;
+    //the batch sort uses at most a 2^8 x 2^8 grid, aiming for this many queries per cell
+    static final int MAX_HILBERT_ORDER = 8;
+    static final int CELL_OCCUPANCY = 16;
+    //parallel batches are not split into pieces smaller than this
+    static final int PARALLEL_GRAIN = 1 << 14;
+
+    private final byte[] tags;
+    private final int[] nodes;
+    private final int root;
+    private final Trapezoid[] traps;
+    //face id of each trapezoid, and the trapezoids of face f in
+    //faceTraps[faceStart[f]] to faceTraps[faceStart[f + 1] - 1]
+    private final int[] faces;
+    private final int[] faceStart;
+    private final int[] faceTraps;
+    //segment ids of the upper and lower bound of each trapezoid
+    private final Segment[] segments;
+    private final int[] upper;
+    private final int[] lower;
+
+    /**
+     * Flattens the search structure below the given root node.
+     *
+     * @param top The root of the search structure to compile
+     * @param boxTop The upper segment of the bounding box
+     * @param boxBottom The lower segment of the bounding box
+     * @param segOrder The segments of the map, in the order giving their ids;
+     *      or null to number them in the order they are found
+     */
+    PointLocator(Node top, Segment boxTop, Segment boxBottom, Segment[] segOrder) {
+        //number the inner nodes and the trapezoids in breadth first order
+        IdentityHashMap<Node, Integer> ids = new IdentityHashMap<Node, Integer>();
+        ArrayList<Node> order = new ArrayList<Node>();
+        ArrayList<Trapezoid> trapList = new ArrayList<Trapezoid>();
+        root = number(top, ids, order, trapList);
+        for (int i = 0; i < order.size(); i++) {
+            Node n = order.get(i);
+            number(n.getLeftChildNode(), ids, order, trapList);
+            number(n.getRightChildNode(), ids, order, trapList);
+        }
+
+        //fill in the arrays
+        tags = new byte[order.size()];
+        nodes = new int[order.size() * NODE_SIZE];
+        for (int i = 0; i < order.size(); i++) {
+            Node n = order.get(i);
+            int base = i * NODE_SIZE;
+            nodes[base] = ids.get(n.getLeftChildNode());
+            nodes[base + 1] = ids.get(n.getRightChildNode());
+            if (n instanceof XNode) {
+                Point p = ((XNode) n).getData();
+                tags[i] = X_NODE;
+                nodes[base + 2] = p.getX();
+                nodes[base + 3] = p.getY();
+            } else {
+                Segment s = ((YNode) n).getData();
+                tags[i] = Y_NODE;
+                nodes[base + 2] = s.getLeftEndPoint().getX();
+                nodes[base + 3] = s.getLeftEndPoint().getY();
+                nodes[base + 4] = s.getRightEndPoint().getX();
+                nodes[base + 5] = s.getRightEndPoint().getY();
+            }
+        }
+        traps = trapList.toArray(new Trapezoid[trapList.size()]);
+
+        //union the trapezoids with their neighbors, then number the components
+        int[] parent = new int[traps.length];
+        for (int i = 0; i < parent.length; i++) {
+            parent[i] = i;
+        }
+        for (int i = 0; i < traps.length; i++) {
+            //each link is seen from both ends, so the right neighbors are enough
+            union(parent, i, traps[i].getUpperRightNeighbor(), ids);
+            union(parent, i, traps[i].getLowerRightNeighbor(), ids);
+        }
+        faces = new int[traps.length];
+        int[] label = new int[traps.length];
+        int faceCount = 0;
+        for (int i = 0; i < traps.length; i++) {
+            int r = find(parent, i);
+            if (label[r] == 0) {
+                label[r] = ++faceCount;
+            }
+            faces[i] = label[r] - 1;
+        }
+        faceStart = new int[faceCount + 1];
+        for (int i = 0; i < faces.length; i++) {
+            faceStart[faces[i] + 1]++;
+        }
+        for (int f = 0; f < faceCount; f++) {
+            faceStart[f + 1] += faceStart[f];
+        }
+        faceTraps = new int[traps.length];
+        int[] next = Arrays.copyOf(faceStart, faceCount);
+        for (int i = 0; i < faces.length; i++) {
+            faceTraps[next[faces[i]]++] = i;
+        }
+
+        //number the segments, and record the bounds of each trapezoid
+        IdentityHashMap<Segment, Integer> segIds = new IdentityHashMap<Segment, Integer>();
+        ArrayList<Segment> segList = new ArrayList<Segment>();
+        segIds.put(boxTop, NO_SEGMENT);
+        segIds.put(boxBottom, NO_SEGMENT);
+        if (segOrder != null) {
+            for (int i = 0; i < segOrder.length; i++) {
+                if (segOrder[i] != null) {
+                    segIds.put(segOrder[i], i);
+                }
+            }
+            segList.addAll(Arrays.asList(segOrder));
+        }
+        upper = new int[traps.length];
+        lower = new int[traps.length];
+        for (int i = 0; i < traps.length; i++) {
+            upper[i] = segmentId(traps[i].getUpperBound(), segIds, segList, segOrder != null);
+            lower[i] = segmentId(traps[i].getLowerBound(), segIds, segList, segOrder != null);
+        }
+        segments = segList.toArray(new Segment[segList.size()]);
+    }
+
+    private static int segmentId(Segment s, IdentityHashMap<Segment, Integer> segIds, ArrayList<Segment> segList,
+            boolean fixed) {
+        Integer id = segIds.get(s);
+        if (id != null) {
+            return id;
+        }
+        if (fixed) {
+            throw new IllegalArgumentException("Segment " + s + " of the map is not in the given segment array");
+        }
+        segIds.put(s, segList.size());
+        segList.add(s);
+        return segList.size() - 1;
+    }
+
+    /**
+     * Assign an id to a node the first time it is seen. Inner nodes get
+     * non-negative ids and are queued for processing; leaves get the negative
+     * id ~(trapezoid id).
+     *
+     * @return The id of the node
+     */
+    private static int number(Node n, IdentityHashMap<Node, Integer> ids, ArrayList<Node> order, ArrayList<Trapezoid> trapList) {
+        Integer id = ids.get(n);
+        if (id != null) {
+            return id;
+        }
+        int val;
+        if (n instanceof Leaf) {
+            val = ~trapList.size();
+            trapList.add(((Leaf) n).getData());
+        } else {
+            val = order.size();
+            order.add(n);
+        }
+        ids.put(n, val);
+        return val;
+    }
+
+    private static void union(int[] parent, int i, Trapezoid neighbor, IdentityHashMap<Node, Integer> ids) {
+        if (neighbor == null) {
+            return;
+        }
+        Integer id = ids.get(neighbor.getLeaf());
+        if (id == null) {
+            return;
+        }
+        int a = find(parent, i);
+        int b = find(parent, ~id);
+        //the smaller root wins, so the labels do not depend on the link order
+        if (a < b) {
+            parent[b] = a;
+        } else {
+            parent[a] = b;
+        }
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            //path halving
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    /**
+     * Find the id of the trapezoid containing the query point. The decisions
+     * made at each node are identical to SearchStructure.findPoint.
+     *
+     * @param x The x-coordinate of the query point
+     * @param y The y-coordinate of the query point
+     * @return The id of the trapezoid containing the point
+     */
+    public int locate(int x, int y) {
+        final byte[] tags = this.tags;
+        final int[] nodes = this.nodes;
+        int n = root;
+        while (n >= 0) {
+            int base = n * NODE_SIZE;
+            boolean left;
+            if (tags[n] == X_NODE) {
+                //same order as Point.compareTo
+                int px = nodes[base + 2];
+                left = x < px || (x == px && y < nodes[base + 3]);
+            } else {
+                left = SearchStructure.isPointAboveLine(x, y, nodes[base + 2], nodes[base + 3],
+                        nodes[base + 4], nodes[base + 5]);
+            }
+            n = left ? nodes[base] : nodes[base + 1];
+        }
+        return ~n;
+    }
+
+    /**
+     * Locate a batch of query points. The result for the point (xs[i], ys[i])
+     * is stored in out[i].
+     *
+     * Large batches are not answered in the order given. The queries are first
+     * sorted along a Hilbert curve, so that consecutive queries are close
+     * together and follow mostly the same path through the structure, and the
+     * results are then scattered back into the caller's order.
+     *
+     * @param xs The x-coordinates of the query points
+     * @param ys The y-coordinates of the query points
+     * @param out The array to fill with trapezoid ids
+     */
+    public void locate(int[] xs, int[] ys, int[] out) {
+        locate(xs, ys, out, 0, xs.length);
+    }
+
+    /**
+     * Locate the query points with indices from (inclusive) to to (exclusive).
+     * See locate(int[], int[], int[]).
+     *
+     * @param xs The x-coordinates of the query points
+     * @param ys The y-coordinates of the query points
+     * @param out The array to fill with trapezoid ids
+     * @param from The first index to locate
+     * @param to One past the last index to locate
+     */
+    public void locate(int[] xs, int[] ys, int[] out, int from, int to) {
+        if (ys.length < to || out.length < to) {
+            throw new IllegalArgumentException("Coordinate and output arrays must cover the query range");
+        }
+        int count = to - from;
+        if (count < SORT_THRESHOLD) {
+            for (int i = from; i < to; i++) {
+                out[i] = locate(xs[i], ys[i]);
+            }
+            return;
+        }
+
+        //find the extent of the queries so the curve covers them evenly
+        int minx = Integer.MAX_VALUE;
+        int maxx = Integer.MIN_VALUE;
+        int miny = Integer.MAX_VALUE;
+        int maxy = Integer.MIN_VALUE;
+        for (int i = from; i < to; i++) {
+            minx = Math.min(minx, xs[i]);
+            maxx = Math.max(maxx, xs[i]);
+            miny = Math.min(miny, ys[i]);
+            maxy = Math.max(maxy, ys[i]);
+        }
+        //use a grid fine enough that each cell holds only a handful of queries
+        int order = 1;
+        while (order < MAX_HILBERT_ORDER && (1L << (2 * order)) * CELL_OCCUPANCY < count) {
+            order++;
+        }
+        double scalex = (1 << order) / ((double) maxx - minx + 1);
+        double scaley = (1 << order) / ((double) maxy - miny + 1);
+
+        int[] curve = new int[count];
+        for (int i = from; i < to; i++) {
+            int hx = (int) ((xs[i] - (double) minx) * scalex);
+            int hy = (int) ((ys[i] - (double) miny) * scaley);
+            curve[i - from] = hilbertIndex(hx, hy, order);
+        }
+        int[] sorted = sortByCurve(curve, 1 << (2 * order));
+
+        for (int k = 0; k < count; k++) {
+            int i = from + sorted[k];
+            out[i] = locate(xs[i], ys[i]);
+        }
+    }
+
+    /**
+     * Locate a batch of query points using the given fork/join pool. The batch
+     * is split recursively into pieces of at least PARALLEL_GRAIN queries,
+     * each of which is answered as in locate(int[], int[], int[]).
+     *
+     * @param xs The x-coordinates of the query points
+     * @param ys The y-coordinates of the query points
+     * @param out The array to fill with trapezoid ids
+     * @param pool The pool to run the queries on
+     */
+    public void locateParallel(int[] xs, int[] ys, int[] out, ForkJoinPool pool) {
+        if (ys.length < xs.length || out.length < xs.length) {
+            throw new IllegalArgumentException("Coordinate and output arrays must cover the query range");
+        }
+        pool.invoke(new LocateTask(xs, ys, out, 0, xs.length));
+    }
+
+    /**
+     * Locate a batch of query points by splitting it into the given number of
+     * equal pieces and running each piece on the executor. The call returns
+     * once every piece has completed.
+     *
+     * @param xs The x-coordinates of the query points
+     * @param ys The y-coordinates of the query points
+     * @param out The array to fill with trapezoid ids
+     * @param executor The executor to run the pieces on
+     * @param parts The number of pieces to split the batch into
+     * @throws InterruptedException If interrupted while waiting for the pieces
+     */
+    public void locateParallel(final int[] xs, final int[] ys, final int[] out, Executor executor, int parts) throws InterruptedException {
+        if (ys.length < xs.length || out.length < xs.length) {
+            throw new IllegalArgumentException("Coordinate and output arrays must cover the query range");
+        }
+        parts = Math.max(1, Math.min(parts, xs.length));
+        final CountDownLatch done = new CountDownLatch(parts);
+        final RuntimeException[] failure = new RuntimeException[1];
+        for (int p = 0; p < parts; p++) {
+            final int from = (int) ((long) xs.length * p / parts);
+            final int to = (int) ((long) xs.length * (p + 1) / parts);
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        locate(xs, ys, out, from, to);
+                    } catch (RuntimeException ex) {
+                        synchronized (failure) {
+                            failure[0] = ex;
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        done.await();
+        synchronized (failure) {
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+        }
+    }
+
+    /**
+     * Fork/join task answering the queries in [from, to)
+     */
+    @SuppressWarnings("serial")
+    private final class LocateTask extends RecursiveAction {
+
+        private final int[] xs;
+        private final int[] ys;
+        private final int[] out;
+        private final int from;
+        private final int to;
+
+        LocateTask(int[] xs, int[] ys, int[] out, int from, int to) {
+            this.xs = xs;
+            this.ys = ys;
+            this.out = out;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from < 2 * PARALLEL_GRAIN) {
+                locate(xs, ys, out, from, to);
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new LocateTask(xs, ys, out, from, mid), new LocateTask(xs, ys, out, mid, to));
+            }
+        }
+    }
+
+    /**
+     * Returns the permutation which sorts the given curve positions, using a
+     * single counting sort pass (the curve has at most 2^16 cells).
+     *
+     * @param curve Curve positions in [0, cells)
+     * @param cells The number of cells along the curve
+     * @return The indices of curve in sorted order
+     */
+    private static int[] sortByCurve(int[] curve, int cells) {
+        int[] counts = new int[cells + 1];
+        for (int i = 0; i < curve.length; i++) {
+            counts[curve[i] + 1]++;
+        }
+        for (int c = 0; c < cells; c++) {
+            counts[c + 1] += counts[c];
+        }
+        int[] sorted = new int[curve.length];
+        for (int i = 0; i < curve.length; i++) {
+            sorted[counts[curve[i]]++] = i;
+        }
+        return sorted;
+    }
+
+    /**
+     * Computes the distance along a Hilbert curve of the given order of the
+     * cell (x, y). Both coordinates must lie in [0, 2^order).
+     *
+     * @return The position of the cell along the curve
+     */
+    static int hilbertIndex(int x, int y, int order) {
+        int d = 0;
+        for (int s = 1 << (order - 1); s > 0; s >>= 1) {
+            int rx = (x & s) != 0 ? 1 : 0;
+            int ry = (y & s) != 0 ? 1 : 0;
+            d += s * s * ((3 * rx) ^ ry);
+            //rotate the quadrant so the curve stays continuous
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = s - 1 - x;
+                    y = s - 1 - y;
+                }
+                int t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return d;
+    }
+
+    /**
+     * Find the trapezoid containing the query point.
+     *
+     * @param p The point to query
+     * @return The trapezoid containing the point
+     */
+    public Trapezoid findPointTrap(Point p) {
+        return traps[locate(p.getX(), p.getY())];
+    }
+
+    /**
+     * Find the trapezoid containing the point (x, y), without allocating.
+     *
+     * @param x The x-coordinate of the query point
+     * @param y The y-coordinate of the query point
+     * @return The trapezoid containing the point
+     */
+    public Trapezoid findPointTrap(int x, int y) {
+        return traps[locate(x, y)];
+    }
+
+    /**
+     * Get the trapezoid with the given id.
+     *
+     * @param id The trapezoid id, as returned by locate
+     * @return The trapezoid
+     */
+    public Trapezoid getTrapezoid(int id) {
+        return traps[id];
+    }
+
+    /**
+     * Get the number of trapezoids in the map.
+     *
+     * @return The number of trapezoids
+     */
+    public int getTrapezoidCount() {
+        return traps.length;
+    }
+
+    /**
+     * Find the face of the segment arrangement containing the query point.
+     *
+     * @param x The x-coordinate of the query point
+     * @param y The y-coordinate of the query point
+     * @return The id of the face containing the point
+     */
+    public int locateFace(int x, int y) {
+        return faces[locate(x, y)];
+    }
+
+    /**
+     * Get the face of the segment arrangement which a trapezoid lies in.  Two
+     * trapezoids have the same face id exactly when they are connected
+     * without crossing a segment.
+     *
+     * @param id The trapezoid id, as returned by locate
+     * @return The face id, from 0 to getFaceCount() - 1
+     */
+    public int getFace(int id) {
+        return faces[id];
+    }
+
+    /**
+     * Get the number of faces of the segment arrangement.
+     *
+     * @return The number of faces
+     */
+    public int getFaceCount() {
+        return faceStart.length - 1;
+    }
+
+    /**
+     * Get the number of trapezoids making up a face.
+     *
+     * @param face The face id
+     * @return The number of trapezoids in the face
+     */
+    public int getFaceSize(int face) {
+        return faceStart[face + 1] - faceStart[face];
+    }
+
+    /**
+     * Get one of the trapezoids making up a face.
+     *
+     * @param face The face id
+     * @param k The index of the trapezoid within the face, from 0 to getFaceSize(face) - 1
+     * @return The trapezoid id
+     */
+    public int getFaceTrapezoid(int face, int k) {
+        return faceTraps[faceStart[face] + k];
+    }
+
+    /**
+     * Find the segment directly above the query point: the first segment hit
+     * by a vertical ray going up from it.  A point on a segment counts as
+     * below it, so that segment is returned.
+     *
+     * @param x The x-coordinate of the query point
+     * @param y The y-coordinate of the query point
+     * @return The id of the segment above, or NO_SEGMENT if there is none
+     */
+    public int locateAbove(int x, int y) {
+        return upper[locate(x, y)];
+    }
+
+    /**
+     * Find the segment directly below the query point: the first segment hit
+     * by a vertical ray going down from it.
+     *
+     * @param x The x-coordinate of the query point
+     * @param y The y-coordinate of the query point
+     * @return The id of the segment below, or NO_SEGMENT if there is none
+     */
+    public int locateBelow(int x, int y) {
+        return lower[locate(x, y)];
+    }
+
+    /**
+     * Find the segment directly above each of a batch of query points, as
+     * locateAbove(int, int).  The points are located as in
+     * locate(int[], int[], int[]).
+     *
+     * @param xs The x-coordinates of the query points
+     * @param ys The y-coordinates of the query points
+     * @param out The array to fill with segment ids (or NO_SEGMENT)
+     */
+    public void locateAbove(int[] xs, int[] ys, int[] out) {
+        locate(xs, ys, out, 0, xs.length);
+        for (int i = 0; i < xs.length; i++) {
+            out[i] = upper[out[i]];
+        }
+    }
+
+    /**
+     * Find the segment directly below each of a batch of query points, as
+     * locateBelow(int, int).  The points are located as in
+     * locate(int[], int[], int[]).
+     *
+     * @param xs The x-coordinates of the query points
+     * @param ys The y-coordinates of the query points
+     * @param out The array to fill with segment ids (or NO_SEGMENT)
+     */
+    public void locateBelow(int[] xs, int[] ys, int[] out) {
+        locate(xs, ys, out, 0, xs.length);
+        for (int i = 0; i < xs.length; i++) {
+            out[i] = lower[out[i]];
+        }
+    }
+
+    /**
+     * Get the segment forming the upper bound of a trapezoid.
+     *
+     * @param id The trapezoid id, as returned by locate
+     * @return The segment id, or NO_SEGMENT for the top of the bounding box
+     */
+    public int getUpperSegment(int id) {
+        return upper[id];
+    }
+
+    /**
+     * Get the segment forming the lower bound of a trapezoid.
+     *
+     * @param id The trapezoid id, as returned by locate
+     * @return The segment id, or NO_SEGMENT for the bottom of the bounding box
+     */
+    public int getLowerSegment(int id) {
+        return lower[id];
+    }
+
+    /**
+     * Get the segment with the given id.  If the locator was compiled with a
+     * segment array, the ids are the indices into that array.
+     *
+     * @param id The segment id
+     * @return The segment
+     */
+    public Segment getSegment(int id) {
+        return segments[id];
+    }
+
+    /**
+     * Get the number of segment ids.
+     *
+     * @return The number of segment ids
+     */
+    public int getSegmentCount() {
+        return segments.length;
+    }
+
+    /**
+     * Get the number of inner (x and y) nodes in the search structure.
+     *
+     * @return The number of inner nodes
+     */
+    public int getNodeCount() {
+        return tags.length;
+    }
+}
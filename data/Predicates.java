@@ -0,0 +1,81 @@
+package data;
+
+/**
+ * Exact orientation tests for points with int coordinates, behind every
+ * geometric decision of the map (isPointAboveLine and its variants,
+ * Segment.crosses, the window queries and the segment checks), so that they
+ * all agree for any int coordinates.
+ *
+ * The differences of two int coordinates take up to 33 bits, so the products
+ * of a 2x2 determinant can overflow a long.  When all the differences fit in
+ * an int (as for coordinates below 2^30, or points close together) the long
+ * result is exact.  Otherwise the determinant is worked out in floating point, whose
+ * sign is right unless the determinant is within the rounding error of zero;
+ * and there the true determinant is small enough that the (wrapped around)
+ * long result is exact again.  No case needs more than a few multiplications.
+ *
+ * @author Tyler Chenhall
+ */
+final class Predicates {
+
+    //bound on the relative error of the floating point determinant, several
+    //times the worst case of its three roundings
+    private static final double ERROR = 1e-15;
+
+    private Predicates() {
+    }
+
+    /**
+     * Which side of the line from (ax, ay) to (bx, by) the point (cx, cy) is on
+     * @return 1 if to the left of the direction of the line (above it, for a line going right), -1 if to the right, 0 if on the line
+     */
+    static int orient(int ax, int ay, int bx, int by, int cx, int cy) {
+        return cross((long) bx - ax, (long) by - ay, (long) cx - ax, (long) cy - ay);
+    }
+
+    /**
+     * The sign of the cross product dx1 * dy2 - dy1 * dx2, for components which
+     * are differences of int coordinates
+     */
+    static int cross(long dx1, long dy1, long dx2, long dy2) {
+        long det = dx1 * dy2 - dy1 * dx2;
+        if (((dx1 + 0x80000000L) | (dy1 + 0x80000000L) | (dx2 + 0x80000000L) | (dy2 + 0x80000000L)) >>> 32 == 0) {
+            //all in [-2^31, 2^31), so the products and their difference fit
+            return Long.signum(det);
+        }
+        double p = (double) dx1 * dy2;
+        double q = (double) dy1 * dx2;
+        double e = ERROR * (Math.abs(p) + Math.abs(q));
+        if (p - q > e) {
+            return 1;
+        }
+        if (q - p > e) {
+            return -1;
+        }
+        //|det| is at most about 2e for this e, far below 2^63
+        return Long.signum(det);
+    }
+
+    /**
+     * The height of the non vertical line from (lx, ly) to (rx, ry) (with
+     * lx < rx) at x, rounded down, for x between lx and rx
+     */
+    static int floorHeight(int lx, int ly, int rx, int ry, int x) {
+        long dx = (long) rx - lx;
+        long dy = (long) ry - ly;
+        long k = (long) x - lx;
+        //estimate dy * k / dx, then correct it with the exact remainder,
+        //which is small and so does not wrap around
+        long q = (long) Math.floor((double) dy * k / dx);
+        long r = dy * k - q * dx;
+        while (r < 0) {
+            q--;
+            r += dx;
+        }
+        while (r >= dx) {
+            q++;
+            r -= dx;
+        }
+        return (int) (ly + q);
+    }
+}
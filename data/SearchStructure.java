@@ -2,6 +2,7 @@ package data;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.Random;
 
 /**
@@ -9,14 +10,42 @@ import java.util.Random;
  * The constructor accepts a list of segments which follow the following criteria:
  *      1) Segments are non-crossing
  *      2) Segment interiors are disjoint, but segments may meet at endpoints (to allow closed figures)
+ * SegmentValidator checks a set of segments against these criteria, and
+ * SegmentSplitter splits crossing segments into pieces which meet them.
  * Both the physical map and search structure are represented
  *
+ * This class is not thread safe.  To query the map from several threads, use
+ * compile() to take a read-only PointLocator snapshot and share that instead.
  *
  * @author Tyler Chenhall
  */
 public class SearchStructure {
 
     private Node root;
+    private long buildTime;
+    //seed of the random insertion order, and the random numbers used for it
+    //(and for any later rebuilds)
+    private long seed;
+    private Random random;
+    //number of segments currently in the map
+    private int segmentCount;
+    //number of segments removed since the map was last built from scratch
+    private int removals;
+    //the bounding box of the map, and its upper and lower segments
+    private int minx;
+    private int maxx;
+    private int miny;
+    private int maxy;
+    private Segment boxTop;
+    private Segment boxBottom;
+    //path length sampling of point queries (off when sampleInterval is 0)
+    private int sampleInterval;
+    private int sampleCountdown;
+    private long sampledQueries;
+    private long sampledPathSteps;
+    private int maxSampledPath;
+    //number of the last window query, which marks the trapezoids it reaches
+    private int windowQueries;
 
     /**
      * Builds the trapezoidal map search structure from the segment array. The
@@ -33,7 +62,25 @@ public class SearchStructure {
      * @param ry initial upper bound
      */
     public SearchStructure(Segment[] segs, int lx, int rx, int ly, int ry) {
+        this(segs, lx, rx, ly, ry, new Random().nextLong());
+    }
+
+    /**
+     * Builds the trapezoidal map search structure from the segment array, with
+     * the segments inserted in the random order given by the seed.  The same
+     * seed and segments always give the same map.
+     *
+     * @param segs The list of segments to build a search structure for
+     * @param lx initial left bound
+     * @param rx initial right bound
+     * @param ly initial lower bound
+     * @param ry initial upper bound
+     * @param seed The seed for the random insertion order
+     */
+    public SearchStructure(Segment[] segs, int lx, int rx, int ly, int ry, long seed) {
         long t1 = System.nanoTime();
+        this.seed = seed;
+        random = new Random(seed);
         //construct the search structure and map? is the map even needed for anything?
 
         // 1. determine a bounding box for the segments
@@ -49,20 +96,13 @@ public class SearchStructure {
                 maxy = Math.max(maxy, segs[i].getMaxY());
             }
         }
-        //create a trapezoid using the bounding box
-        Point left = new Point(minx, miny);
-        Point right = new Point(maxx, maxy);
-        Trapezoid t = new Trapezoid(left, right, new Segment(new Point(minx, maxy), new Point(maxx, maxy)),
-                new Segment(new Point(minx, miny), new Point(maxx, miny)));
-        Leaf f = new Leaf(t);
-        t.setLeaf(f);
-        root = f;
+        createBoundingBox(minx, maxx, miny, maxy);
         //System.out.println("Bounding box created");
 
         // 2. shuffle the segments
         // the array is first duplicated in case the ordering is important in the original array
         Segment[] arr = Arrays.copyOf(segs, segs.length);
-        Random r = new Random();
+        Random r = random;
         int rnd;
         Segment temp;
         //random shuffling
@@ -86,456 +126,995 @@ public class SearchStructure {
         // 3. incrementally make the trapezoidal map
         //System.out.println("Ready to construct trapezoidal map");
         for (int i = 0; i < arr.length && arr[i] != null; i++) {
-            //find the trapezoids intersected by arr[i]
-            //System.out.println("in loop");
-            Leaf[] list = followSegment(arr[i]);
-
-            //System.out.println(list.length);
-            if (list.length == 1) {//the segment is entirely within a single trapezoid
-
-                //System.out.println("Case I");
-                //split into 4 sections
-                Trapezoid old = list[0].getData();
-                Trapezoid lefty = new Trapezoid(old.getLeftBound(), arr[i].getLeftEndPoint(), old.getUpperBound(), old.getLowerBound());
-                Trapezoid righty = new Trapezoid(arr[i].getRightEndPoint(), old.getRightBound(), old.getUpperBound(), old.getLowerBound());
-                Trapezoid top = new Trapezoid(arr[i].getLeftEndPoint(), arr[i].getRightEndPoint(), old.getUpperBound(), arr[i]);
-                Trapezoid bottom = new Trapezoid(arr[i].getLeftEndPoint(), arr[i].getRightEndPoint(), arr[i], old.getLowerBound());
-                XNode ll = new XNode(arr[i].getLeftEndPoint());
-                XNode rr = new XNode(arr[i].getRightEndPoint());
-                YNode ss = new YNode(arr[i]);
-
-                Leaf leftyN = new Leaf(lefty);
-                lefty.setLeaf(leftyN);
-                Leaf rightyN = new Leaf(righty);
-                righty.setLeaf(rightyN);
-                Leaf topN = new Leaf(top);
-                top.setLeaf(topN);
-                Leaf bottomN = new Leaf(bottom);
-                bottom.setLeaf(bottomN);
-                if (!(lefty.hasZeroWidth() || righty.hasZeroWidth())) {
-
-                    //link all the nodes for the trapezoids
-                    ll.setLeftChildNode(leftyN);
-                    ll.setRightChildNode(rr);
-                    rr.setRightChildNode(rightyN);
-                    rr.setLeftChildNode(ss);
-                    ss.setLeftChildNode(topN);
-                    ss.setRightChildNode(bottomN);
-
-                    //connect the nodes to the old structure
-                    if (list[0].getParentNode() == null) {
-                        root = ll;
-                    } else {
-                        //the previous node might have more than one parent node
-                        ArrayList<Node> parents = list[0].getParentNodes();
-                        for (int j = 0; j < parents.size(); j++) {
-                            Node tempParent = parents.get(j);
-                            if (tempParent.getLeftChildNode() == list[0]) {
-                                tempParent.setLeftChildNode(ll);
-                            } else {
-                                tempParent.setRightChildNode(ll);
-                            }
+            addSegment(arr[i]);
+        }
+        long t2 = System.nanoTime();
+        buildTime = t2 - t1;
+    }
+
+    /**
+     * Builds a map inside an existing bounding box, given by its upper and
+     * lower segments, so that several maps can share the same box segments
+     * (used by the slab builder).
+     *
+     * @param segs The segments to build a search structure for, which must fit in the box
+     * @param boxTop The upper segment of the bounding box
+     * @param boxBottom The lower segment of the bounding box
+     * @param seed The seed for the random insertion order
+     */
+    SearchStructure(ArrayList<Segment> segs, Segment boxTop, Segment boxBottom, long seed) {
+        long t1 = System.nanoTime();
+        this.seed = seed;
+        random = new Random(seed);
+        createBoundingBox(boxTop, boxBottom);
+        Segment[] arr = segs.toArray(new Segment[segs.size()]);
+        for (int i = arr.length - 1; i >= 1; i--) {
+            int rnd = random.nextInt(i);
+            Segment temp = arr[i];
+            arr[i] = arr[rnd];
+            arr[rnd] = temp;
+        }
+        for (int i = 0; i < arr.length; i++) {
+            addSegment(arr[i]);
+        }
+        buildTime = System.nanoTime() - t1;
+    }
+
+    /**
+     * Wraps an already built map, as read back by MapSnapshot or stitched
+     * together by the slab builder.
+     *
+     * @param root The root of the search structure
+     * @param boxTop The upper segment of the bounding box
+     * @param boxBottom The lower segment of the bounding box
+     * @param segmentCount The number of segments in the map
+     * @param seed The seed for later rebuilds
+     */
+    SearchStructure(Node root, int minx, int maxx, int miny, int maxy, Segment boxTop, Segment boxBottom,
+            int segmentCount, long seed) {
+        this.root = root;
+        this.minx = minx;
+        this.maxx = maxx;
+        this.miny = miny;
+        this.maxy = maxy;
+        this.boxTop = boxTop;
+        this.boxBottom = boxBottom;
+        this.segmentCount = segmentCount;
+        this.seed = seed;
+        random = new Random(seed);
+    }
+
+    /**
+     * Inserts a new segment into the existing map, updating both the trapezoid
+     * neighbor links and the search structure (this is one step of the
+     * incremental construction, so it takes expected O(log n) time when the
+     * segments arrive in random order).  The segment must not cross any segment
+     * already in the map.
+     *
+     * If the segment does not fit in the bounding box, the box is grown by at
+     * least half of its width or height in the offending direction and the map
+     * is rebuilt, so a sequence of insertions only triggers a logarithmic number
+     * of rebuilds.
+     *
+     * Any PointLocator compiled earlier does not see the new segment.
+     *
+     * @param s The segment to insert
+     */
+    public void insert(Segment s) {
+        if (s.getMinX() >= minx && s.getMaxX() <= maxx && s.getMinY() >= miny && s.getMaxY() <= maxy) {
+            addSegment(s);
+            return;
+        }
+        long width = (long) maxx - minx;
+        long height = (long) maxy - miny;
+        int newMinx = minx;
+        int newMaxx = maxx;
+        int newMiny = miny;
+        int newMaxy = maxy;
+        if (s.getMinX() < minx) {
+            newMinx = (int) Math.max(Integer.MIN_VALUE, Math.min(s.getMinX(), minx - width / 2));
+        }
+        if (s.getMaxX() > maxx) {
+            newMaxx = (int) Math.min(Integer.MAX_VALUE, Math.max(s.getMaxX(), maxx + width / 2));
+        }
+        if (s.getMinY() < miny) {
+            newMiny = (int) Math.max(Integer.MIN_VALUE, Math.min(s.getMinY(), miny - height / 2));
+        }
+        if (s.getMaxY() > maxy) {
+            newMaxy = (int) Math.min(Integer.MAX_VALUE, Math.max(s.getMaxY(), maxy + height / 2));
+        }
+        ArrayList<Segment> all = collectSegments();
+        all.add(s);
+        rebuild(all, newMinx, newMaxx, newMiny, newMaxy);
+    }
+
+    /**
+     * Throws away the current map and builds a new one over the given bounding
+     * box from the given segments, in a new random order.
+     */
+    private void rebuild(ArrayList<Segment> segs, int minx, int maxx, int miny, int maxy) {
+        segmentCount = 0;
+        removals = 0;
+        createBoundingBox(minx, maxx, miny, maxy);
+        Segment[] arr = segs.toArray(new Segment[segs.size()]);
+        Random r = random;
+        for (int i = arr.length - 1; i >= 1; i--) {
+            int rnd = r.nextInt(i);
+            Segment temp = arr[i];
+            arr[i] = arr[rnd];
+            arr[rnd] = temp;
+        }
+        for (int i = 0; i < arr.length; i++) {
+            addSegment(arr[i]);
+        }
+    }
+
+    /**
+     * Removes a segment from the map, updating both the trapezoid neighbor
+     * links and the search structure.  The trapezoids directly above and below
+     * the segment (and those on either side of an endpoint which no other
+     * segment uses) are merged into the trapezoids of the map without the
+     * segment, and the leaf of each old trapezoid is replaced by a small tree of
+     * XNodes which picks out the new trapezoid covering the query point.
+     *
+     * Each removal leaves its YNodes and XNodes in the search structure, so
+     * once a quarter of the segments have been removed the map is rebuilt from
+     * scratch to keep the query depth logarithmic.
+     *
+     * Any PointLocator compiled earlier still sees the removed segment.
+     *
+     * @param s A segment with the same endpoints as the one to remove
+     * @return True if the segment was found and removed; false otherwise
+     */
+    public boolean remove(Segment s) {
+        //find the first trapezoids below and above the segment, which hold the
+        //segment object actually stored in the map
+        Trapezoid below = findNextTo(s, false);
+        Trapezoid above = findNextTo(s, true);
+        if (!below.getUpperBound().equals(s) || above.getLowerBound() != below.getUpperBound()) {
+            return false;
+        }
+        Segment seg = below.getUpperBound();
+        Point p = seg.getLeftEndPoint();
+        Point q = seg.getRightEndPoint();
+
+        //collect the trapezoids above and below the segment, left to right
+        ArrayList<Trapezoid> aboveList = new ArrayList<Trapezoid>();
+        aboveList.add(above);
+        while (above.getRightBound().compareTo(q) != 0) {
+            above = above.getLowerRightNeighbor();
+            aboveList.add(above);
+        }
+        ArrayList<Trapezoid> belowList = new ArrayList<Trapezoid>();
+        belowList.add(below);
+        while (below.getRightBound().compareTo(q) != 0) {
+            below = below.getUpperRightNeighbor();
+            belowList.add(below);
+        }
+        Trapezoid firstAbove = aboveList.get(0);
+        Trapezoid firstBelow = belowList.get(0);
+        Trapezoid lastAbove = aboveList.get(aboveList.size() - 1);
+        Trapezoid lastBelow = belowList.get(belowList.size() - 1);
+
+        //an endpoint used by no other segment loses its vertical wall, and the
+        //single trapezoid on the far side of that wall is merged as well
+        Trapezoid leftOld = null;
+        Trapezoid rightOld = null;
+        if (firstAbove.getUpperBound().getLeftEndPoint().compareTo(p) != 0
+                && firstBelow.getLowerBound().getLeftEndPoint().compareTo(p) != 0
+                && firstAbove.getUpperLeftNeighbor() != null
+                && firstAbove.getUpperLeftNeighbor() == firstBelow.getLowerLeftNeighbor()) {
+            leftOld = firstAbove.getUpperLeftNeighbor();
+        }
+        if (lastAbove.getUpperBound().getRightEndPoint().compareTo(q) != 0
+                && lastBelow.getLowerBound().getRightEndPoint().compareTo(q) != 0
+                && lastAbove.getUpperRightNeighbor() != null
+                && lastAbove.getUpperRightNeighbor() == lastBelow.getLowerRightNeighbor()) {
+            rightOld = lastAbove.getUpperRightNeighbor();
+        }
+
+        //merge the walls above and below the segment into one sorted list; the
+        //new trapezoid i lies between walls[i] and walls[i + 1]
+        int na = aboveList.size();
+        int nb = belowList.size();
+        Point[] walls = new Point[na + nb];
+        //for each inner wall, the index of the trapezoid to its right in the
+        //above list (positive) or below list (negative, using ~index)
+        int[] wallSide = new int[na + nb];
+        walls[0] = leftOld == null ? p : leftOld.getLeftBound();
+        int a = 1;
+        int b = 1;
+        int count = 1;
+        while (a < na || b < nb) {
+            if (b == nb || (a < na && aboveList.get(a).getLeftBound().compareTo(belowList.get(b).getLeftBound()) < 0)) {
+                wallSide[count] = a;
+                walls[count++] = aboveList.get(a++).getLeftBound();
+            } else {
+                wallSide[count] = ~b;
+                walls[count++] = belowList.get(b++).getLeftBound();
+            }
+        }
+        walls[count] = rightOld == null ? q : rightOld.getRightBound();
+
+        //create the new trapezoids
+        Trapezoid[] merged = new Trapezoid[count];
+        a = 0;
+        b = 0;
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                if (wallSide[i] >= 0) {
+                    a++;
+                } else {
+                    b++;
+                }
+            }
+            merged[i] = new Trapezoid(walls[i], walls[i + 1], aboveList.get(a).getUpperBound(),
+                    belowList.get(b).getLowerBound());
+            Leaf f = new Leaf(merged[i]);
+            merged[i].setLeaf(f);
+        }
+
+        //link the new trapezoids to each other and to the rest of the map
+        if (leftOld != null) {
+            upperLink(leftOld.getUpperLeftNeighbor(), merged[0]);
+            lowerLink(leftOld.getLowerLeftNeighbor(), merged[0]);
+        } else {
+            upperLink(firstAbove.getUpperLeftNeighbor(), merged[0]);
+            lowerLink(firstBelow.getLowerLeftNeighbor(), merged[0]);
+        }
+        for (int i = 1; i < count; i++) {
+            if (wallSide[i] >= 0) {
+                //a wall which came down to the segment from above now continues
+                //down to the lower bound, so the lower halves are neighbors
+                Trapezoid oldLeft = aboveList.get(wallSide[i] - 1);
+                Trapezoid oldRight = aboveList.get(wallSide[i]);
+                lowerLink(merged[i - 1], merged[i]);
+                if (oldLeft.getUpperRightNeighbor() == oldRight) {
+                    upperLink(merged[i - 1], merged[i]);
+                } else {
+                    upperLink(merged[i - 1], oldLeft.getUpperRightNeighbor());
+                    upperLink(oldRight.getUpperLeftNeighbor(), merged[i]);
+                }
+            } else {
+                //likewise for a wall which came up to the segment from below
+                Trapezoid oldLeft = belowList.get(~wallSide[i] - 1);
+                Trapezoid oldRight = belowList.get(~wallSide[i]);
+                upperLink(merged[i - 1], merged[i]);
+                if (oldLeft.getLowerRightNeighbor() == oldRight) {
+                    lowerLink(merged[i - 1], merged[i]);
+                } else {
+                    lowerLink(merged[i - 1], oldLeft.getLowerRightNeighbor());
+                    lowerLink(oldRight.getLowerLeftNeighbor(), merged[i]);
+                }
+            }
+        }
+        if (rightOld != null) {
+            upperLink(merged[count - 1], rightOld.getUpperRightNeighbor());
+            lowerLink(merged[count - 1], rightOld.getLowerRightNeighbor());
+        } else {
+            upperLink(merged[count - 1], lastAbove.getUpperRightNeighbor());
+            lowerLink(merged[count - 1], lastBelow.getLowerRightNeighbor());
+        }
+
+        //update the search structure
+        if (leftOld != null) {
+            replaceLeaf(leftOld.getLeaf(), merged[0].getLeaf());
+        }
+        if (rightOld != null) {
+            replaceLeaf(rightOld.getLeaf(), merged[count - 1].getLeaf());
+        }
+        for (int i = 0; i < na; i++) {
+            replaceLeaf(aboveList.get(i).getLeaf(), mergedTree(aboveList.get(i), walls, merged));
+        }
+        for (int i = 0; i < nb; i++) {
+            replaceLeaf(belowList.get(i).getLeaf(), mergedTree(belowList.get(i), walls, merged));
+        }
+
+        segmentCount--;
+        removals++;
+        if (removals > segmentCount / 4 + 16) {
+            rebuild(collectSegments(), minx, maxx, miny, maxy);
+        }
+        return true;
+    }
+
+    /**
+     * Find the trapezoid directly above (or below) the left end of a segment
+     * in the map.  This is findPoint for the left endpoint, except that the
+     * YNodes of the segment itself are decided by the given side.
+     */
+    private Trapezoid findNextTo(Segment s, boolean above) {
+        Point p = s.getLeftEndPoint();
+        Node current = root;
+        while (!(current instanceof data.Leaf)) {
+            boolean left;
+            if (current instanceof data.XNode) {
+                left = p.compareTo(((XNode) current).getData()) < 0;
+            } else if (((YNode) current).getData().equals(s)) {
+                left = above;
+            } else {
+                left = isPointAboveLine2(p, ((YNode) current).getData(), s);
+            }
+            if (left) {
+                current = current.getLeftChildNode();
+            } else {
+                current = current.getRightChildNode();
+            }
+        }
+        return ((Leaf) current).getData();
+    }
+
+    /**
+     * Build a balanced tree of XNodes on the walls which cut an old trapezoid
+     * into pieces of the new trapezoids.  walls[i] and walls[i + 1] are the
+     * left and right bounds of merged[i].
+     */
+    private Node mergedTree(Trapezoid old, Point[] walls, Trapezoid[] merged) {
+        //first and last new trapezoids overlapping the old one
+        int lo = 0;
+        while (walls[lo + 1].compareTo(old.getLeftBound()) <= 0) {
+            lo++;
+        }
+        int hi = lo;
+        while (walls[hi + 1].compareTo(old.getRightBound()) < 0) {
+            hi++;
+        }
+        return mergedTree(lo, hi, walls, merged);
+    }
+
+    private Node mergedTree(int lo, int hi, Point[] walls, Trapezoid[] merged) {
+        if (lo == hi) {
+            return merged[lo].getLeaf();
+        }
+        int mid = (lo + hi + 1) >>> 1;
+        XNode x = new XNode(walls[mid]);
+        x.setLeftChildNode(mergedTree(lo, mid - 1, walls, merged));
+        x.setRightChildNode(mergedTree(mid, hi, walls, merged));
+        return x;
+    }
+
+    /**
+     * Point every parent of an old leaf at its replacement instead.
+     */
+    private void replaceLeaf(Leaf old, Node replacement) {
+        ArrayList<Node> parents = old.getParentNodes();
+        if (parents.isEmpty()) {
+            root = replacement;
+        }
+        for (int j = 0; j < parents.size(); j++) {
+            Node tempParent = parents.get(j);
+            if (tempParent.getLeftChildNode() == old) {
+                tempParent.setLeftChildNode(replacement);
+            } else {
+                tempParent.setRightChildNode(replacement);
+            }
+        }
+    }
+
+    /**
+     * Get the number of segments in the map
+     * @return The number of segments
+     */
+    public int getSegmentCount() {
+        return segmentCount;
+    }
+
+    /**
+     * Get the segments currently in the map, in no particular order
+     * @return A new array holding each segment once
+     */
+    public Segment[] getSegments() {
+        ArrayList<Segment> segs = collectSegments();
+        return segs.toArray(new Segment[segs.size()]);
+    }
+
+    Node getRoot() {
+        return root;
+    }
+
+    Segment getBoxTop() {
+        return boxTop;
+    }
+
+    Segment getBoxBottom() {
+        return boxBottom;
+    }
+
+    int getMinX() {
+        return minx;
+    }
+
+    int getMaxX() {
+        return maxx;
+    }
+
+    int getMinY() {
+        return miny;
+    }
+
+    int getMaxY() {
+        return maxy;
+    }
+
+    /**
+     * Get the segments currently in the map, by collecting the upper and lower
+     * bounds of all trapezoids (other than the bounding box segments).
+     * @return A new list holding each segment once
+     */
+    private ArrayList<Segment> collectSegments() {
+        IdentityHashMap<Segment, Boolean> seen = new IdentityHashMap<Segment, Boolean>();
+        seen.put(boxTop, Boolean.TRUE);
+        seen.put(boxBottom, Boolean.TRUE);
+        ArrayList<Segment> segs = new ArrayList<Segment>(segmentCount);
+        IdentityHashMap<Node, Boolean> visited = new IdentityHashMap<Node, Boolean>();
+        ArrayList<Node> stack = new ArrayList<Node>();
+        stack.add(root);
+        while (!stack.isEmpty()) {
+            Node n = stack.remove(stack.size() - 1);
+            if (visited.put(n, Boolean.TRUE) != null) {
+                continue;
+            }
+            if (n instanceof Leaf) {
+                Trapezoid t = ((Leaf) n).getData();
+                if (seen.put(t.getUpperBound(), Boolean.TRUE) == null) {
+                    segs.add(t.getUpperBound());
+                }
+                if (seen.put(t.getLowerBound(), Boolean.TRUE) == null) {
+                    segs.add(t.getLowerBound());
+                }
+            } else {
+                stack.add(n.getLeftChildNode());
+                stack.add(n.getRightChildNode());
+            }
+        }
+        return segs;
+    }
+
+    /**
+     * Creates the initial map: a single trapezoid covering the bounding box.
+     */
+    private void createBoundingBox(int minx, int maxx, int miny, int maxy) {
+        createBoundingBox(new Segment(new Point(minx, maxy), new Point(maxx, maxy)),
+                new Segment(new Point(minx, miny), new Point(maxx, miny)));
+    }
+
+    /**
+     * Creates the initial map from the given upper and lower segments of the
+     * bounding box.
+     */
+    private void createBoundingBox(Segment top, Segment bottom) {
+        minx = bottom.getLeftEndPoint().getX();
+        maxx = bottom.getRightEndPoint().getX();
+        miny = bottom.getLeftEndPoint().getY();
+        maxy = top.getLeftEndPoint().getY();
+        boxTop = top;
+        boxBottom = bottom;
+        //create a trapezoid using the bounding box
+        Point left = new Point(minx, miny);
+        Point right = new Point(maxx, maxy);
+        Trapezoid t = new Trapezoid(left, right, boxTop, boxBottom);
+        Leaf f = new Leaf(t);
+        t.setLeaf(f);
+        root = f;
+    }
+
+    /**
+     * Adds one segment to the trapezoidal map and the search structure.  The
+     * segment must not cross any segment already in the map.
+     *
+     * @param seg The segment to add
+     */
+    private void addSegment(Segment seg) {
+        segmentCount++;
+        //find the trapezoids intersected by seg
+        //System.out.println("in loop");
+        Leaf[] list = followSegment(seg);
+
+        //System.out.println(list.length);
+        if (list.length == 1) {//the segment is entirely within a single trapezoid
+
+            //System.out.println("Case I");
+            //split into 4 sections
+            Trapezoid old = list[0].getData();
+            Trapezoid lefty = new Trapezoid(old.getLeftBound(), seg.getLeftEndPoint(), old.getUpperBound(), old.getLowerBound());
+            Trapezoid righty = new Trapezoid(seg.getRightEndPoint(), old.getRightBound(), old.getUpperBound(), old.getLowerBound());
+            Trapezoid top = new Trapezoid(seg.getLeftEndPoint(), seg.getRightEndPoint(), old.getUpperBound(), seg);
+            Trapezoid bottom = new Trapezoid(seg.getLeftEndPoint(), seg.getRightEndPoint(), seg, old.getLowerBound());
+            XNode ll = new XNode(seg.getLeftEndPoint());
+            XNode rr = new XNode(seg.getRightEndPoint());
+            YNode ss = new YNode(seg);
+
+            Leaf leftyN = new Leaf(lefty);
+            lefty.setLeaf(leftyN);
+            Leaf rightyN = new Leaf(righty);
+            righty.setLeaf(rightyN);
+            Leaf topN = new Leaf(top);
+            top.setLeaf(topN);
+            Leaf bottomN = new Leaf(bottom);
+            bottom.setLeaf(bottomN);
+            if (!(lefty.hasZeroWidth() || righty.hasZeroWidth())) {
+
+                //link all the nodes for the trapezoids
+                ll.setLeftChildNode(leftyN);
+                ll.setRightChildNode(rr);
+                rr.setRightChildNode(rightyN);
+                rr.setLeftChildNode(ss);
+                ss.setLeftChildNode(topN);
+                ss.setRightChildNode(bottomN);
+
+                //connect the nodes to the old structure
+                if (list[0].getParentNode() == null) {
+                    root = ll;
+                } else {
+                    //the previous node might have more than one parent node
+                    ArrayList<Node> parents = list[0].getParentNodes();
+                    for (int j = 0; j < parents.size(); j++) {
+                        Node tempParent = parents.get(j);
+                        if (tempParent.getLeftChildNode() == list[0]) {
+                            tempParent.setLeftChildNode(ll);
+                        } else {
+                            tempParent.setRightChildNode(ll);
                         }
                     }
+                }
 
-                    //link the trapezoids together
-                    lowerLink(lefty, bottom);
-                    lowerLink(old.getLowerLeftNeighbor(), lefty);
-                    upperLink(lefty, top);
-                    upperLink(old.getUpperLeftNeighbor(), lefty);
-
-                    lowerLink(righty, old.getLowerRightNeighbor());
-                    lowerLink(bottom, righty);
-                    upperLink(righty, old.getUpperRightNeighbor());
-                    upperLink(top, righty);
-                } else if (lefty.hasZeroWidth() && !righty.hasZeroWidth()) {//only left has zero width
-                    //link all the nodes for the trapezoids
-                    rr.setLeftChildNode(ss);
-                    rr.setRightChildNode(rightyN);
-                    ss.setLeftChildNode(topN);
-                    ss.setRightChildNode(bottomN);
-
-                    //connect the nodes to the old structure
-                    if (list[0].getParentNode() == null) {
-                        root = rr;
-                    } else {
-                        //the previous node might have more than one parent node
-                        ArrayList<Node> parents = list[0].getParentNodes();
-                        for (int j = 0; j < parents.size(); j++) {
-                            Node tempParent = parents.get(j);
-                            if (tempParent.getLeftChildNode() == list[0]) {
-                                tempParent.setLeftChildNode(rr);
-                            } else {
-                                tempParent.setRightChildNode(rr);
-                            }
+                //link the trapezoids together
+                lowerLink(lefty, bottom);
+                lowerLink(old.getLowerLeftNeighbor(), lefty);
+                upperLink(lefty, top);
+                upperLink(old.getUpperLeftNeighbor(), lefty);
+
+                lowerLink(righty, old.getLowerRightNeighbor());
+                lowerLink(bottom, righty);
+                upperLink(righty, old.getUpperRightNeighbor());
+                upperLink(top, righty);
+            } else if (lefty.hasZeroWidth() && !righty.hasZeroWidth()) {//only left has zero width
+                //link all the nodes for the trapezoids
+                rr.setLeftChildNode(ss);
+                rr.setRightChildNode(rightyN);
+                ss.setLeftChildNode(topN);
+                ss.setRightChildNode(bottomN);
+
+                //connect the nodes to the old structure
+                if (list[0].getParentNode() == null) {
+                    root = rr;
+                } else {
+                    //the previous node might have more than one parent node
+                    ArrayList<Node> parents = list[0].getParentNodes();
+                    for (int j = 0; j < parents.size(); j++) {
+                        Node tempParent = parents.get(j);
+                        if (tempParent.getLeftChildNode() == list[0]) {
+                            tempParent.setLeftChildNode(rr);
+                        } else {
+                            tempParent.setRightChildNode(rr);
                         }
                     }
+                }
 
-                    //link the trapezoids together
-                    lowerLink(old.getLowerLeftNeighbor(), bottom);
-                    upperLink(old.getUpperLeftNeighbor(), top);
-
-                    lowerLink(righty, old.getLowerRightNeighbor());
-                    lowerLink(bottom, righty);
-                    upperLink(righty, old.getUpperRightNeighbor());
-                    upperLink(top, righty);
-                } else if (righty.hasZeroWidth() && !lefty.hasZeroWidth()) {//only right has zero width
-                    //link all the nodes for the trapezoids
-                    ll.setLeftChildNode(leftyN);
-                    ll.setRightChildNode(ss);
-                    ss.setLeftChildNode(topN);
-                    ss.setRightChildNode(bottomN);
-
-                    //connect the nodes to the old structure
-                    if (list[0].getParentNode() == null) {
-                        root = ll;
-                    } else {
-                        //the previous node might have more than one parent node
-                        ArrayList<Node> parents = list[0].getParentNodes();
-                        for (int j = 0; j < parents.size(); j++) {
-                            Node tempParent = parents.get(j);
-                            if (tempParent.getLeftChildNode() == list[0]) {
-                                tempParent.setLeftChildNode(ll);
-                            } else {
-                                tempParent.setRightChildNode(ll);
-                            }
+                //link the trapezoids together
+                lowerLink(old.getLowerLeftNeighbor(), bottom);
+                upperLink(old.getUpperLeftNeighbor(), top);
+
+                lowerLink(righty, old.getLowerRightNeighbor());
+                lowerLink(bottom, righty);
+                upperLink(righty, old.getUpperRightNeighbor());
+                upperLink(top, righty);
+            } else if (righty.hasZeroWidth() && !lefty.hasZeroWidth()) {//only right has zero width
+                //link all the nodes for the trapezoids
+                ll.setLeftChildNode(leftyN);
+                ll.setRightChildNode(ss);
+                ss.setLeftChildNode(topN);
+                ss.setRightChildNode(bottomN);
+
+                //connect the nodes to the old structure
+                if (list[0].getParentNode() == null) {
+                    root = ll;
+                } else {
+                    //the previous node might have more than one parent node
+                    ArrayList<Node> parents = list[0].getParentNodes();
+                    for (int j = 0; j < parents.size(); j++) {
+                        Node tempParent = parents.get(j);
+                        if (tempParent.getLeftChildNode() == list[0]) {
+                            tempParent.setLeftChildNode(ll);
+                        } else {
+                            tempParent.setRightChildNode(ll);
                         }
                     }
+                }
 
-                    //link the trapezoids together
-                    lowerLink(lefty, bottom);
-                    lowerLink(old.getLowerLeftNeighbor(), lefty);
-                    upperLink(lefty, top);
-                    upperLink(old.getUpperLeftNeighbor(), lefty);
+                //link the trapezoids together
+                lowerLink(lefty, bottom);
+                lowerLink(old.getLowerLeftNeighbor(), lefty);
+                upperLink(lefty, top);
+                upperLink(old.getUpperLeftNeighbor(), lefty);
 
-                    lowerLink(bottom, old.getLowerRightNeighbor());
-                    upperLink(top, old.getUpperRightNeighbor());
-                } else {
-                    //both have zero width
+                lowerLink(bottom, old.getLowerRightNeighbor());
+                upperLink(top, old.getUpperRightNeighbor());
+            } else {
+                //both have zero width
 
-                    //build the search structure
-                    ss.setLeftChildNode(topN);
-                    ss.setRightChildNode(bottomN);
+                //build the search structure
+                ss.setLeftChildNode(topN);
+                ss.setRightChildNode(bottomN);
 
-                    //connect the nodes to the old structure
-                    if (list[0].getParentNode() == null) {
-                        root = ss;
-                    } else {
-                        //the previous node might have more than one parent node
-                        ArrayList<Node> parents = list[0].getParentNodes();
-                        for (int j = 0; j < parents.size(); j++) {
-                            Node tempParent = parents.get(j);
-                            if (tempParent.getLeftChildNode() == list[0]) {
-                                tempParent.setLeftChildNode(ss);
-                            } else {
-                                tempParent.setRightChildNode(ss);
-                            }
+                //connect the nodes to the old structure
+                if (list[0].getParentNode() == null) {
+                    root = ss;
+                } else {
+                    //the previous node might have more than one parent node
+                    ArrayList<Node> parents = list[0].getParentNodes();
+                    for (int j = 0; j < parents.size(); j++) {
+                        Node tempParent = parents.get(j);
+                        if (tempParent.getLeftChildNode() == list[0]) {
+                            tempParent.setLeftChildNode(ss);
+                        } else {
+                            tempParent.setRightChildNode(ss);
                         }
                     }
-
-                    //link the trapezoids together (this is nontrivial in degenerates cases)
-                    lowerLink(old.getLowerLeftNeighbor(), bottom);
-                    lowerLink(bottom, old.getLowerRightNeighbor());
-                    upperLink(old.getUpperLeftNeighbor(), top);
-                    upperLink(top, old.getUpperRightNeighbor());
                 }
 
-            } else {//(3 divisions for the first and last trapezoids, 2 for the middle ones)
-                //System.out.println("Case II");
-                //the first and last cases get broken into 3 parts
-                //the middle ones are different
-
-                //if the left segment endpoint is not leftp of list[0].getData(), then
-                //there is an extra trapezoid at the left end.  Likewise for rightp of list[n-1].getData()
-
-                //for everything in the middle, we start with a single top and bottom trap for both
-                //then we merge trapezoids together as needed
-                //note that before merging, some trapezoids may have an endpoint which is null
-                Trapezoid[] topArr = new Trapezoid[list.length];
-                Trapezoid[] botArr = new Trapezoid[list.length];
-                for (int j = 0; j < list.length; j++) {
-                    //top is defined by the original upper segment, the new segment & two endpoints
-                    //left endpoint:
-                        /*
-                     * if j==0, is segment's left endpoint
-                     * else is old trap's left endpoint if it is above the segment
-                     */
-                    //right endpoint is similar
-                    if (j == 0) {
-                        Point rtP = null;
-                        if (isPointAboveLine(list[j].getData().getRightBound(), arr[i])) {
-                            rtP = list[j].getData().getRightBound();
-                        }
-                        topArr[j] = new Trapezoid(arr[i].getLeftEndPoint(), rtP, list[j].getData().getUpperBound(), arr[i]);
-                    } else if (j == list.length - 1) {
-                        Point ltP = null;
-                        if (isPointAboveLine(list[j].getData().getLeftBound(), arr[i])) {
-                            ltP = list[j].getData().getLeftBound();
-                        }
-                        topArr[j] = new Trapezoid(ltP, arr[i].getRightEndPoint(), list[j].getData().getUpperBound(), arr[i]);
-                    } else {
-                        Point rtP = null;
-                        if (isPointAboveLine(list[j].getData().getRightBound(), arr[i])) {
-                            rtP = list[j].getData().getRightBound();
-                        }
-                        Point ltP = null;
-                        if (isPointAboveLine(list[j].getData().getLeftBound(), arr[i])) {
-                            ltP = list[j].getData().getLeftBound();
-                        }
-                        topArr[j] = new Trapezoid(ltP, rtP, list[j].getData().getUpperBound(), arr[i]);
-                    }
+                //link the trapezoids together (this is nontrivial in degenerates cases)
+                lowerLink(old.getLowerLeftNeighbor(), bottom);
+                lowerLink(bottom, old.getLowerRightNeighbor());
+                upperLink(old.getUpperLeftNeighbor(), top);
+                upperLink(top, old.getUpperRightNeighbor());
+            }
 
-                    //the bottom array is constructed using a similar strategy
-                    if (j == 0) {
-                        Point rtP = null;
-                        if (!isPointAboveLine(list[j].getData().getRightBound(), arr[i])) {
-                            rtP = list[j].getData().getRightBound();
-                        }
-                        botArr[j] = new Trapezoid(arr[i].getLeftEndPoint(), rtP, arr[i], list[j].getData().getLowerBound());
-                    } else if (j == list.length - 1) {
-                        Point ltP = null;
-                        if (!isPointAboveLine(list[j].getData().getLeftBound(), arr[i])) {
-                            ltP = list[j].getData().getLeftBound();
-                        }
-                        botArr[j] = new Trapezoid(ltP, arr[i].getRightEndPoint(), arr[i], list[j].getData().getLowerBound());
-                    } else {
-                        Point rtP = null;
-                        if (!isPointAboveLine(list[j].getData().getRightBound(), arr[i])) {
-                            rtP = list[j].getData().getRightBound();
-                        }
-                        Point ltP = null;
-                        if (!isPointAboveLine(list[j].getData().getLeftBound(), arr[i])) {
-                            ltP = list[j].getData().getLeftBound();
-                        }
-                        botArr[j] = new Trapezoid(ltP, rtP, arr[i], list[j].getData().getLowerBound());
+        } else {//(3 divisions for the first and last trapezoids, 2 for the middle ones)
+            //System.out.println("Case II");
+            //the first and last cases get broken into 3 parts
+            //the middle ones are different
+
+            //if the left segment endpoint is not leftp of list[0].getData(), then
+            //there is an extra trapezoid at the left end.  Likewise for rightp of list[n-1].getData()
+
+            //for everything in the middle, we start with a single top and bottom trap for both
+            //then we merge trapezoids together as needed
+            //note that before merging, some trapezoids may have an endpoint which is null
+            Trapezoid[] topArr = new Trapezoid[list.length];
+            Trapezoid[] botArr = new Trapezoid[list.length];
+            for (int j = 0; j < list.length; j++) {
+                //top is defined by the original upper segment, the new segment & two endpoints
+                //left endpoint:
+                    /*
+                 * if j==0, is segment's left endpoint
+                 * else is old trap's left endpoint if it is above the segment
+                 */
+                //right endpoint is similar
+                if (j == 0) {
+                    Point rtP = null;
+                    if (isPointAboveLine(list[j].getData().getRightBound(), seg)) {
+                        rtP = list[j].getData().getRightBound();
+                    }
+                    topArr[j] = new Trapezoid(seg.getLeftEndPoint(), rtP, list[j].getData().getUpperBound(), seg);
+                } else if (j == list.length - 1) {
+                    Point ltP = null;
+                    if (isPointAboveLine(list[j].getData().getLeftBound(), seg)) {
+                        ltP = list[j].getData().getLeftBound();
+                    }
+                    topArr[j] = new Trapezoid(ltP, seg.getRightEndPoint(), list[j].getData().getUpperBound(), seg);
+                } else {
+                    Point rtP = null;
+                    if (isPointAboveLine(list[j].getData().getRightBound(), seg)) {
+                        rtP = list[j].getData().getRightBound();
+                    }
+                    Point ltP = null;
+                    if (isPointAboveLine(list[j].getData().getLeftBound(), seg)) {
+                        ltP = list[j].getData().getLeftBound();
                     }
+                    topArr[j] = new Trapezoid(ltP, rtP, list[j].getData().getUpperBound(), seg);
                 }
 
-                //then merge degenerate trapezoids together (those with a null bounding point)
-                int aTop = 0;
-                int bTop;
-                int aBot = 0;
-                int bBot;
-                boolean topHasRightP = false;
-                boolean botHasRightP = false;
-                for (int j = 0; j < list.length; j++) {
-                    if (topArr[j].getRightBound() != null) {
-                        bTop = j;
-                        //merge trapezoids aTop through bTop
-                        //we only want one trapezoid, so we just have bTop-aTop+1 pointers to it for now
-                        Trapezoid tempMerge = new Trapezoid(topArr[aTop].getLeftBound(), topArr[bTop].getRightBound(), topArr[aTop].getUpperBound(), arr[i]);
-                        for (int k = aTop; k <= bTop; k++) {
-                            //now there are duplicates of the same trapezoid unfortunately, but I think if we link them together left to right
-                            //this shouldn't cause problems later...it just means a bit more storage use
-                            topArr[k] = tempMerge;
-                        }
-                        aTop = j + 1;
+                //the bottom array is constructed using a similar strategy
+                if (j == 0) {
+                    Point rtP = null;
+                    if (!isPointAboveLine(list[j].getData().getRightBound(), seg)) {
+                        rtP = list[j].getData().getRightBound();
+                    }
+                    botArr[j] = new Trapezoid(seg.getLeftEndPoint(), rtP, seg, list[j].getData().getLowerBound());
+                } else if (j == list.length - 1) {
+                    Point ltP = null;
+                    if (!isPointAboveLine(list[j].getData().getLeftBound(), seg)) {
+                        ltP = list[j].getData().getLeftBound();
+                    }
+                    botArr[j] = new Trapezoid(ltP, seg.getRightEndPoint(), seg, list[j].getData().getLowerBound());
+                } else {
+                    Point rtP = null;
+                    if (!isPointAboveLine(list[j].getData().getRightBound(), seg)) {
+                        rtP = list[j].getData().getRightBound();
                     }
+                    Point ltP = null;
+                    if (!isPointAboveLine(list[j].getData().getLeftBound(), seg)) {
+                        ltP = list[j].getData().getLeftBound();
+                    }
+                    botArr[j] = new Trapezoid(ltP, rtP, seg, list[j].getData().getLowerBound());
+                }
+            }
 
-                    if (botArr[j].getRightBound() != null) {
-                        bBot = j;
-                        //merge trapezoids aBot through bBot
-                        Trapezoid tempMerge = new Trapezoid(botArr[aBot].getLeftBound(), botArr[bBot].getRightBound(), arr[i], botArr[aBot].getLowerBound());
-                        for (int k = aBot; k <= bBot; k++) {
-                            botArr[k] = tempMerge;
-                        }
-                        aBot = j + 1;
+            //then merge degenerate trapezoids together (those with a null bounding point)
+            int aTop = 0;
+            int bTop;
+            int aBot = 0;
+            int bBot;
+            boolean topHasRightP = false;
+            boolean botHasRightP = false;
+            for (int j = 0; j < list.length; j++) {
+                if (topArr[j].getRightBound() != null) {
+                    bTop = j;
+                    //merge trapezoids aTop through bTop
+                    //we only want one trapezoid, so we just have bTop-aTop+1 pointers to it for now
+                    Trapezoid tempMerge = new Trapezoid(topArr[aTop].getLeftBound(), topArr[bTop].getRightBound(), topArr[aTop].getUpperBound(), seg);
+                    for (int k = aTop; k <= bTop; k++) {
+                        //now there are duplicates of the same trapezoid unfortunately, but I think if we link them together left to right
+                        //this shouldn't cause problems later...it just means a bit more storage use
+                        topArr[k] = tempMerge;
                     }
+                    aTop = j + 1;
                 }
 
-                //do trapezoid links...this should unlink the original trapezoids from the physical structure except at the ends
-                //do all left links before doing right links in order to avoid linking errors
-                for (int j = 0; j < list.length; j++) {
-                    if (j != 0) {
-                        //update left links
-                        //link right to left
-                        //only recycle old links if they are not in the list to be removed
-
-                        //only when the trapezoids do not repeat
-                        if (topArr[j] != topArr[j - 1]) {
-                            lowerLink(topArr[j - 1], topArr[j]);
-                        }
+                if (botArr[j].getRightBound() != null) {
+                    bBot = j;
+                    //merge trapezoids aBot through bBot
+                    Trapezoid tempMerge = new Trapezoid(botArr[aBot].getLeftBound(), botArr[bBot].getRightBound(), seg, botArr[aBot].getLowerBound());
+                    for (int k = aBot; k <= bBot; k++) {
+                        botArr[k] = tempMerge;
+                    }
+                    aBot = j + 1;
+                }
+            }
 
-                        //leave the upper left neighbor null unless we have something to set it to
-                        Trapezoid temp2 = list[j].getData().getUpperLeftNeighbor();
-                        if (!list[j - 1].getData().equals(temp2)) {
-                            upperLink(temp2, topArr[j]);
-                        }
+            //do trapezoid links...this should unlink the original trapezoids from the physical structure except at the ends
+            //do all left links before doing right links in order to avoid linking errors
+            for (int j = 0; j < list.length; j++) {
+                if (j != 0) {
+                    //update left links
+                    //link right to left
+                    //only recycle old links if they are not in the list to be removed
+
+                    //only when the trapezoids do not repeat
+                    if (topArr[j] != topArr[j - 1]) {
+                        lowerLink(topArr[j - 1], topArr[j]);
+                    }
 
-                        //only do this for non-repeating trapezoids
-                        if (botArr[j] != botArr[j - 1]) {
-                            upperLink(botArr[j - 1], botArr[j]);
-                        }
+                    //leave the upper left neighbor null unless we have something to set it to
+                    Trapezoid temp2 = list[j].getData().getUpperLeftNeighbor();
+                    if (!list[j - 1].getData().equals(temp2)) {
+                        upperLink(temp2, topArr[j]);
+                    }
 
-                        temp2 = list[j].getData().getLowerLeftNeighbor();
-                        if (!list[j - 1].getData().equals(temp2)) {
-                            lowerLink(temp2, botArr[j]);
-                        }
+                    //only do this for non-repeating trapezoids
+                    if (botArr[j] != botArr[j - 1]) {
+                        upperLink(botArr[j - 1], botArr[j]);
+                    }
 
+                    temp2 = list[j].getData().getLowerLeftNeighbor();
+                    if (!list[j - 1].getData().equals(temp2)) {
+                        lowerLink(temp2, botArr[j]);
                     }
 
                 }
-                for (int j = 0; j < list.length; j++) {
-                    if (j != topArr.length - 1) {
-                        //update right links
 
-                        //only for non-repeats
-                        if (topArr[j] != topArr[j + 1]) {
-                            lowerLink(topArr[j], topArr[j + 1]);
-                        }
+            }
+            for (int j = 0; j < list.length; j++) {
+                if (j != topArr.length - 1) {
+                    //update right links
 
-                        Trapezoid temp2 = list[j].getData().getUpperRightNeighbor();
-                        if (!list[j + 1].getData().equals(temp2)) {
-                            upperLink(topArr[j], temp2);
-                        }
+                    //only for non-repeats
+                    if (topArr[j] != topArr[j + 1]) {
+                        lowerLink(topArr[j], topArr[j + 1]);
+                    }
 
-                        //only for non-repeats
-                        if (botArr[j] != botArr[j + 1]) {
-                            upperLink(botArr[j], botArr[j + 1]);
-                        }
+                    Trapezoid temp2 = list[j].getData().getUpperRightNeighbor();
+                    if (!list[j + 1].getData().equals(temp2)) {
+                        upperLink(topArr[j], temp2);
+                    }
 
-                        temp2 = list[j].getData().getLowerRightNeighbor();
-                        if (!list[j + 1].getData().equals(temp2)) {
-                            lowerLink(botArr[j], temp2);
-                        }
+                    //only for non-repeats
+                    if (botArr[j] != botArr[j + 1]) {
+                        upperLink(botArr[j], botArr[j + 1]);
+                    }
+
+                    temp2 = list[j].getData().getLowerRightNeighbor();
+                    if (!list[j + 1].getData().equals(temp2)) {
+                        lowerLink(botArr[j], temp2);
                     }
                 }
+            }
 
-                //deal with the possible extra end trapezoids
-                Trapezoid leftmost = null;
-                Trapezoid rightmost = null;
-                Trapezoid oldLeft = list[0].getData();
-                Trapezoid oldRight = list[list.length - 1].getData();
-                if (!arr[i].getLeftEndPoint().equals(oldLeft.getLeftBound())) {
-                    //there is a leftmost trapezoid
-                    leftmost = new Trapezoid(oldLeft.getLeftBound(), arr[i].getLeftEndPoint(),
-                            oldLeft.getUpperBound(), oldLeft.getLowerBound());
+            //deal with the possible extra end trapezoids
+            Trapezoid leftmost = null;
+            Trapezoid rightmost = null;
+            Trapezoid oldLeft = list[0].getData();
+            Trapezoid oldRight = list[list.length - 1].getData();
+            if (!seg.getLeftEndPoint().equals(oldLeft.getLeftBound())) {
+                //there is a leftmost trapezoid
+                leftmost = new Trapezoid(oldLeft.getLeftBound(), seg.getLeftEndPoint(),
+                        oldLeft.getUpperBound(), oldLeft.getLowerBound());
+            }
+            if (!seg.getRightEndPoint().equals(list[list.length - 1].getData().getRightBound())) {
+                //there is a rightmost trapezoid
+                rightmost = new Trapezoid(seg.getRightEndPoint(), oldRight.getRightBound(),
+                        oldRight.getUpperBound(), oldRight.getLowerBound());
+            }
+
+            //add remaining trapezoid links at the end
+            if (leftmost != null) {
+                lowerLink(oldLeft.getLowerLeftNeighbor(), leftmost);
+                upperLink(oldLeft.getUpperLeftNeighbor(), leftmost);
+
+                lowerLink(leftmost, botArr[0]);
+                upperLink(leftmost, topArr[0]);
+            } else {
+                //link top & bot arr with appropriate left links of oldLeft
+                if (oldLeft.getUpperBound().getLeftEndPoint().equals(oldLeft.getLeftBound())
+                        && oldLeft.getLowerBound().getLeftEndPoint().equals(oldLeft.getLeftBound())) {
+                    //triangles (both bounds start at the left point), so no neighbors to worry about
+                } else if (oldLeft.getUpperBound().getLeftEndPoint().equals(oldLeft.getLeftBound())) {
+                    //upper half degenerates to a triangle
+                    lowerLink(oldLeft.getLowerLeftNeighbor(), botArr[0]);
+                } else if (oldLeft.getLowerBound().getLeftEndPoint().equals(oldLeft.getLeftBound())) {
+                    //lower half degenerates to a triangle
+                    upperLink(oldLeft.getUpperLeftNeighbor(), topArr[0]);
+                } else {
+                    //neither degenerates to a triangle
+                    lowerLink(oldLeft.getLowerLeftNeighbor(), botArr[0]);
+                    upperLink(oldLeft.getUpperLeftNeighbor(), topArr[0]);
                 }
-                if (!arr[i].getRightEndPoint().equals(list[list.length - 1].getData().getRightBound())) {
-                    //there is a rightmost trapezoid
-                    rightmost = new Trapezoid(arr[i].getRightEndPoint(), oldRight.getRightBound(),
-                            oldRight.getUpperBound(), oldRight.getLowerBound());
+            }
+            if (rightmost != null) {
+                lowerLink(rightmost, oldRight.getLowerRightNeighbor());
+                upperLink(rightmost, oldRight.getUpperRightNeighbor());
+
+                lowerLink(botArr[botArr.length - 1], rightmost);
+                upperLink(topArr[topArr.length - 1], rightmost);
+            } else {
+                //link the top & bot arr with the appropriate right links of oldRight
+                if (oldRight.getUpperBound().getRightEndPoint().equals(oldRight.getRightBound())
+                        && oldRight.getLowerBound().getRightEndPoint().equals(oldRight.getRightBound())) {
+                    //triangles (both bounds end at the right point), hence no right neighbors
+                } else if (oldRight.getUpperBound().getRightEndPoint().equals(oldRight.getRightBound())) {
+                    //upper half degenerates to a triangle
+                    lowerLink(botArr[botArr.length - 1], oldRight.getLowerRightNeighbor());
+                } else if (oldRight.getLowerBound().getRightEndPoint().equals(oldRight.getRightBound())) {
+                    //lower half degenerates to a triangle
+                    upperLink(topArr[topArr.length - 1], oldRight.getUpperRightNeighbor());
+                } else {
+                    //neither degenerates to a triangle
+                    lowerLink(botArr[botArr.length - 1], oldRight.getLowerRightNeighbor());
+                    upperLink(topArr[topArr.length - 1], oldRight.getUpperRightNeighbor());
                 }
+            }
 
-                //add remaining trapezoid links at the end
-                if (leftmost != null) {
-                    lowerLink(oldLeft.getLowerLeftNeighbor(), leftmost);
-                    upperLink(oldLeft.getUpperLeftNeighbor(), leftmost);
+            //create leaf structures ahead of time to deal with the duplication problem
+            Leaf[] topLeaf = new Leaf[topArr.length];
+            Leaf[] botLeaf = new Leaf[botArr.length];
+            Leaf aa;
+            for (int j = 0; j < topLeaf.length; j++) {
+                if (j == 0 || topArr[j] != topArr[j - 1]) {
+                    //create a new topLeaf
+                    aa = new Leaf(topArr[j]);
+                    topArr[j].setLeaf(aa);
+                    topLeaf[j] = aa;
+                } else {
+                    //reuse the old Leaf
+                    topLeaf[j] = topLeaf[j - 1];
+                }
 
-                    lowerLink(leftmost, botArr[0]);
-                    upperLink(leftmost, topArr[0]);
+                if (j == 0 || botArr[j] != botArr[j - 1]) {
+                    //create a new botLeaf
+                    aa = new Leaf(botArr[j]);
+                    botArr[j].setLeaf(aa);
+                    botLeaf[j] = aa;
                 } else {
-                    //link top & bot arr with appropriate left links of oldLeft
-                    if (oldLeft.getUpperBound().getLeftEndPoint().equals(oldLeft.getLowerBound().getLeftEndPoint())) {
-                        //triangles, so no neighbors to worry about
-                    } else if (oldLeft.getUpperBound().getLeftEndPoint().equals(oldLeft.getLeftBound())) {
-                        //upper half degenerates to a triangle
-                        lowerLink(oldLeft.getLowerLeftNeighbor(), botArr[0]);
-                    } else if (oldLeft.getLowerBound().getLeftEndPoint().equals(oldLeft.getLeftBound())) {
-                        //lower half degenerates to a triangle
-                        upperLink(oldLeft.getUpperLeftNeighbor(), topArr[0]);
-                    } else {
-                        //neither degenerates to a triangle
-                        lowerLink(oldLeft.getLowerLeftNeighbor(), botArr[0]);
-                        upperLink(oldLeft.getUpperLeftNeighbor(), topArr[0]);
-                    }
+                    //reuse the old Leaf
+                    botLeaf[j] = botLeaf[j - 1];
                 }
-                if (rightmost != null) {
-                    lowerLink(rightmost, oldRight.getLowerRightNeighbor());
-                    upperLink(rightmost, oldRight.getUpperRightNeighbor());
+            }
 
-                    lowerLink(botArr[botArr.length - 1], rightmost);
-                    upperLink(topArr[topArr.length - 1], rightmost);
+            //then add nodes and node links...this should unlink the original trapezoids from the physical structure
+            Node[] newStructures = new Node[list.length];
+            for (int j = 0; j < list.length; j++) {
+                Node yy = new YNode(seg);
+                if (j == 0 && leftmost != null) {
+                    XNode xx = new XNode(seg.getLeftEndPoint());
+                    aa = new Leaf(leftmost);
+                    leftmost.setLeaf(aa);
+                    xx.setLeftChildNode(aa);
+                    xx.setRightChildNode(yy);
+
+                    newStructures[j] = xx;
+                } else if (j == newStructures.length - 1 && rightmost != null) {
+                    XNode xx = new XNode(seg.getRightEndPoint());
+                    aa = new Leaf(rightmost);
+                    rightmost.setLeaf(aa);
+                    xx.setRightChildNode(aa);
+                    xx.setLeftChildNode(yy);
+
+                    newStructures[j] = xx;
                 } else {
-                    //link the top & bot arr with the appropriate right links of oldRight
-                    if (oldRight.getUpperBound().getRightEndPoint().equals(oldRight.getLowerBound().getRightEndPoint())) {
-                        //triangles, hence no right neighbors
-                    } else if (oldRight.getUpperBound().getRightEndPoint().equals(oldRight.getRightBound())) {
-                        //upper half degenerates to a triangle
-                        lowerLink(botArr[botArr.length - 1], oldRight.getLowerRightNeighbor());
-                    } else if (oldRight.getLowerBound().getRightEndPoint().equals(oldRight.getRightBound())) {
-                        //lower half degenerates to a triangle
-                        upperLink(topArr[topArr.length - 1], oldRight.getUpperRightNeighbor());
-                    } else {
-                        //neither degenerates to a triangle
-                        lowerLink(botArr[botArr.length - 1], oldRight.getLowerRightNeighbor());
-                        upperLink(topArr[topArr.length - 1], oldRight.getUpperRightNeighbor());
-                    }
+                    newStructures[j] = yy;
                 }
 
-                //create leaf structures ahead of time to deal with the duplication problem
-                Leaf[] topLeaf = new Leaf[topArr.length];
-                Leaf[] botLeaf = new Leaf[botArr.length];
-                Leaf aa;
-                for (int j = 0; j < topLeaf.length; j++) {
-                    if (j == 0 || topArr[j] != topArr[j - 1]) {
-                        //create a new topLeaf
-                        aa = new Leaf(topArr[j]);
-                        topArr[j].setLeaf(aa);
-                        topLeaf[j] = aa;
-                    } else {
-                        //reuse the old Leaf
-                        topLeaf[j] = topLeaf[j - 1];
-                    }
+                yy.setLeftChildNode(topLeaf[j]);
 
-                    if (j == 0 || botArr[j] != botArr[j - 1]) {
-                        //create a new botLeaf
-                        aa = new Leaf(botArr[j]);
-                        botArr[j].setLeaf(aa);
-                        botLeaf[j] = aa;
-                    } else {
-                        //reuse the old Leaf
-                        botLeaf[j] = botLeaf[j - 1];
-                    }
-                }
+                yy.setRightChildNode(botLeaf[j]);
+
+                //insert the new structure in place of the old one
+                //Node parent = list[j].getParentNode();
 
-                //then add nodes and node links...this should unlink the original trapezoids from the physical structure
-                Node[] newStructures = new Node[list.length];
-                for (int j = 0; j < list.length; j++) {
-                    Node yy = new YNode(arr[i]);
-                    if (j == 0 && leftmost != null) {
-                        XNode xx = new XNode(arr[i].getLeftEndPoint());
-                        aa = new Leaf(leftmost);
-                        leftmost.setLeaf(aa);
-                        xx.setLeftChildNode(aa);
-                        xx.setRightChildNode(yy);
-
-                        newStructures[j] = xx;
-                    } else if (j == newStructures.length - 1 && rightmost != null) {
-                        XNode xx = new XNode(arr[i].getRightEndPoint());
-                        aa = new Leaf(rightmost);
-                        rightmost.setLeaf(aa);
-                        xx.setRightChildNode(aa);
-                        xx.setLeftChildNode(yy);
-
-                        newStructures[j] = xx;
+                //now there may be many parents...
+                ArrayList<Node> parents = list[j].getParentNodes();
+                for (int k = 0; k < parents.size(); k++) {
+                    Node parent = parents.get(k);
+                    if (parent.getLeftChildNode() == list[j]) {
+                        //replace left child
+                        parent.setLeftChildNode(newStructures[j]);
                     } else {
-                        newStructures[j] = yy;
+                        parent.setRightChildNode(newStructures[j]);
                     }
+                }
+            }
+        }
+    }
 
-                    yy.setLeftChildNode(topLeaf[j]);
+    /**
+     * Get the time taken by the constructor to build the map.
+     * @return The construction time in nanoseconds
+     */
+    public long getBuildTime() {
+        return buildTime;
+    }
 
-                    yy.setRightChildNode(botLeaf[j]);
+    void setBuildTime(long buildTime) {
+        this.buildTime = buildTime;
+    }
 
-                    //insert the new structure in place of the old one
-                    //Node parent = list[j].getParentNode();
+    /**
+     * Get the seed of the random insertion order.  Building again from the same
+     * segments with this seed gives the same map (for a map loaded with
+     * MapSnapshot or built by MapBuilder.buildParallel, the seed only covers
+     * later rebuilds).
+     * @return The seed
+     */
+    public long getSeed() {
+        return seed;
+    }
 
-                    //now there may be many parents...
-                    ArrayList<Node> parents = list[j].getParentNodes();
-                    for (int k = 0; k < parents.size(); k++) {
-                        Node parent = parents.get(k);
-                        if (parent.getLeftChildNode() == list[j]) {
-                            //replace left child
-                            parent.setLeftChildNode(newStructures[j]);
-                        } else {
-                            parent.setRightChildNode(newStructures[j]);
-                        }
+    /**
+     * Get the length of the longest path from the root of the search structure
+     * to a leaf, which bounds the number of steps of any point query.
+     * @return The maximum depth of the search structure
+     */
+    public int getMaxDepth() {
+        //height of each node above its deepest leaf, filled in after both
+        //children are done
+        IdentityHashMap<Node, Integer> height = new IdentityHashMap<Node, Integer>();
+        ArrayList<Node> stack = new ArrayList<Node>();
+        stack.add(root);
+        while (!stack.isEmpty()) {
+            Node n = stack.get(stack.size() - 1);
+            if (height.containsKey(n)) {
+                stack.remove(stack.size() - 1);
+            } else if (n instanceof Leaf) {
+                height.put(n, 0);
+                stack.remove(stack.size() - 1);
+            } else {
+                Integer l = height.get(n.getLeftChildNode());
+                Integer r = height.get(n.getRightChildNode());
+                if (l != null && r != null) {
+                    height.put(n, Math.max(l, r) + 1);
+                    stack.remove(stack.size() - 1);
+                } else {
+                    if (l == null) {
+                        stack.add(n.getLeftChildNode());
+                    }
+                    if (r == null) {
+                        stack.add(n.getRightChildNode());
                     }
                 }
             }
         }
-        long t2 = System.nanoTime();
-        System.out.println((t2 - t1));
+        return height.get(root);
     }
 
     /**
@@ -570,12 +1149,12 @@ public class SearchStructure {
 
     /**
      * Get the list of trapezoids in the current structure intersected by the
-     * segment.
+     * segment.  The segment must not cross any segment of the map.
      *
      * @param s The query segment
      * @return An array of trapezoids (Leaf array) intersected by the segment
      */
-    private Leaf[] followSegment(Segment s) {
+    public Leaf[] followSegment(Segment s) {
         //System.err.println("Follow segment not yet implemented");
         ArrayList<Leaf> list = new ArrayList<Leaf>();
         Leaf previous = findPoint(s.getLeftEndPoint(), s);
@@ -607,6 +1186,9 @@ public class SearchStructure {
      * @return The trapezoid containing the query point
      */
     public Leaf findPoint(Point p, Segment s) {
+        if (s == null && sampleInterval != 0 && --sampleCountdown <= 0) {
+            return findPointSampled(p.getX(), p.getY()).getLeaf();
+        }
         Node current = root;
         while (!(current instanceof data.Leaf)) {
             if (current instanceof data.XNode) {
@@ -645,7 +1227,212 @@ public class SearchStructure {
      * @return The trapezoid containing the point
      */
     public Trapezoid findPointTrap(Point p) {
-        return findPoint(p, null).getData();
+        return findPointTrap(p.getX(), p.getY());
+    }
+
+    /**
+     * Find the trapezoid containing the point (x, y).  This makes the same
+     * decisions as findPoint, but works on the raw coordinates so that no
+     * objects are allocated for the query.
+     * @param x The x-coordinate of the query point
+     * @param y The y-coordinate of the query point
+     * @return The trapezoid containing the point
+     */
+    public Trapezoid findPointTrap(int x, int y) {
+        if (sampleInterval != 0 && --sampleCountdown <= 0) {
+            return findPointSampled(x, y);
+        }
+        Node current = root;
+        while (!(current instanceof data.Leaf)) {
+            boolean left;
+            if (current instanceof data.XNode) {
+                //same order as Point.compareTo
+                Point q = ((XNode) current).getData();
+                left = x < q.getX() || (x == q.getX() && y < q.getY());
+            } else {
+                left = isPointAboveLine(x, y, ((YNode) current).getData());
+            }
+            if (left) {
+                current = current.getLeftChildNode();
+            } else {
+                current = current.getRightChildNode();
+            }
+        }
+        return ((Leaf) current).getData();
+    }
+
+    /**
+     * findPointTrap for a sampled query, which also records the number of
+     * nodes on the search path.
+     */
+    private Trapezoid findPointSampled(int x, int y) {
+        sampleCountdown = sampleInterval;
+        int steps = 0;
+        Node current = root;
+        while (!(current instanceof data.Leaf)) {
+            boolean left;
+            if (current instanceof data.XNode) {
+                Point q = ((XNode) current).getData();
+                left = x < q.getX() || (x == q.getX() && y < q.getY());
+            } else {
+                left = isPointAboveLine(x, y, ((YNode) current).getData());
+            }
+            if (left) {
+                current = current.getLeftChildNode();
+            } else {
+                current = current.getRightChildNode();
+            }
+            steps++;
+        }
+        sampledQueries++;
+        sampledPathSteps += steps;
+        maxSampledPath = Math.max(maxSampledPath, steps);
+        return ((Leaf) current).getData();
+    }
+
+    /**
+     * Turns on sampling of the search path length of point queries (through
+     * findPointTrap, or findPoint without a segment), and clears any earlier
+     * samples.  The results are included in getStatistics.
+     * @param interval Sample one query in every interval queries, or 0 to stop sampling
+     */
+    public void setPathSampling(int interval) {
+        sampleInterval = Math.max(interval, 0);
+        sampleCountdown = sampleInterval;
+        sampledQueries = 0;
+        sampledPathSteps = 0;
+        maxSampledPath = 0;
+    }
+
+    long getSampledQueries() {
+        return sampledQueries;
+    }
+
+    long getSampledPathSteps() {
+        return sampledPathSteps;
+    }
+
+    int getMaxSampledPath() {
+        return maxSampledPath;
+    }
+
+    /**
+     * Walks the whole map to report its node counts, depth and estimated
+     * memory use, along with any sampled query path lengths.
+     * @return The statistics of the current map
+     */
+    public MapStatistics getStatistics() {
+        return MapStatistics.of(this);
+    }
+
+    /**
+     * Freezes the current search structure into a PointLocator, which answers
+     * the same queries as findPointTrap from packed primitive arrays.  The locator
+     * is a snapshot, so it should be compiled again if this structure changes.
+     * @return An immutable locator for the current map
+     */
+    public PointLocator compile() {
+        return new PointLocator(root, boxTop, boxBottom, null);
+    }
+
+    /**
+     * Freezes the current search structure into a PointLocator whose segment
+     * ids (as returned by locateAbove and locateBelow) are the indices of the
+     * segments in the given array, which is usually the array the map was
+     * built from.
+     * @param segs The segments of the map (the same objects), in id order
+     * @return An immutable locator for the current map
+     * @throws IllegalArgumentException If a segment of the map is not in the array
+     */
+    public PointLocator compile(Segment[] segs) {
+        return new PointLocator(root, boxTop, boxBottom, segs.clone());
+    }
+
+    /**
+     * Find the segment directly above the point (x, y): the first segment hit
+     * by a vertical ray going up from it.  A point on a segment counts as
+     * below it, so that segment is returned.
+     * @param x The x-coordinate of the query point
+     * @param y The y-coordinate of the query point
+     * @return The segment above, or null if there is only the bounding box
+     */
+    public Segment findSegmentAbove(int x, int y) {
+        Segment s = findPointTrap(x, y).getUpperBound();
+        return s == boxTop ? null : s;
+    }
+
+    /**
+     * Find the segment directly below the point (x, y): the first segment hit
+     * by a vertical ray going down from it.
+     * @param x The x-coordinate of the query point
+     * @param y The y-coordinate of the query point
+     * @return The segment below, or null if there is only the bounding box
+     */
+    public Segment findSegmentBelow(int x, int y) {
+        Segment s = findPointTrap(x, y).getLowerBound();
+        return s == boxBottom ? null : s;
+    }
+
+    /**
+     * Reports every trapezoid, and every segment, of the map which intersects
+     * the window [xmin, xmax] x [ymin, ymax] (edges included) to the visitor
+     * as it is found, so a large answer is never collected into a list.  The
+     * query locates the lower left corner and walks the neighbor links from
+     * there (see WindowQuery), so its cost depends on the size of the answer
+     * rather than the size of the map.  The window is clipped to the bounding
+     * box.
+     *
+     * @param xmin The left edge of the window
+     * @param ymin The lower edge of the window
+     * @param xmax The right edge of the window
+     * @param ymax The upper edge of the window
+     * @param visitor Receives the trapezoids and segments
+     * @return False if the visitor stopped the query; true otherwise
+     */
+    public boolean queryWindow(int xmin, int ymin, int xmax, int ymax, WindowVisitor visitor) {
+        xmin = Math.max(xmin, minx);
+        ymin = Math.max(ymin, miny);
+        xmax = Math.min(xmax, maxx);
+        ymax = Math.min(ymax, maxy);
+        if (xmin > xmax || ymin > ymax) {
+            return true;
+        }
+        return WindowQuery.run(this, xmin, ymin, xmax, ymax, visitor);
+    }
+
+    /**
+     * Get a new number for a window query, which no mark currently in the map
+     * carries.  When the numbers run out, the marks are cleared and the
+     * numbering starts again.
+     * @return A number from 1 to WindowQuery.MAX_QUERIES - 1
+     */
+    int nextWindowQuery() {
+        if (++windowQueries == WindowQuery.MAX_QUERIES) {
+            clearMarks();
+            windowQueries = 1;
+        }
+        return windowQueries;
+    }
+
+    /**
+     * Clear the marks left on the trapezoids by window queries
+     */
+    private void clearMarks() {
+        IdentityHashMap<Node, Boolean> visited = new IdentityHashMap<Node, Boolean>();
+        ArrayList<Node> stack = new ArrayList<Node>();
+        stack.add(root);
+        while (!stack.isEmpty()) {
+            Node n = stack.remove(stack.size() - 1);
+            if (visited.put(n, Boolean.TRUE) != null) {
+                continue;
+            }
+            if (n instanceof Leaf) {
+                ((Leaf) n).getData().setMark(0);
+            } else {
+                stack.add(n.getLeftChildNode());
+                stack.add(n.getRightChildNode());
+            }
+        }
     }
 
     /**
@@ -657,11 +1444,32 @@ public class SearchStructure {
      * @return True if on or above the segment; false otherwise
      */
     public static boolean isPointAboveLine(Point p, Segment s) {
-        int x = p.getX();
-        int y = p.getY();
-        return (x - s.getLeftEndPoint().getX()) * s.getRightEndPoint().getY()
-                + (s.getRightEndPoint().getX() - x) * s.getLeftEndPoint().getY()
-                < y * (s.getRightEndPoint().getX() - s.getLeftEndPoint().getX());
+        return isPointAboveLine(p.getX(), p.getY(), s);
+    }
+
+    /**
+     * Checks to see if the point (x, y) is above the segment.
+     *
+     * @param x The x-coordinate of the point
+     * @param y The y-coordinate of the point
+     * @param s The segment of interest
+     * @return True if above the segment; false otherwise
+     */
+    public static boolean isPointAboveLine(int x, int y, Segment s) {
+        return isPointAboveLine(x, y, s.getLeftEndPoint().getX(), s.getLeftEndPoint().getY(),
+                s.getRightEndPoint().getX(), s.getRightEndPoint().getY());
+    }
+
+    /**
+     * Checks to see if the point (x, y) is above the segment from (lx, ly) to
+     * (rx, ry).  This is the test behind every isPointAboveLine variant (including
+     * the array walk of PointLocator), so they all agree, and it is
+     * exact for any int coordinates (see Predicates).
+     *
+     * @return True if above the segment; false otherwise
+     */
+    static boolean isPointAboveLine(int x, int y, int lx, int ly, int rx, int ry) {
+        return Predicates.orient(lx, ly, rx, ry, x, y) > 0;
     }
 
     /**
@@ -676,6 +1484,18 @@ public class SearchStructure {
      * @return True if the point lies above segment pseg, or the point lies on pseg, on a segment of higher slope
      */
     public static boolean isPointAboveLine2(Point p, Segment old, Segment pseg) {
+        return isPointAboveLine2(p.getX(), p.getY(), old.getLeftEndPoint().getX(), old.getLeftEndPoint().getY(),
+                old.getRightEndPoint().getX(), old.getRightEndPoint().getY(),
+                pseg.getRightEndPoint().getX(), pseg.getRightEndPoint().getY());
+    }
+
+    /**
+     * Primitive version of isPointAboveLine2, where the old segment runs from
+     * (olx, oly) to (orx, ory) and (prx, pry) is the right endpoint of pseg.
+     *
+     * @return True if the point lies above segment pseg, or the point lies on pseg, on a segment of higher slope
+     */
+    static boolean isPointAboveLine2(int x, int y, int olx, int oly, int orx, int ory, int prx, int pry) {
         //check if p is on segment old
         /*long x1 = p.getX();
          long x2 = old.getLeftEndPoint().getX();
@@ -685,18 +1505,31 @@ public class SearchStructure {
          long y3 = old.getRightEndPoint().getY();
          long result = (x2-x1)*(y3-y1) - (x3-x1)*(y2-y1);*/
         //according to the textbook, p can only lie on segment old if it is the left endpoint
-        if (p.equals(old.getLeftEndPoint())) {
+        if (x == olx && y == oly) {
             //compare slopes
-            long x1 = p.getX();
-            long x2 = old.getRightEndPoint().getX();
-            long x3 = pseg.getRightEndPoint().getX();
-            long y1 = p.getY();
-            long y2 = old.getRightEndPoint().getY();
-            long y3 = pseg.getRightEndPoint().getY();
-            long result = (x2 - x1) * (y3 - y1) - (x3 - x1) * (y2 - y1);
-            return result > 0;
+            return Predicates.orient(x, y, orx, ory, prx, pry) > 0;
         }
         //if not, call isPointAboveLine
-        return isPointAboveLine(p, old);
+        return isPointAboveLine(x, y, olx, oly, orx, ory);
+    }
+
+    /**
+     * Check whether segment t lies above segment u, where both cross the
+     * same vertical line (such as a sweep line).  This compares at the later
+     * of the two left endpoints, with the same tests as the construction, so
+     * it orders segments just as the y-nodes of the search structure do.
+     *
+     * @return True if t is above u
+     */
+    static boolean isSegmentAbove(Segment t, Segment u) {
+        Point tl = t.getLeftEndPoint();
+        Point ul = u.getLeftEndPoint();
+        int c = tl.compareTo(ul);
+        if (c == 0) {
+            return isPointAboveLine2(tl, u, t);
+        } else if (c > 0) {
+            return isPointAboveLine(tl, u);
+        }
+        return !isPointAboveLine(ul, t);
     }
-}
\ No newline at end of file
+}
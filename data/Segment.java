@@ -12,7 +12,7 @@ public class Segment {
 
     private Point lpoint;
     private Point rpoint;
-    private Line2D.Double l;//for display purposes
+    private Line2D.Double l;//for display purposes, created on first use
 
     public Segment(Point one, Point two) {
         //we store the left, lower point as lpoint
@@ -24,7 +24,6 @@ public class Segment {
             lpoint = two;
             rpoint = one;
         }
-        l = new Line2D.Double(lpoint.getX(), lpoint.getY(), rpoint.getX(), rpoint.getY());
     }
 
     /**
@@ -86,11 +85,16 @@ public class Segment {
 
     /**
      * Get the geometric object corresponding to the line segment. Doing this
-     * allows for easy display (built in!)
+     * allows for easy display (built in!)  The object is only created the first
+     * time it is requested, so maps which are never displayed do not pay for it
+     * (or load the AWT geometry classes).
      *
      * @return The Line2D object representing this segment
      */
     public Line2D.Double getline() {
+        if (l == null) {
+            l = new Line2D.Double(lpoint.getX(), lpoint.getY(), rpoint.getX(), rpoint.getY());
+        }
         return l;
     }
 
@@ -113,40 +117,40 @@ public class Segment {
      */
     public Point intersect(int x) {
         if (lpoint.getX() != rpoint.getX()) {
-
-            long ysum = ((long) (x - lpoint.getX())) * ((long) rpoint.getY()) + ((long) (rpoint.getX() - x)) * ((long) lpoint.getY());
-            double yval = (ysum * 1.0) / (rpoint.getX() - lpoint.getX());
-            return new Point(x, (int) yval);
+            return new Point(x, intersectY(x));
         } else {
             return new Point(lpoint.getX(), lpoint.getY());
         }
     }
 
     /**
-     * Calculates the slope of a non vertical segment. If the segment might be
-     * vertical, isVertical should be checked first
+     * Returns the y value of the point returned by intersect(x), without
+     * creating the point.  The exact height is rounded down.
      *
-     * @return the slope (if not vertical) or 0 if it is vertical
+     * @param x The x-value to intersect the line at
+     * @return The y-value of the line (segment) at the given x-value
      */
-    private double getSlope() {
-        if (isVertical()) {
-            return 0;
+    public int intersectY(int x) {
+        if (lpoint.getX() != rpoint.getX()) {
+            return Predicates.floorHeight(lpoint.getX(), lpoint.getY(), rpoint.getX(), rpoint.getY(), x);
+        } else {
+            return lpoint.getY();
         }
-        return (rpoint.getY() - lpoint.getY()) / ((double) (rpoint.getX() - lpoint.getX()));
     }
 
     /**
-     * Checks if this segment is vertical
+     * Which side of the line through this segment the point p is on
      *
-     * @return True if the segment is vertical
+     * @return 1 if above (to the left of the direction of the segment), -1 if below, 0 if on the line
      */
-    private boolean isVertical() {
-        return (rpoint.getX() == lpoint.getX());
+    private int orient(Point p) {
+        return Predicates.orient(lpoint.getX(), lpoint.getY(), rpoint.getX(), rpoint.getY(), p.getX(), p.getY());
     }
 
     /**
      * Checks to see if this segment object crosses another properly (not a
-     * shared endpoint)
+     * shared endpoint).  Touching the inside of the other segment, or
+     * overlapping it, counts as crossing.  The test is exact.
      *
      * @param other The other segment to check against
      * @return True if the segments intersect at a point which is not a common
@@ -162,36 +166,22 @@ public class Segment {
         }
 
         //at this point, the x-ranges overlap
-        if (this.isVertical() && other.isVertical()) {//they must lie vertically aligned
-            if (this.getMaxY() <= other.getMinY() || this.getMinY() >= other.getMaxY()) {
-                return false;
-            }
-            return true;
-        } else if (this.isVertical()) {
-            Point p = other.intersect(this.lpoint.getX());
-            return (p.getY() > this.getMinY()) && (p.getY() < this.getMaxY());
-        } else {//neither is a vertical line
-            //we use a bounding box technique instead of directly computing the intersection
-            //it is quite possible we aren't saving any time with this strategy
-
-            //must find the intersection points
-            double slope1 = this.getSlope();
-            double slope2 = other.getSlope();
-            //use slope1 to calculate 3 b's, same for slope2
-            double b00 = this.lpoint.getY() - this.lpoint.getX() * slope1;
-            double b01 = other.lpoint.getY() - other.lpoint.getX() * slope1;
-            double b02 = other.rpoint.getY() - other.rpoint.getX() * slope1;
-
-            double b10 = other.lpoint.getY() - other.lpoint.getX() * slope2;
-            double b11 = this.lpoint.getY() - this.lpoint.getX() * slope2;
-            double b12 = this.rpoint.getY() - this.rpoint.getX() * slope2;
-            if (((b01 <= b00 && b00 <= b02) || (b01 >= b00 && b00 >= b02)) && ((b11 <= b10 && b10 <= b12) || b11 >= b10 && b10 >= b12)) {
-                return this.equals(other) || !(this.lpoint.equals(other.lpoint) || this.lpoint.equals(other.rpoint) || this.rpoint.equals(other.lpoint) || this.rpoint.equals(other.rpoint));
-
-            }
+        int o1 = this.orient(other.lpoint);
+        int o2 = this.orient(other.rpoint);
+        int o3 = other.orient(this.lpoint);
+        int o4 = other.orient(this.rpoint);
+        if (o1 == 0 && o2 == 0) {
+            //collinear: they cross if they share more than a single point,
+            //that is if the later left endpoint is before the earlier right one
+            Point l = this.lpoint.compareTo(other.lpoint) >= 0 ? this.lpoint : other.lpoint;
+            Point r = this.rpoint.compareTo(other.rpoint) <= 0 ? this.rpoint : other.rpoint;
+            return l.compareTo(r) < 0;
         }
-
-        return false;
+        if (o1 * o2 > 0 || o3 * o4 > 0) {
+            return false;
+        }
+        //they meet at a single point, which is fine if it is a common vertex
+        return !(this.lpoint.equals(other.lpoint) || this.lpoint.equals(other.rpoint) || this.rpoint.equals(other.lpoint) || this.rpoint.equals(other.rpoint));
     }
 
     @Override
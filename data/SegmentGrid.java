@@ -0,0 +1,179 @@
+package data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A uniform grid over the plane for finding the segments near a query
+ * segment, so that a crossing check only tests the segments sharing a grid
+ * cell with the query instead of every segment.  Each segment is stored in
+ * every cell its path goes through; the cells are kept in a hash map, so the
+ * grid needs no bounds and only the cells holding segments take memory.
+ *
+ * Segments can only be added, which is all DrawSegments needs.
+ *
+ * @author Tyler Chenhall
+ */
+public final class SegmentGrid {
+
+    //slack added to the y-range of a segment in each column of cells, so
+    //that rounding never leaves out a cell the segment touches
+    private static final double SLACK = 1e-6;
+
+    private final int cellSize;
+    private final ArrayList<Segment> segments = new ArrayList<Segment>();
+    //the ids of the segments in each cell, by cell key
+    private final HashMap<Long, Cell> cells = new HashMap<Long, Cell>();
+    //the last query which tested each segment, so none is tested twice
+    private int[] stamps = new int[16];
+    private int query;
+
+    /**
+     * Create an empty grid
+     * @param cellSize The width and height of a cell, which should be around the typical segment length
+     */
+    public SegmentGrid(int cellSize) {
+        if (cellSize < 1) {
+            throw new IllegalArgumentException("Cell size must be positive: " + cellSize);
+        }
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * Add a segment to the grid
+     * @param s The segment to add
+     */
+    public void add(Segment s) {
+        int id = segments.size();
+        segments.add(s);
+        if (id == stamps.length) {
+            stamps = Arrays.copyOf(stamps, id * 2);
+        }
+        Point l = s.getLeftEndPoint();
+        Point r = s.getRightEndPoint();
+        int c0 = Math.floorDiv(l.getX(), cellSize);
+        int c1 = Math.floorDiv(r.getX(), cellSize);
+        for (int cx = c0; cx <= c1; cx++) {
+            int r0 = rowBelow(s, cx);
+            int r1 = rowAbove(s, cx);
+            for (int cy = r0; cy <= r1; cy++) {
+                Long key = key(cx, cy);
+                Cell cell = cells.get(key);
+                if (cell == null) {
+                    cell = new Cell();
+                    cells.put(key, cell);
+                }
+                cell.add(id);
+            }
+        }
+    }
+
+    /**
+     * Check whether any segment in the grid crosses the given segment, in the
+     * sense of Segment.crosses (meeting at a common endpoint is allowed)
+     * @param s The segment to check
+     * @return True if a segment of the grid crosses s
+     */
+    public boolean crossesAny(Segment s) {
+        if (++query == 0) {
+            //the stamps wrapped around
+            Arrays.fill(stamps, 0);
+            query = 1;
+        }
+        int c0 = Math.floorDiv(s.getLeftEndPoint().getX(), cellSize);
+        int c1 = Math.floorDiv(s.getRightEndPoint().getX(), cellSize);
+        for (int cx = c0; cx <= c1; cx++) {
+            int r0 = rowBelow(s, cx);
+            int r1 = rowAbove(s, cx);
+            for (int cy = r0; cy <= r1; cy++) {
+                Cell cell = cells.get(key(cx, cy));
+                if (cell == null) {
+                    continue;
+                }
+                for (int i = 0; i < cell.size; i++) {
+                    int id = cell.ids[i];
+                    if (stamps[id] != query) {
+                        stamps[id] = query;
+                        if (segments.get(id).crosses(s)) {
+                            return true;
+                        }
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the number of segments in the grid
+     * @return The segment count
+     */
+    public int size() {
+        return segments.size();
+    }
+
+    /**
+     * The lowest row of cells met by segment s in column cx
+     */
+    private int rowBelow(Segment s, int cx) {
+        Point l = s.getLeftEndPoint();
+        Point r = s.getRightEndPoint();
+        double y = Math.min(l.getY(), r.getY());
+        if (l.getX() != r.getX()) {
+            y = Math.min(yAt(s, columnStart(s, cx)), yAt(s, columnEnd(s, cx)));
+        }
+        return (int) Math.floor((y - SLACK) / cellSize);
+    }
+
+    /**
+     * The highest row of cells met by segment s in column cx
+     */
+    private int rowAbove(Segment s, int cx) {
+        Point l = s.getLeftEndPoint();
+        Point r = s.getRightEndPoint();
+        double y = Math.max(l.getY(), r.getY());
+        if (l.getX() != r.getX()) {
+            y = Math.max(yAt(s, columnStart(s, cx)), yAt(s, columnEnd(s, cx)));
+        }
+        return (int) Math.floor((y + SLACK) / cellSize);
+    }
+
+    private double columnStart(Segment s, int cx) {
+        return Math.max(s.getLeftEndPoint().getX(), (long) cx * cellSize);
+    }
+
+    private double columnEnd(Segment s, int cx) {
+        return Math.min(s.getRightEndPoint().getX(), ((long) cx + 1) * cellSize);
+    }
+
+    /**
+     * The height of (non vertical) segment s at x
+     */
+    private static double yAt(Segment s, double x) {
+        Point l = s.getLeftEndPoint();
+        Point r = s.getRightEndPoint();
+        //the differences are taken in double, as they may not fit in an int
+        return l.getY() + ((double) r.getY() - l.getY()) * ((x - l.getX()) / ((double) r.getX() - l.getX()));
+    }
+
+    private static Long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xffffffffL);
+    }
+
+    /**
+     * The ids of the segments in one cell
+     */
+    private static final class Cell {
+
+        private int[] ids = new int[4];
+        private int size;
+
+        void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+    }
+}
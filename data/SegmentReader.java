@@ -0,0 +1,248 @@
+package data;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a segment text file one segment at a time.  The file format is the
+ * number of segments followed by x1 y1 x2 y2 for each segment, all separated
+ * by whitespace (as written by Segment.toString).
+ *
+ * The file is parsed straight out of a reused buffer, so no objects are created
+ * per number, and malformed input is reported with its line number.  Since
+ * each segment is available as soon as it has been parsed, the reader can feed
+ * construction directly:
+ *
+ *      SegmentReader in = new SegmentReader(f);
+ *      while (in.next()) {
+ *          table.add(in.getX1(), in.getY1(), in.getX2(), in.getY2());
+ *      }
+ *      in.close();
+ *
+ * @author Tyler Chenhall
+ */
+public final class SegmentReader implements Closeable {
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final byte[] bytes;
+    //next unread byte of the buffer, and the end of the valid bytes
+    private int pos;
+    private int limit;
+    private boolean eof;
+    private int line = 1;
+    //declared number of segments, and number read so far
+    private final int count;
+    private int read;
+    //the current segment
+    private int x1;
+    private int y1;
+    private int x2;
+    private int y2;
+
+    /**
+     * Open a segment file and read the segment count
+     * @param f The file to read
+     * @throws IOException If the file cannot be read or does not start with a count
+     */
+    public SegmentReader(File f) throws IOException {
+        channel = new FileInputStream(f).getChannel();
+        bytes = new byte[1 << 16];
+        buffer = ByteBuffer.wrap(bytes);
+        try {
+            if (!skipWhitespace()) {
+                throw error("missing segment count");
+            }
+            long n = readNumber();
+            if (n < 0 || n > Integer.MAX_VALUE) {
+                throw error("invalid segment count " + n);
+            }
+            count = (int) n;
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Read the whole file into a new segment table
+     * @param f The file to read
+     * @return The table of segments, in file order
+     * @throws IOException If the file cannot be read or is malformed
+     */
+    public static SegmentTable readTable(File f) throws IOException {
+        SegmentReader in = new SegmentReader(f);
+        try {
+            SegmentTable table = new SegmentTable(Math.min(in.getCount(), 1 << 20));
+            while (in.next()) {
+                table.add(in.x1, in.y1, in.x2, in.y2);
+            }
+            return table;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Get the number of segments declared at the start of the file
+     * @return The segment count
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Get the line of the file the reader has reached
+     * @return The current line number, starting from 1
+     */
+    public int getLineNumber() {
+        return line;
+    }
+
+    /**
+     * Advance to the next segment
+     * @return True if a segment was read; false once all declared segments have been read
+     * @throws IOException If the file cannot be read, is malformed, or holds more
+     * or fewer segments than declared
+     */
+    public boolean next() throws IOException {
+        if (read == count) {
+            if (skipWhitespace()) {
+                throw error("more segments than the declared count of " + count);
+            }
+            return false;
+        }
+        x1 = readCoordinate();
+        y1 = readCoordinate();
+        x2 = readCoordinate();
+        y2 = readCoordinate();
+        read++;
+        return true;
+    }
+
+    public int getX1() {
+        return x1;
+    }
+
+    public int getY1() {
+        return y1;
+    }
+
+    public int getX2() {
+        return x2;
+    }
+
+    public int getY2() {
+        return y2;
+    }
+
+    /**
+     * Create a Segment for the current segment
+     * @return A new Segment
+     */
+    public Segment getSegment() {
+        return new Segment(new Point(x1, y1), new Point(x2, y2));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private int readCoordinate() throws IOException {
+        if (!skipWhitespace()) {
+            throw error("expected " + count + " segments but the file ends after " + read);
+        }
+        long v = readNumber();
+        if (v < Integer.MIN_VALUE || v > Integer.MAX_VALUE) {
+            throw error("coordinate " + v + " out of range");
+        }
+        return (int) v;
+    }
+
+    /**
+     * Parse an optionally signed decimal number starting at the current byte,
+     * which must be followed by whitespace or the end of the file
+     */
+    private long readNumber() throws IOException {
+        boolean negative = false;
+        if (bytes[pos] == '-' || bytes[pos] == '+') {
+            negative = bytes[pos] == '-';
+            pos++;
+        }
+        long v = 0;
+        int digits = 0;
+        while (pos < limit || fill()) {
+            int c = bytes[pos];
+            if (c < '0' || c > '9') {
+                if (!isWhitespace(c)) {
+                    throw error("unexpected character '" + (char) c + "'");
+                }
+                break;
+            }
+            v = v * 10 + (c - '0');
+            //stop before the value can overflow; it is out of range anyway
+            if (v > 0xffffffffL) {
+                throw error("number out of range");
+            }
+            digits++;
+            pos++;
+        }
+        if (digits == 0) {
+            throw error("expected a number");
+        }
+        return negative ? -v : v;
+    }
+
+    /**
+     * Skip whitespace, counting lines
+     * @return True if there is more input; false at the end of the file
+     */
+    private boolean skipWhitespace() throws IOException {
+        while (pos < limit || fill()) {
+            int c = bytes[pos];
+            if (!isWhitespace(c)) {
+                return true;
+            }
+            if (c == '\n') {
+                line++;
+            }
+            pos++;
+        }
+        return false;
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\f';
+    }
+
+    /**
+     * Refill the buffer from the channel
+     * @return True if more bytes are available
+     */
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        buffer.clear();
+        int n;
+        do {
+            n = channel.read(buffer);
+        } while (n == 0);
+        if (n < 0) {
+            eof = true;
+            return false;
+        }
+        pos = 0;
+        limit = n;
+        return true;
+    }
+
+    private IOException error(String message) {
+        return new IOException("Malformed segment file at line " + line + ": " + message);
+    }
+}
@@ -0,0 +1,575 @@
+package data;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Turns a set of segments which may cross into valid input for a trapezoidal
+ * map, by splitting the segments wherever they meet another segment.  The
+ * meeting points are found with a Bentley-Ottmann sweep in O((n + k) log n)
+ * time for k meeting points, computed exactly, and then rounded to the
+ * nearest integer point so the pieces fit in a Point.  Pieces which come out
+ * the same (from duplicate segments or collinear overlaps) are kept once, and
+ * pieces of zero length are dropped.
+ *
+ * Rounding a meeting point moves the pieces around it by up to half a unit,
+ * which can make one of them cross a segment passing close by.  So the result
+ * is checked with SegmentValidator, and split again until it is clean, which
+ * takes a pass or two more on crowded input.
+ *
+ * The exact tests on crossing points are done in long arithmetic, so
+ * coordinates must be below 2^30 in absolute value; split rejects larger
+ * ones.  Crossing points are compared in floating point first, and with
+ * BigInteger arithmetic only when that is too close to call.
+ *
+ * @author Tyler Chenhall
+ */
+public final class SegmentSplitter {
+
+    //split passes to try before giving up on a clean result
+    private static final int MAX_PASSES = 8;
+    //probes in the status for the segments through the sweep point: LOW is
+    //below all of them, HIGH above all of them
+    private static final Integer LOW = -1;
+    private static final Integer HIGH = -2;
+    //relative error allowed for in the floating point filters, many times
+    //the rounding error of the few operations they take
+    private static final double ERROR = 1e-14;
+    //coordinates must be below this in absolute value
+    private static final int LIMIT = 1 << 30;
+
+    private final SegmentTable segs;
+    //event points, with the segments starting at each (null if none)
+    private final TreeMap<Pt, ArrayList<Integer>> events = new TreeMap<Pt, ArrayList<Integer>>();
+    //the segments crossing the sweep line, from bottom to top
+    private final TreeSet<Integer> status;
+    //the current event point, and whether the status is ordered just
+    //before it (while removing the segments through it) or just after it
+    private Pt p;
+    private boolean before;
+    //heightVsSweep of each segment at the event it was last worked out for,
+    //as exact answers at a crossing are costly and asked for many times
+    private int event;
+    private int[] sideEvent;
+    private int[] side;
+    //the split points found so far, in sweep order: segment, rounded x, rounded y
+    private int[] splits = new int[48];
+    private int splitCount;
+
+    private SegmentSplitter(SegmentTable segs) {
+        this.segs = segs;
+        status = new TreeSet<Integer>(new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return order(a, b);
+            }
+        });
+    }
+
+    /**
+     * Split the segments of the table where they cross or touch each other,
+     * so that no two pieces meet except at a common endpoint
+     * @param segs The segments to split
+     * @return A new table with the pieces
+     * @throws IllegalArgumentException If a coordinate is not below 2^30 in absolute value
+     * @throws IllegalStateException If rounding keeps creating new crossings (not seen in practice)
+     */
+    public static SegmentTable split(SegmentTable segs) {
+        if (segs.size() > 0 && (segs.getMinX() <= -LIMIT || segs.getMaxX() >= LIMIT
+                || segs.getMinY() <= -LIMIT || segs.getMaxY() >= LIMIT)) {
+            throw new IllegalArgumentException("Segment coordinates must be below 2^30 in absolute value");
+        }
+        SegmentTable out = new SegmentSplitter(segs).sweep();
+        for (int pass = 1; pass < MAX_PASSES; pass++) {
+            if (SegmentValidator.findCrossing(out) == null) {
+                return out;
+            }
+            out = new SegmentSplitter(out).sweep();
+        }
+        if (SegmentValidator.findCrossing(out) == null) {
+            return out;
+        }
+        throw new IllegalStateException("Segments still cross after " + MAX_PASSES + " split passes");
+    }
+
+    /**
+     * Split the (non-null) segments of the array where they cross or touch
+     * each other, so that no two pieces meet except at a common endpoint
+     * @param segs The segments to split
+     * @return The pieces
+     * @throws IllegalArgumentException If a coordinate is not below 2^30 in absolute value
+     */
+    public static Segment[] split(Segment[] segs) {
+        return split(SegmentTable.fromSegments(segs)).toSegments();
+    }
+
+    private SegmentTable sweep() {
+        int n = segs.size();
+        sideEvent = new int[n];
+        side = new int[n];
+        for (int i = 0; i < n; i++) {
+            if (segs.getLeftX(i) == segs.getRightX(i) && segs.getLeftY(i) == segs.getRightY(i)) {
+                continue;
+            }
+            Pt l = new Pt(segs.getLeftX(i), segs.getLeftY(i));
+            ArrayList<Integer> starts = events.get(l);
+            if (starts == null) {
+                starts = new ArrayList<Integer>(2);
+                events.put(l, starts);
+            }
+            starts.add(i);
+            Pt r = new Pt(segs.getRightX(i), segs.getRightY(i));
+            if (!events.containsKey(r)) {
+                events.put(r, null);
+            }
+        }
+        while (!events.isEmpty()) {
+            Map.Entry<Pt, ArrayList<Integer>> e = events.pollFirstEntry();
+            handle(e.getKey(), e.getValue());
+        }
+        return pieces();
+    }
+
+    /**
+     * Move the sweep to event point q: take out the segments through q, and
+     * put back those which go on past it, along with the ones starting there
+     */
+    private void handle(Pt q, ArrayList<Integer> starts) {
+        p = q;
+        before = true;
+        event++;
+        NavigableSet<Integer> through = status.subSet(LOW, false, HIGH, false);
+        ArrayList<Integer> back = new ArrayList<Integer>();
+        for (Iterator<Integer> it = through.iterator(); it.hasNext();) {
+            int s = it.next();
+            it.remove();
+            if (!p.isAt(segs.getRightX(s), segs.getRightY(s))) {
+                //q is inside s
+                back.add(s);
+                addSplit(s);
+            }
+        }
+        before = false;
+        if (starts != null) {
+            back.addAll(starts);
+        }
+        if (back.isEmpty()) {
+            findEvent(status.lower(LOW), status.higher(HIGH));
+        } else {
+            status.addAll(back);
+            Integer first = status.higher(LOW);
+            Integer last = status.lower(HIGH);
+            findEvent(status.lower(first), first);
+            findEvent(last, status.higher(last));
+        }
+    }
+
+    private void addSplit(int s) {
+        if (splitCount == splits.length) {
+            splits = Arrays.copyOf(splits, splits.length * 2);
+        }
+        splits[splitCount++] = s;
+        splits[splitCount++] = p.roundX();
+        splits[splitCount++] = p.roundY();
+    }
+
+    /**
+     * Queue the point where neighbors a and b meet, if they meet at a single
+     * point after the sweep point
+     */
+    private void findEvent(Integer a, Integer b) {
+        if (a == null || b == null) {
+            return;
+        }
+        int o1 = orient(a, segs.getLeftX(b), segs.getLeftY(b));
+        int o2 = orient(a, segs.getRightX(b), segs.getRightY(b));
+        int o3 = orient(b, segs.getLeftX(a), segs.getLeftY(a));
+        int o4 = orient(b, segs.getRightX(a), segs.getRightY(a));
+        if ((o1 == 0 && o2 == 0) || o1 * o2 > 0 || o3 * o4 > 0) {
+            //collinear (where the endpoints are already events) or apart
+            return;
+        }
+        Pt q;
+        if (o1 == 0) {
+            q = new Pt(segs.getLeftX(b), segs.getLeftY(b));
+        } else if (o2 == 0) {
+            q = new Pt(segs.getRightX(b), segs.getRightY(b));
+        } else if (o3 == 0) {
+            q = new Pt(segs.getLeftX(a), segs.getLeftY(a));
+        } else if (o4 == 0) {
+            q = new Pt(segs.getRightX(a), segs.getRightY(a));
+        } else {
+            q = crossing(a, b);
+        }
+        if (q.compareTo(p) > 0 && !events.containsKey(q)) {
+            events.put(q, null);
+        }
+    }
+
+    /**
+     * The exact point where segments a and b cross
+     */
+    private Pt crossing(int a, int b) {
+        long ax = segs.getLeftX(a);
+        long ay = segs.getLeftY(a);
+        long adx = segs.getRightX(a) - ax;
+        long ady = segs.getRightY(a) - ay;
+        long bdx = segs.getRightX(b) - (long) segs.getLeftX(b);
+        long bdy = segs.getRightY(b) - (long) segs.getLeftY(b);
+        //the crossing is at a + adx * t, for t = num / den
+        long den = adx * bdy - ady * bdx;
+        long num = (segs.getLeftX(b) - ax) * bdy - (segs.getLeftY(b) - ay) * bdx;
+        if (den < 0) {
+            den = -den;
+            num = -num;
+        }
+        BigInteger d = BigInteger.valueOf(den);
+        BigInteger t = BigInteger.valueOf(num);
+        BigInteger x = BigInteger.valueOf(ax).multiply(d).add(BigInteger.valueOf(adx).multiply(t));
+        BigInteger y = BigInteger.valueOf(ay).multiply(d).add(BigInteger.valueOf(ady).multiply(t));
+        return new Pt(x, y, d);
+    }
+
+    /**
+     * Order two segments (or probes) on the sweep line from bottom to top.
+     * Segments are compared where they cross the vertical line through the
+     * sweep point, with a vertical segment (which is only in the status while
+     * the sweep point is on it) at the sweep point.  Segments which cross
+     * that line at the same point are ordered as they are just after the
+     * point if the sweep has passed it, and just before it otherwise;
+     * collinear segments by index.
+     */
+    private int order(Integer a, Integer b) {
+        if (a.equals(b)) {
+            return 0;
+        }
+        int c;
+        if (atSweep(a)) {
+            c = atSweep(b) ? 0 : -heightVsSweep(b);
+        } else if (atSweep(b)) {
+            c = heightVsSweep(a);
+        } else {
+            c = compareHeights(a, b);
+        }
+        if (c != 0) {
+            return c;
+        }
+        if (a.equals(LOW) || b.equals(HIGH)) {
+            return -1;
+        }
+        if (a.equals(HIGH) || b.equals(LOW)) {
+            return 1;
+        }
+        //a and b meet the line at the same point: order by slope after it
+        int meet = atSweep(a) ? 0 : heightVsSweep(a);
+        c = compareSlopes(a, b);
+        if (meet > 0 || (meet == 0 && before)) {
+            c = -c;
+        }
+        return c != 0 ? c : Integer.compare(a, b);
+    }
+
+    private boolean atSweep(int s) {
+        return s < 0 || segs.getLeftX(s) == segs.getRightX(s);
+    }
+
+    /**
+     * Compare the slopes of a and b, with vertical segments steepest
+     */
+    private int compareSlopes(int a, int b) {
+        long adx = segs.getRightX(a) - (long) segs.getLeftX(a);
+        long ady = segs.getRightY(a) - (long) segs.getLeftY(a);
+        long bdx = segs.getRightX(b) - (long) segs.getLeftX(b);
+        long bdy = segs.getRightY(b) - (long) segs.getLeftY(b);
+        if (adx == 0 || bdx == 0) {
+            return Boolean.compare(adx == 0, bdx == 0);
+        }
+        return -Predicates.cross(adx, ady, bdx, bdy);
+    }
+
+    /**
+     * Compare the heights of non vertical segments a and b at the x of the
+     * sweep point
+     */
+    private int compareHeights(int a, int b) {
+        long adx = segs.getRightX(a) - (long) segs.getLeftX(a);
+        long bdx = segs.getRightX(b) - (long) segs.getLeftX(b);
+        if (p.d == null) {
+            //height = num / dx, compared by whole and fractional parts
+            long an = height(a, p.x);
+            long bn = height(b, p.x);
+            int c = Long.compare(Math.floorDiv(an, adx), Math.floorDiv(bn, bdx));
+            if (c != 0) {
+                return c;
+            }
+            return Long.compare(Math.floorMod(an, adx) * bdx, Math.floorMod(bn, bdx) * adx);
+        }
+        //the sweep point is a crossing: try floating point first
+        double ha = approxHeight(a);
+        double hb = approxHeight(b);
+        double e = heightError(a, ha) + heightError(b, hb);
+        if (ha - hb > e) {
+            return 1;
+        }
+        if (hb - ha > e) {
+            return -1;
+        }
+        //segments through the crossing are common here, and the sweep point
+        //tells them apart from the others
+        int sa = heightVsSweep(a);
+        int sb = heightVsSweep(b);
+        if (sa != sb || sa == 0) {
+            return Integer.compare(sa, sb);
+        }
+        return height(a).multiply(BigInteger.valueOf(bdx)).compareTo(height(b).multiply(BigInteger.valueOf(adx)));
+    }
+
+    /**
+     * Compare the height of non vertical segment s at the x of the sweep
+     * point with the y of the sweep point
+     */
+    private int heightVsSweep(int s) {
+        long dx = segs.getRightX(s) - (long) segs.getLeftX(s);
+        if (p.d == null) {
+            return Long.compare(height(s, p.x), p.y * dx);
+        }
+        if (sideEvent[s] != event) {
+            double h = approxHeight(s);
+            double e = heightError(s, h) + ERROR * Math.abs(p.fy);
+            if (h - p.fy > e) {
+                side[s] = 1;
+            } else if (p.fy - h > e) {
+                side[s] = -1;
+            } else {
+                side[s] = height(s).compareTo(p.by.multiply(BigInteger.valueOf(dx)));
+            }
+            sideEvent[s] = event;
+        }
+        return side[s];
+    }
+
+    /**
+     * The height of non vertical segment s at integer x, times the width of s
+     */
+    private long height(int s, long x) {
+        long lx = segs.getLeftX(s);
+        long ly = segs.getLeftY(s);
+        return ly * (segs.getRightX(s) - lx) + (segs.getRightY(s) - ly) * (x - lx);
+    }
+
+    /**
+     * The height of non vertical segment s at the x of the sweep point, in
+     * floating point
+     */
+    private double approxHeight(int s) {
+        double lx = segs.getLeftX(s);
+        double ly = segs.getLeftY(s);
+        return ly + (segs.getRightY(s) - ly) * ((p.fx - lx) / (segs.getRightX(s) - lx));
+    }
+
+    /**
+     * A bound on the error of approxHeight(s), which came out as h
+     */
+    private double heightError(int s, double h) {
+        double lx = segs.getLeftX(s);
+        double slope = Math.abs((segs.getRightY(s) - (double) segs.getLeftY(s)) / (segs.getRightX(s) - lx));
+        return ERROR * (slope * (Math.abs(p.fx) + Math.abs(lx)) + Math.abs(h) + 1);
+    }
+
+    /**
+     * The height of non vertical segment s at the (fractional) x of the sweep
+     * point, times the width of s and the denominator of the sweep point
+     */
+    private BigInteger height(int s) {
+        long lx = segs.getLeftX(s);
+        long ly = segs.getLeftY(s);
+        BigInteger dx = BigInteger.valueOf(segs.getRightX(s) - lx);
+        BigInteger dy = BigInteger.valueOf(segs.getRightY(s) - ly);
+        return BigInteger.valueOf(ly).multiply(dx).multiply(p.d)
+                .add(dy.multiply(p.bx.subtract(BigInteger.valueOf(lx).multiply(p.d))));
+    }
+
+    /**
+     * Which side of the line through segment s the point (x, y) is on
+     * @return 1 if above (to the left of the direction of s), -1 if below, 0 if on the line
+     */
+    private int orient(int s, int x, int y) {
+        return Predicates.orient(segs.getLeftX(s), segs.getLeftY(s), segs.getRightX(s), segs.getRightY(s), x, y);
+    }
+
+    /**
+     * Cut each segment at its split points, which are in order along it since
+     * the sweep found them in order, and keep one copy of each piece
+     */
+    private SegmentTable pieces() {
+        int n = segs.size();
+        //group the split points by segment, keeping their order
+        int[] start = new int[n + 1];
+        for (int k = 0; k < splitCount; k += 3) {
+            start[splits[k] + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            start[i + 1] += start[i];
+        }
+        int[] next = Arrays.copyOf(start, n);
+        int[] xs = new int[splitCount / 3];
+        int[] ys = new int[splitCount / 3];
+        for (int k = 0; k < splitCount; k += 3) {
+            int j = next[splits[k]]++;
+            xs[j] = splits[k + 1];
+            ys[j] = splits[k + 2];
+        }
+
+        SegmentTable out = new SegmentTable(n + xs.length);
+        HashSet<Piece> kept = new HashSet<Piece>();
+        for (int i = 0; i < n; i++) {
+            int x = segs.getLeftX(i);
+            int y = segs.getLeftY(i);
+            for (int j = start[i]; j <= start[i + 1]; j++) {
+                int x2 = j < start[i + 1] ? xs[j] : segs.getRightX(i);
+                int y2 = j < start[i + 1] ? ys[j] : segs.getRightY(i);
+                //rounding can turn a piece of a falling segment upside down
+                boolean flip = x == x2 && y > y2;
+                if ((x != x2 || y != y2)
+                        && kept.add(flip ? new Piece(x2, y2, x, y) : new Piece(x, y, x2, y2))) {
+                    out.add(x, y, x2, y2);
+                }
+                x = x2;
+                y = y2;
+            }
+        }
+        out.trimToSize();
+        return out;
+    }
+
+    /**
+     * An exact event point: (x, y) if d is null, and (bx / d, by / d)
+     * otherwise, with d positive
+     */
+    private static final class Pt implements Comparable<Pt> {
+
+        private final long x;
+        private final long y;
+        private final BigInteger bx;
+        private final BigInteger by;
+        private final BigInteger d;
+        //the point in floating point, for the filters
+        private final double fx;
+        private final double fy;
+
+        Pt(long x, long y) {
+            this.x = x;
+            this.y = y;
+            this.bx = null;
+            this.by = null;
+            this.d = null;
+            this.fx = x;
+            this.fy = y;
+        }
+
+        Pt(BigInteger bx, BigInteger by, BigInteger d) {
+            this.x = 0;
+            this.y = 0;
+            this.bx = bx;
+            this.by = by;
+            this.d = d;
+            this.fx = bx.doubleValue() / d.doubleValue();
+            this.fy = by.doubleValue() / d.doubleValue();
+        }
+
+        boolean isAt(int x, int y) {
+            return d == null ? this.x == x && this.y == y : compareTo(new Pt(x, y)) == 0;
+        }
+
+        int roundX() {
+            return d == null ? (int) x : round(bx, d);
+        }
+
+        int roundY() {
+            return d == null ? (int) y : round(by, d);
+        }
+
+        /**
+         * Round n / d to the nearest integer, halves up
+         */
+        private static int round(BigInteger n, BigInteger d) {
+            BigInteger twice = d.shiftLeft(1);
+            BigInteger[] qr = n.shiftLeft(1).add(d).divideAndRemainder(twice);
+            BigInteger q = qr[0];
+            if (qr[1].signum() < 0) {
+                //floor, not truncate
+                q = q.subtract(BigInteger.ONE);
+            }
+            return q.intValue();
+        }
+
+        /**
+         * Compare in the order of Point.compareTo: by x, then by y
+         */
+        @Override
+        public int compareTo(Pt o) {
+            if (d == null && o.d == null) {
+                int c = Long.compare(x, o.x);
+                return c != 0 ? c : Long.compare(y, o.y);
+            }
+            double e = ERROR * (Math.abs(fx) + Math.abs(o.fx));
+            if (fx - o.fx > e) {
+                return 1;
+            }
+            if (o.fx - fx > e) {
+                return -1;
+            }
+            BigInteger d1 = d == null ? BigInteger.ONE : d;
+            BigInteger d2 = o.d == null ? BigInteger.ONE : o.d;
+            BigInteger x1 = d == null ? BigInteger.valueOf(x) : bx;
+            BigInteger x2 = o.d == null ? BigInteger.valueOf(o.x) : o.bx;
+            int c = x1.multiply(d2).compareTo(x2.multiply(d1));
+            if (c != 0) {
+                return c;
+            }
+            BigInteger y1 = d == null ? BigInteger.valueOf(y) : by;
+            BigInteger y2 = o.d == null ? BigInteger.valueOf(o.y) : o.by;
+            return y1.multiply(d2).compareTo(y2.multiply(d1));
+        }
+    }
+
+    /**
+     * The endpoints of a piece, for finding duplicates
+     */
+    private static final class Piece {
+
+        private final int x1;
+        private final int y1;
+        private final int x2;
+        private final int y2;
+
+        Piece(int x1, int y1, int x2, int y2) {
+            this.x1 = x1;
+            this.y1 = y1;
+            this.x2 = x2;
+            this.y2 = y2;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Piece)) {
+                return false;
+            }
+            Piece q = (Piece) o;
+            return x1 == q.x1 && y1 == q.y1 && x2 == q.x2 && y2 == q.y2;
+        }
+
+        @Override
+        public int hashCode() {
+            return ((x1 * 31 + y1) * 31 + x2) * 31 + y2;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package data;
+
+import java.util.Arrays;
+
+/**
+ * A growable table of segments stored as parallel int arrays (structure of
+ * arrays) instead of Segment and Point objects.  A segment is referred to by
+ * its index in the table, and costs 16 bytes instead of the three objects of
+ * a Segment.  The segment readers, SegmentValidator and SegmentSplitter work
+ * on tables; toSegments gives the Segment array a map is built from.
+ *
+ * As with Segment, the endpoints of each segment are stored in the order
+ * given by the compareTo function of the Point class.
+ *
+ * @author Tyler Chenhall
+ */
+public final class SegmentTable {
+
+    private int[] lx;
+    private int[] ly;
+    private int[] rx;
+    private int[] ry;
+    private int size;
+    //bounding box of the segments in the table
+    private int minx = Integer.MAX_VALUE;
+    private int maxx = Integer.MIN_VALUE;
+    private int miny = Integer.MAX_VALUE;
+    private int maxy = Integer.MIN_VALUE;
+
+    public SegmentTable() {
+        this(16);
+    }
+
+    /**
+     * Create an empty table with room for the given number of segments
+     * @param capacity The initial capacity
+     */
+    public SegmentTable(int capacity) {
+        capacity = Math.max(capacity, 1);
+        lx = new int[capacity];
+        ly = new int[capacity];
+        rx = new int[capacity];
+        ry = new int[capacity];
+    }
+
+    /**
+     * Create a table holding the (non-null) segments of the array, in order
+     * @param segs The segments to store
+     * @return The new table
+     */
+    public static SegmentTable fromSegments(Segment[] segs) {
+        SegmentTable table = new SegmentTable(segs.length);
+        for (int i = 0; i < segs.length; i++) {
+            if (segs[i] != null) {
+                table.add(segs[i]);
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Add a segment to the table
+     * @param x1 The x-coordinate of one endpoint
+     * @param y1 The y-coordinate of one endpoint
+     * @param x2 The x-coordinate of the other endpoint
+     * @param y2 The y-coordinate of the other endpoint
+     * @return The index of the new segment
+     */
+    public int add(int x1, int y1, int x2, int y2) {
+        if (size == lx.length) {
+            int capacity = lx.length + (lx.length >> 1) + 1;
+            lx = Arrays.copyOf(lx, capacity);
+            ly = Arrays.copyOf(ly, capacity);
+            rx = Arrays.copyOf(rx, capacity);
+            ry = Arrays.copyOf(ry, capacity);
+        }
+        //same endpoint order as Segment
+        if (x1 < x2 || (x1 == x2 && y1 <= y2)) {
+            lx[size] = x1;
+            ly[size] = y1;
+            rx[size] = x2;
+            ry[size] = y2;
+        } else {
+            lx[size] = x2;
+            ly[size] = y2;
+            rx[size] = x1;
+            ry[size] = y1;
+        }
+        minx = Math.min(minx, Math.min(x1, x2));
+        maxx = Math.max(maxx, Math.max(x1, x2));
+        miny = Math.min(miny, Math.min(y1, y2));
+        maxy = Math.max(maxy, Math.max(y1, y2));
+        return size++;
+    }
+
+    /**
+     * Add a segment to the table
+     * @param s The segment to add
+     * @return The index of the new segment
+     */
+    public int add(Segment s) {
+        return add(s.getLeftEndPoint().getX(), s.getLeftEndPoint().getY(),
+                s.getRightEndPoint().getX(), s.getRightEndPoint().getY());
+    }
+
+    /**
+     * Get the number of segments in the table
+     * @return The number of segments
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Release any unused capacity
+     */
+    public void trimToSize() {
+        lx = Arrays.copyOf(lx, Math.max(size, 1));
+        ly = Arrays.copyOf(ly, Math.max(size, 1));
+        rx = Arrays.copyOf(rx, Math.max(size, 1));
+        ry = Arrays.copyOf(ry, Math.max(size, 1));
+    }
+
+    public int getLeftX(int i) {
+        return lx[i];
+    }
+
+    public int getLeftY(int i) {
+        return ly[i];
+    }
+
+    public int getRightX(int i) {
+        return rx[i];
+    }
+
+    public int getRightY(int i) {
+        return ry[i];
+    }
+
+    /**
+     * Get the minimum x value over all segments (Integer.MAX_VALUE if empty)
+     * @return The minimum x value
+     */
+    public int getMinX() {
+        return minx;
+    }
+
+    /**
+     * Get the maximum x value over all segments (Integer.MIN_VALUE if empty)
+     * @return The maximum x value
+     */
+    public int getMaxX() {
+        return maxx;
+    }
+
+    /**
+     * Get the minimum y value over all segments (Integer.MAX_VALUE if empty)
+     * @return The minimum y value
+     */
+    public int getMinY() {
+        return miny;
+    }
+
+    /**
+     * Get the maximum y value over all segments (Integer.MIN_VALUE if empty)
+     * @return The maximum y value
+     */
+    public int getMaxY() {
+        return maxy;
+    }
+
+    /**
+     * Create a Segment object for the segment at the given index
+     * @param i The index of the segment
+     * @return A new Segment with the same endpoints
+     */
+    public Segment getSegment(int i) {
+        return new Segment(new Point(lx[i], ly[i]), new Point(rx[i], ry[i]));
+    }
+
+    /**
+     * Create Segment objects for the whole table
+     * @return An array holding a new Segment for each index
+     */
+    public Segment[] toSegments() {
+        Segment[] arr = new Segment[size];
+        for (int i = 0; i < size; i++) {
+            arr[i] = getSegment(i);
+        }
+        return arr;
+    }
+}
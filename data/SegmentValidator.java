@@ -0,0 +1,211 @@
+package data;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.TreeSet;
+
+/**
+ * Checks that a set of segments is valid input for a trapezoidal map: that no
+ * two segments meet anywhere but at a common endpoint.  Crossings, an
+ * endpoint on the inside of another segment, and collinear overlaps are all
+ * reported, like Segment.crosses would, but the check is a Shamos-Hoey
+ * sweep which takes O(n log n) time instead of testing every pair.
+ *
+ * The sweep keeps the segments crossing the sweep line in a balanced tree,
+ * from bottom to top, and only tests segments when they become neighbors in
+ * the tree.  Two segments which meet badly are neighbors at some point before
+ * the sweep reaches the leftmost bad meeting point, so the first bad pair is
+ * found before the order of the tree can go wrong.  Segments of zero length
+ * are ignored, as the map builders skip them.
+ *
+ * The tests are exact (see Predicates) for any int coordinates.
+ *
+ * @author Tyler Chenhall
+ */
+public final class SegmentValidator {
+
+    private final SegmentTable segs;
+
+    private SegmentValidator(SegmentTable segs) {
+        this.segs = segs;
+    }
+
+    /**
+     * Find a pair of segments of the table which meet other than at a common
+     * endpoint
+     * @param segs The segments to check
+     * @return The indices of the two segments (lower first), or null if the segments are valid
+     */
+    public static int[] findCrossing(SegmentTable segs) {
+        return new SegmentValidator(segs).sweep();
+    }
+
+    /**
+     * Find a pair of (non-null) segments of the array which meet other than
+     * at a common endpoint
+     * @param segs The segments to check
+     * @return The two segments, or null if the segments are valid
+     */
+    public static Segment[] findCrossing(Segment[] segs) {
+        SegmentTable table = new SegmentTable(segs.length);
+        int[] index = new int[segs.length];
+        for (int i = 0; i < segs.length; i++) {
+            if (segs[i] != null) {
+                index[table.add(segs[i])] = i;
+            }
+        }
+        int[] pair = findCrossing(table);
+        if (pair == null) {
+            return null;
+        }
+        return new Segment[]{segs[index[pair[0]]], segs[index[pair[1]]]};
+    }
+
+    private int[] sweep() {
+        //two events per segment: 2i for its right endpoint, 2i + 1 for its
+        //left, sorted by point with the right endpoints first
+        int n = segs.size();
+        Integer[] events = new Integer[2 * n];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (segs.getLeftX(i) != segs.getRightX(i) || segs.getLeftY(i) != segs.getRightY(i)) {
+                events[count++] = 2 * i;
+                events[count++] = 2 * i + 1;
+            }
+        }
+        Arrays.sort(events, 0, count, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int c = Integer.compare(eventX(a), eventX(b));
+                if (c == 0) {
+                    c = Integer.compare(eventY(a), eventY(b));
+                }
+                if (c == 0) {
+                    c = Integer.compare(a & 1, b & 1);
+                }
+                return c;
+            }
+        });
+
+        TreeSet<Integer> status = new TreeSet<Integer>(new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return order(a, b);
+            }
+        });
+        for (int k = 0; k < count; k++) {
+            int e = events[k];
+            Integer s = e >> 1;
+            if ((e & 1) == 1) {
+                status.add(s);
+                Integer below = status.lower(s);
+                Integer above = status.higher(s);
+                if (below != null && meet(below, s)) {
+                    return pair(below, s);
+                }
+                if (above != null && meet(s, above)) {
+                    return pair(s, above);
+                }
+            } else {
+                Integer below = status.lower(s);
+                Integer above = status.higher(s);
+                status.remove(s);
+                if (below != null && above != null && meet(below, above)) {
+                    return pair(below, above);
+                }
+            }
+        }
+        return null;
+    }
+
+    private int eventX(int e) {
+        return (e & 1) == 1 ? segs.getLeftX(e >> 1) : segs.getRightX(e >> 1);
+    }
+
+    private int eventY(int e) {
+        return (e & 1) == 1 ? segs.getLeftY(e >> 1) : segs.getRightY(e >> 1);
+    }
+
+    private static int[] pair(int a, int b) {
+        return new int[]{Math.min(a, b), Math.max(a, b)};
+    }
+
+    /**
+     * Order two segments on the sweep line from bottom to top, comparing them
+     * at the later of their left endpoints (which is right for segments that
+     * do not cross), and by index when they are collinear
+     */
+    private int order(int a, int b) {
+        if (a == b) {
+            return 0;
+        }
+        int c = Integer.compare(segs.getLeftX(a), segs.getLeftX(b));
+        if (c == 0) {
+            c = Integer.compare(segs.getLeftY(a), segs.getLeftY(b));
+        }
+        if (c < 0) {
+            return -order(b, a);
+        }
+        //a starts at or after b: place a against the line of b where it starts
+        int side = orient(b, segs.getLeftX(a), segs.getLeftY(a));
+        if (side == 0) {
+            side = orient(b, segs.getRightX(a), segs.getRightY(a));
+        }
+        if (side == 0) {
+            return Integer.compare(a, b);
+        }
+        return side;
+    }
+
+    /**
+     * Check whether segments a and b meet anywhere but at a common endpoint
+     */
+    private boolean meet(int a, int b) {
+        int o1 = orient(a, segs.getLeftX(b), segs.getLeftY(b));
+        int o2 = orient(a, segs.getRightX(b), segs.getRightY(b));
+        int o3 = orient(b, segs.getLeftX(a), segs.getLeftY(a));
+        int o4 = orient(b, segs.getRightX(a), segs.getRightY(a));
+        if (o1 == 0 && o2 == 0) {
+            //collinear: bad if they share more than one point, that is if
+            //the later left endpoint comes before the earlier right endpoint
+            boolean aLater = compare(segs.getLeftX(a), segs.getLeftY(a), segs.getLeftX(b), segs.getLeftY(b)) > 0;
+            boolean aEarlier = compare(segs.getRightX(a), segs.getRightY(a), segs.getRightX(b), segs.getRightY(b)) < 0;
+            int l = aLater ? a : b;
+            int r = aEarlier ? a : b;
+            return compare(segs.getLeftX(l), segs.getLeftY(l), segs.getRightX(r), segs.getRightY(r)) < 0;
+        }
+        if (o1 * o2 > 0 || o3 * o4 > 0) {
+            return false;
+        }
+        //they meet at a single point, which is fine if it is a common endpoint
+        return !(sameLeft(a, b) || sameRight(a, b) || leftIsRight(a, b) || leftIsRight(b, a));
+    }
+
+    private boolean sameLeft(int a, int b) {
+        return segs.getLeftX(a) == segs.getLeftX(b) && segs.getLeftY(a) == segs.getLeftY(b);
+    }
+
+    private boolean sameRight(int a, int b) {
+        return segs.getRightX(a) == segs.getRightX(b) && segs.getRightY(a) == segs.getRightY(b);
+    }
+
+    private boolean leftIsRight(int a, int b) {
+        return segs.getLeftX(a) == segs.getRightX(b) && segs.getLeftY(a) == segs.getRightY(b);
+    }
+
+    /**
+     * Which side of the line through segment s the point (x, y) is on
+     * @return 1 if above (to the left of the direction of s), -1 if below, 0 if on the line
+     */
+    private int orient(int s, int x, int y) {
+        return Predicates.orient(segs.getLeftX(s), segs.getLeftY(s), segs.getRightX(s), segs.getRightY(s), x, y);
+    }
+
+    /**
+     * Compare two points in the order of Point.compareTo
+     */
+    private static int compare(int x1, int y1, int x2, int y2) {
+        int c = Integer.compare(x1, x2);
+        return c != 0 ? c : Integer.compare(y1, y2);
+    }
+}
@@ -0,0 +1,363 @@
+package data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Builds a trapezoidal map in parallel by cutting the bounding box into
+ * vertical slabs, building a map for each slab concurrently, and stitching
+ * the slab maps together.
+ *
+ * Each slab map is built from every segment which overlaps the slab (the
+ * segments are not clipped).  Inside its slab such a map is exactly the full
+ * map: every wall in the slab comes from an endpoint in the slab, and ends on
+ * segments which cross the slab.  So stitching only has to
+ *      1) drop the XNodes of each slab map which lie outside the slab, since
+ *         a query routed to the slab always goes the same way at them
+ *      2) glue the pieces of a trapezoid which cross a slab boundary back into
+ *         one trapezoid, and give every trapezoid its neighbors in the full map
+ *      3) put a balanced layer of XNodes on the slab boundaries on top
+ * and the result is the same map as the sequential construction, with the
+ * same answer to every query.
+ *
+ * @author Tyler Chenhall
+ */
+final class SlabBuilder {
+
+    private SlabBuilder() {
+    }
+
+    /**
+     * @see MapBuilder#buildParallel(Segment[], int, int, int, int, long, int, ForkJoinPool)
+     */
+    static SearchStructure build(Segment[] segs, int lx, int rx, int ly, int ry, long seed, int slabs,
+            ForkJoinPool pool) {
+        long t1 = System.nanoTime();
+        // 1. the bounding box, shared by all slab maps
+        ArrayList<Segment> all = new ArrayList<Segment>(segs.length);
+        int minx = lx;
+        int maxx = rx;
+        int miny = ly;
+        int maxy = ry;
+        for (int i = 0; i < segs.length; i++) {
+            if (segs[i] != null) {
+                all.add(segs[i]);
+                minx = Math.min(minx, segs[i].getMinX());
+                maxx = Math.max(maxx, segs[i].getMaxX());
+                miny = Math.min(miny, segs[i].getMinY());
+                maxy = Math.max(maxy, segs[i].getMaxY());
+            }
+        }
+        Segment boxTop = new Segment(new Point(minx, maxy), new Point(maxx, maxy));
+        Segment boxBottom = new Segment(new Point(minx, miny), new Point(maxx, miny));
+
+        // 2. slab boundaries at quantiles of the endpoint x-coordinates, so the
+        // slabs hold about the same number of endpoints.  Slab i holds the x
+        // values from bounds[i - 1] up to (not including) bounds[i].
+        int[] xs = new int[2 * all.size()];
+        for (int i = 0; i < all.size(); i++) {
+            xs[2 * i] = all.get(i).getLeftEndPoint().getX();
+            xs[2 * i + 1] = all.get(i).getRightEndPoint().getX();
+        }
+        Arrays.sort(xs);
+        int[] bounds = new int[Math.max(slabs - 1, 0)];
+        int k = 0;
+        for (int j = 1; j < slabs && xs.length > 0; j++) {
+            int b = xs[(int) ((long) j * xs.length / slabs)];
+            if (b > minx && (k == 0 || b > bounds[k - 1])) {
+                bounds[k++] = b;
+            }
+        }
+        bounds = Arrays.copyOf(bounds, k);
+        Random seeds = new Random(seed);
+        if (k == 0) {
+            return new SearchStructure(all, boxTop, boxBottom, seeds.nextLong());
+        }
+        //the boundaries as points: a query point goes right at cuts[j] exactly
+        //when its x-coordinate is at least bounds[j]
+        Point[] cuts = new Point[k];
+        for (int j = 0; j < k; j++) {
+            cuts[j] = new Point(bounds[j], Integer.MIN_VALUE);
+        }
+
+        // 3. hand each segment to every slab it overlaps, and build the slab maps
+        ArrayList<ArrayList<Segment>> slabSegs = new ArrayList<ArrayList<Segment>>(k + 1);
+        for (int i = 0; i <= k; i++) {
+            slabSegs.add(new ArrayList<Segment>());
+        }
+        for (int i = 0; i < all.size(); i++) {
+            Segment s = all.get(i);
+            int last = slabOf(s.getRightEndPoint().getX(), bounds);
+            for (int j = slabOf(s.getLeftEndPoint().getX(), bounds); j <= last; j++) {
+                slabSegs.get(j).add(s);
+            }
+        }
+        long[] slabSeeds = new long[k + 1];
+        for (int i = 0; i <= k; i++) {
+            slabSeeds[i] = seeds.nextLong();
+        }
+        // 4. build the slab maps, prune each to its slab and collect its
+        // trapezoids
+        Node[] roots = new Node[k + 1];
+        ArrayList<ArrayList<Trapezoid>> traps = new ArrayList<ArrayList<Trapezoid>>(k + 1);
+        for (int i = 0; i <= k; i++) {
+            traps.add(null);
+        }
+        pool.invoke(new SlabTask(slabSegs, cuts, boxTop, boxBottom, slabSeeds, roots, traps, 0, k + 1));
+
+        // 5. the pieces of the trapezoids crossing each boundary, found from
+        // the left piece by their (shared) upper segment
+        ArrayList<IdentityHashMap<Segment, Trapezoid>> rightPieces = new ArrayList<IdentityHashMap<Segment, Trapezoid>>(k);
+        for (int j = 0; j < k; j++) {
+            IdentityHashMap<Segment, Trapezoid> pieces = new IdentityHashMap<Segment, Trapezoid>();
+            ArrayList<Trapezoid> list = traps.get(j + 1);
+            for (int i = 0; i < list.size(); i++) {
+                if (list.get(i).getLeftBound().compareTo(cuts[j]) < 0) {
+                    pieces.put(list.get(i).getUpperBound(), list.get(i));
+                }
+            }
+            rightPieces.add(pieces);
+        }
+
+        // 6. glue the pieces together, starting from the piece which holds the
+        // left bound of each trapezoid, and put the glued leaf in place of the
+        // leaves of the pieces
+        IdentityHashMap<Trapezoid, Trapezoid> whole = new IdentityHashMap<Trapezoid, Trapezoid>();
+        ArrayList<Trapezoid[]> glued = new ArrayList<Trapezoid[]>();
+        for (int i = 0; i <= k; i++) {
+            ArrayList<Trapezoid> list = traps.get(i);
+            for (int n = 0; n < list.size(); n++) {
+                Trapezoid first = list.get(n);
+                if (i > 0 && first.getLeftBound().compareTo(cuts[i - 1]) < 0) {
+                    continue;
+                }
+                Trapezoid last = first;
+                int j = i;
+                while (j < k && last.getRightBound().compareTo(cuts[j]) > 0) {
+                    last = rightPieces.get(j).get(last.getUpperBound());
+                    j++;
+                }
+                Trapezoid t = first;
+                if (last != first) {
+                    t = new Trapezoid(first.getLeftBound(), last.getRightBound(), first.getUpperBound(),
+                            first.getLowerBound());
+                    Leaf f = new Leaf(t);
+                    t.setLeaf(f);
+                    Trapezoid piece = first;
+                    for (j = i; ; j++) {
+                        whole.put(piece, t);
+                        replaceLeaf(piece.getLeaf(), f, roots, j);
+                        if (piece == last) {
+                            break;
+                        }
+                        piece = rightPieces.get(j).get(piece.getUpperBound());
+                    }
+                }
+                glued.add(new Trapezoid[]{t, first, last});
+            }
+        }
+
+        // 7. neighbor links in the full map: the left neighbors of the first
+        // piece and the right neighbors of the last piece.  They are all looked
+        // up before any are changed, since the pieces are read as well.
+        Trapezoid[] links = new Trapezoid[4 * glued.size()];
+        for (int n = 0; n < glued.size(); n++) {
+            Trapezoid first = glued.get(n)[1];
+            Trapezoid last = glued.get(n)[2];
+            links[4 * n] = whole(first.getUpperLeftNeighbor(), whole);
+            links[4 * n + 1] = whole(first.getLowerLeftNeighbor(), whole);
+            links[4 * n + 2] = whole(last.getUpperRightNeighbor(), whole);
+            links[4 * n + 3] = whole(last.getLowerRightNeighbor(), whole);
+        }
+        for (int n = 0; n < glued.size(); n++) {
+            Trapezoid t = glued.get(n)[0];
+            t.setUpperLeftNeighbor(links[4 * n]);
+            t.setLowerLeftNeighbor(links[4 * n + 1]);
+            t.setUpperRightNeighbor(links[4 * n + 2]);
+            t.setLowerRightNeighbor(links[4 * n + 3]);
+        }
+
+        // 8. the boundaries on top
+        Node root = boundaryTree(roots, cuts, 0, k);
+        SearchStructure ss = new SearchStructure(root, minx, maxx, miny, maxy, boxTop, boxBottom, all.size(),
+                seeds.nextLong());
+        ss.setBuildTime(System.nanoTime() - t1);
+        return ss;
+    }
+
+    /**
+     * The slab holding the x-coordinate
+     */
+    private static int slabOf(int x, int[] bounds) {
+        int lo = 0;
+        int hi = bounds.length;
+        //first boundary greater than x
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (bounds[mid] <= x) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Skip the XNodes which lie outside the slab from lo to hi (null for no
+     * bound), since every query in the slab goes the same way at them.  The
+     * nodes left are added to the list (the root first), and the trapezoids
+     * of the leaves among them to traps.
+     */
+    private static Node prune(Node root, Point lo, Point hi, ArrayList<Node> nodes, ArrayList<Trapezoid> traps) {
+        root = skip(root, lo, hi);
+        IdentityHashMap<Node, Boolean> visited = new IdentityHashMap<Node, Boolean>();
+        visited.put(root, Boolean.TRUE);
+        nodes.add(root);
+        for (int i = 0; i < nodes.size(); i++) {
+            Node n = nodes.get(i);
+            if (n instanceof Leaf) {
+                traps.add(((Leaf) n).getData());
+                continue;
+            }
+            Node left = skip(n.getLeftChildNode(), lo, hi);
+            Node right = skip(n.getRightChildNode(), lo, hi);
+            if (left != n.getLeftChildNode()) {
+                n.setLeftChildNode(left);
+            }
+            if (right != n.getRightChildNode()) {
+                n.setRightChildNode(right);
+            }
+            if (visited.put(left, Boolean.TRUE) == null) {
+                nodes.add(left);
+            }
+            if (visited.put(right, Boolean.TRUE) == null) {
+                nodes.add(right);
+            }
+        }
+        return root;
+    }
+
+    private static Node skip(Node n, Point lo, Point hi) {
+        while (n instanceof XNode) {
+            Point p = ((XNode) n).getData();
+            if (lo != null && p.compareTo(lo) <= 0) {
+                n = n.getRightChildNode();
+            } else if (hi != null && p.compareTo(hi) >= 0) {
+                n = n.getLeftChildNode();
+            } else {
+                break;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Rebuild the parent lists of the nodes from their child links, which
+     * drops the parents pruned away (so they can be collected)
+     */
+    private static void resetParents(ArrayList<Node> nodes) {
+        for (int i = 0; i < nodes.size(); i++) {
+            nodes.get(i).getParentNodes().clear();
+        }
+        for (int i = 0; i < nodes.size(); i++) {
+            Node n = nodes.get(i);
+            if (!(n instanceof Leaf)) {
+                n.getLeftChildNode().setParentNode(n);
+                n.getRightChildNode().setParentNode(n);
+            }
+        }
+    }
+
+    private static Trapezoid whole(Trapezoid t, IdentityHashMap<Trapezoid, Trapezoid> whole) {
+        Trapezoid w = whole.get(t);
+        return w == null ? t : w;
+    }
+
+    /**
+     * Put the new leaf in place of the old one in the map of the given slab
+     */
+    private static void replaceLeaf(Leaf old, Leaf f, Node[] roots, int slab) {
+        ArrayList<Node> parents = old.getParentNodes();
+        if (parents.isEmpty()) {
+            roots[slab] = f;
+            return;
+        }
+        for (int i = 0; i < parents.size(); i++) {
+            Node parent = parents.get(i);
+            if (parent.getLeftChildNode() == old) {
+                parent.setLeftChildNode(f);
+            }
+            if (parent.getRightChildNode() == old) {
+                parent.setRightChildNode(f);
+            }
+        }
+    }
+
+    /**
+     * A balanced tree of XNodes on the boundaries, over the slab maps lo to hi
+     */
+    private static Node boundaryTree(Node[] roots, Point[] cuts, int lo, int hi) {
+        if (lo == hi) {
+            return roots[lo];
+        }
+        int mid = (lo + hi + 1) >>> 1;
+        XNode x = new XNode(cuts[mid - 1]);
+        x.setLeftChildNode(boundaryTree(roots, cuts, lo, mid - 1));
+        x.setRightChildNode(boundaryTree(roots, cuts, mid, hi));
+        return x;
+    }
+
+    /**
+     * Builds and prunes the slab maps for a range of slabs, splitting the
+     * range in half until one slab is left
+     */
+    @SuppressWarnings("serial")
+    private static final class SlabTask extends RecursiveAction {
+
+        private final ArrayList<ArrayList<Segment>> slabSegs;
+        private final Point[] cuts;
+        private final Segment boxTop;
+        private final Segment boxBottom;
+        private final long[] seeds;
+        private final Node[] roots;
+        private final ArrayList<ArrayList<Trapezoid>> traps;
+        private final int from;
+        private final int to;
+
+        SlabTask(ArrayList<ArrayList<Segment>> slabSegs, Point[] cuts, Segment boxTop, Segment boxBottom,
+                long[] seeds, Node[] roots, ArrayList<ArrayList<Trapezoid>> traps, int from, int to) {
+            this.slabSegs = slabSegs;
+            this.cuts = cuts;
+            this.boxTop = boxTop;
+            this.boxBottom = boxBottom;
+            this.seeds = seeds;
+            this.roots = roots;
+            this.traps = traps;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                SearchStructure ss = new SearchStructure(slabSegs.get(from), boxTop, boxBottom, seeds[from]);
+                Point lo = from == 0 ? null : cuts[from - 1];
+                Point hi = from == cuts.length ? null : cuts[from];
+                ArrayList<Node> nodes = new ArrayList<Node>();
+                ArrayList<Trapezoid> list = new ArrayList<Trapezoid>();
+                roots[from] = prune(ss.getRoot(), lo, hi, nodes, list);
+                resetParents(nodes);
+                traps.set(from, list);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new SlabTask(slabSegs, cuts, boxTop, boxBottom, seeds, roots, traps, from, mid),
+                    new SlabTask(slabSegs, cuts, boxTop, boxBottom, seeds, roots, traps, mid, to));
+        }
+    }
+}
@@ -0,0 +1,402 @@
+package data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Builds a trapezoidal map deterministically with a plane sweep, as an
+ * alternative to the randomized incremental construction.
+ *
+ * The segment endpoints are sorted once (in the same x, then y order as
+ * Point.compareTo) and swept from left to right.  The sweep status (the
+ * segments crossing the sweep line, from top to bottom) is kept in an AVL tree
+ * whose external nodes are the gaps between consecutive segments, each of which
+ * is the trapezoid being built there.  At an event, the segments ending there
+ * are deleted and the segments starting there are inserted, which closes the
+ * trapezoids next to the event point and opens new ones.
+ *
+ * The tree is persistent (updated by copying the search path), so the version
+ * after each event is kept.  Turned into the search structure, each version is
+ * a tree of YNodes over the trapezoids of its slab, and a balanced tree of
+ * XNodes on the event points selects the slab.  This gives the same trapezoids
+ * and neighbor links as the randomized construction, with a worst case depth
+ * of about log2(2n) + 1.44 log2(n), in O(n log n) time and space.
+ *
+ * @author Tyler Chenhall
+ */
+final class SweepBuilder {
+
+    private final Segment boxTop;
+    private final Segment boxBottom;
+    //the current event point and its number
+    private Point p;
+    private int event;
+    //the segments ending and starting at the current event
+    private final ArrayList<Segment> ending = new ArrayList<Segment>();
+    private final ArrayList<Segment> starting = new ArrayList<Segment>();
+    //gaps opened and closed at the current event
+    private final ArrayList<Gap> created = new ArrayList<Gap>();
+    private final ArrayList<Gap> closed = new ArrayList<Gap>();
+
+    private SweepBuilder(Segment boxTop, Segment boxBottom) {
+        this.boxTop = boxTop;
+        this.boxBottom = boxBottom;
+    }
+
+    /**
+     * @see MapBuilder#buildSweep(Segment[], int, int, int, int)
+     */
+    static SearchStructure build(Segment[] segs, int lx, int rx, int ly, int ry) {
+        long t1 = System.nanoTime();
+        ArrayList<Segment> all = new ArrayList<Segment>(segs.length);
+        int minx = lx;
+        int maxx = rx;
+        int miny = ly;
+        int maxy = ry;
+        for (int i = 0; i < segs.length; i++) {
+            if (segs[i] != null) {
+                //a segment of zero length adds no trapezoids
+                if (!segs[i].getLeftEndPoint().equals(segs[i].getRightEndPoint())) {
+                    all.add(segs[i]);
+                }
+                minx = Math.min(minx, segs[i].getMinX());
+                maxx = Math.max(maxx, segs[i].getMaxX());
+                miny = Math.min(miny, segs[i].getMinY());
+                maxy = Math.max(maxy, segs[i].getMaxY());
+            }
+        }
+        Segment boxTop = new Segment(new Point(minx, maxy), new Point(maxx, maxy));
+        Segment boxBottom = new Segment(new Point(minx, miny), new Point(maxx, miny));
+        SweepBuilder sweep = new SweepBuilder(boxTop, boxBottom);
+        Node root = sweep.sweep(all, new Point(minx, miny), new Point(maxx, maxy));
+
+        //insert rebuilds with the randomized construction; a fixed seed keeps
+        //that reproducible too
+        SearchStructure ss = new SearchStructure(root, minx, maxx, miny, maxy, boxTop, boxBottom, all.size(), 0L);
+        ss.setBuildTime(System.nanoTime() - t1);
+        return ss;
+    }
+
+    /**
+     * Sweep over the segments and build the search structure
+     * @param first The left bound of the first trapezoid (the lower left box corner)
+     * @param last The right bound of the last trapezoid (the upper right box corner)
+     * @return The root of the search structure
+     */
+    private Node sweep(final ArrayList<Segment> segs, Point first, Point last) {
+        //endpoint 2i is the left endpoint of segment i, and 2i + 1 its right endpoint
+        Integer[] ends = new Integer[2 * segs.size()];
+        for (int i = 0; i < ends.length; i++) {
+            ends[i] = i;
+        }
+        Arrays.sort(ends, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return endPoint(segs, a).compareTo(endPoint(segs, b));
+            }
+        });
+
+        ArrayList<Point> events = new ArrayList<Point>();
+        ArrayList<Status> versions = new ArrayList<Status>();
+        Status status = new Status(new Gap(boxTop, boxBottom, first, 0));
+        versions.add(status);
+        for (int i = 0; i < ends.length; ) {
+            p = endPoint(segs, ends[i]);
+            event++;
+            ending.clear();
+            starting.clear();
+            for (; i < ends.length && endPoint(segs, ends[i]).equals(p); i++) {
+                if ((ends[i] & 1) == 0) {
+                    starting.add(segs.get(ends[i] >> 1));
+                } else {
+                    ending.add(segs.get(ends[i] >> 1));
+                }
+            }
+            //the deletions first, so that no segment in the tree passes through p
+            for (int j = 0; j < ending.size(); j++) {
+                status = delete(status, ending.get(j));
+            }
+            for (int j = 0; j < starting.size(); j++) {
+                status = insert(status, starting.get(j));
+            }
+            finishEvent();
+            events.add(p);
+            versions.add(status);
+        }
+        //the last gap runs to the right side of the box
+        Gap g = status.gap;
+        close(g, last);
+
+        return slabTree(events, versions, 0, versions.size() - 1);
+    }
+
+    private static Point endPoint(ArrayList<Segment> segs, int end) {
+        Segment s = segs.get(end >> 1);
+        return (end & 1) == 0 ? s.getLeftEndPoint() : s.getRightEndPoint();
+    }
+
+    /**
+     * Turn the gaps closed at the current event into trapezoids, and link the
+     * gaps opened at it to their left neighbors
+     */
+    private void finishEvent() {
+        Gap oldTop = null;
+        Gap oldBottom = null;
+        for (int i = 0; i < closed.size(); i++) {
+            Gap g = closed.get(i);
+            close(g, p);
+            //the gaps next to the segments passing above and below p (rather
+            //than those between the segments ending at p)
+            if (!contains(ending, g.top)) {
+                oldTop = g;
+            }
+            if (!contains(ending, g.bottom)) {
+                oldBottom = g;
+            }
+        }
+        for (int i = 0; i < created.size(); i++) {
+            Gap g = created.get(i);
+            if (g.replaced) {
+                continue;
+            }
+            if (!contains(starting, g.top)) {
+                g.upperLeft = oldTop;
+            }
+            if (!contains(starting, g.bottom)) {
+                g.lowerLeft = oldBottom;
+            }
+        }
+        closed.clear();
+        created.clear();
+    }
+
+    private static boolean contains(ArrayList<Segment> list, Segment s) {
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i) == s) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Create the trapezoid of a gap ending at the given point, and link it to
+     * its left neighbors (whose trapezoids are already made)
+     */
+    private static void close(Gap g, Point right) {
+        Trapezoid t = new Trapezoid(g.left, right, g.top, g.bottom);
+        Leaf f = new Leaf(t);
+        t.setLeaf(f);
+        g.trap = t;
+        if (g.upperLeft != null) {
+            t.setUpperLeftNeighbor(g.upperLeft.trap);
+            g.upperLeft.trap.setUpperRightNeighbor(t);
+        }
+        if (g.lowerLeft != null) {
+            t.setLowerLeftNeighbor(g.lowerLeft.trap);
+            g.lowerLeft.trap.setLowerRightNeighbor(t);
+        }
+    }
+
+    /**
+     * A new gap between the given segments, opened at the current event
+     */
+    private Status gap(Segment top, Segment bottom) {
+        Gap g = new Gap(top, bottom, p, event);
+        created.add(g);
+        return new Status(g);
+    }
+
+    /**
+     * Mark the gap as gone from the newest version of the tree.  If it was
+     * opened at an earlier event, its trapezoid ends at the current one.
+     */
+    private void replace(Gap g) {
+        g.replaced = true;
+        if (g.event < event) {
+            closed.add(g);
+        }
+    }
+
+    private Status insert(Status n, Segment s) {
+        if (n.seg == null) {
+            replace(n.gap);
+            return new Status(s, gap(n.gap.top, s), gap(s, n.gap.bottom));
+        }
+        if (SearchStructure.isSegmentAbove(s, n.seg)) {
+            return balance(n.seg, insert(n.left, s), n.right);
+        }
+        return balance(n.seg, n.left, insert(n.right, s));
+    }
+
+    private Status delete(Status n, Segment s) {
+        if (n.seg != s) {
+            if (SearchStructure.isSegmentAbove(s, n.seg)) {
+                return balance(n.seg, delete(n.left, s), n.right);
+            }
+            return balance(n.seg, n.left, delete(n.right, s));
+        }
+        //merge the gap above s (the last one in the left subtree) with the
+        //gap below s (the first one in the right subtree)
+        if (n.right.seg == null) {
+            replace(n.right.gap);
+            return replaceLast(n.left, n.right.gap.bottom);
+        }
+        if (n.left.seg == null) {
+            replace(n.left.gap);
+            return replaceFirst(n.right, n.left.gap.top);
+        }
+        //the gap below s is on the left of the next segment down, which takes
+        //the place of s
+        Status next = n.right;
+        while (next.left.seg != null) {
+            next = next.left;
+        }
+        Status right = deleteFirst(n.right);
+        return balance(next.seg, replaceLast(n.left, next.seg), right);
+    }
+
+    /**
+     * Replace the last gap in the subtree by a gap with the same top and a new bottom
+     */
+    private Status replaceLast(Status n, Segment bottom) {
+        if (n.seg == null) {
+            replace(n.gap);
+            return gap(n.gap.top, bottom);
+        }
+        return new Status(n.seg, n.left, replaceLast(n.right, bottom));
+    }
+
+    /**
+     * Replace the first gap in the subtree by a gap with a new top and the same bottom
+     */
+    private Status replaceFirst(Status n, Segment top) {
+        if (n.seg == null) {
+            replace(n.gap);
+            return gap(top, n.gap.bottom);
+        }
+        return new Status(n.seg, replaceFirst(n.left, top), n.right);
+    }
+
+    /**
+     * Delete the first segment in the subtree, along with the gap above it
+     */
+    private Status deleteFirst(Status n) {
+        if (n.left.seg == null) {
+            replace(n.left.gap);
+            return n.right;
+        }
+        return balance(n.seg, deleteFirst(n.left), n.right);
+    }
+
+    /**
+     * A node for segment s over the given subtrees, rotated if their heights
+     * differ by two
+     */
+    private static Status balance(Segment s, Status l, Status r) {
+        if (l.height > r.height + 1) {
+            if (l.left.height >= l.right.height) {
+                return new Status(l.seg, l.left, new Status(s, l.right, r));
+            }
+            return new Status(l.right.seg, new Status(l.seg, l.left, l.right.left),
+                    new Status(s, l.right.right, r));
+        }
+        if (r.height > l.height + 1) {
+            if (r.right.height >= r.left.height) {
+                return new Status(r.seg, new Status(s, l, r.left), r.right);
+            }
+            return new Status(r.left.seg, new Status(s, l, r.left.left),
+                    new Status(r.seg, r.left.right, r.right));
+        }
+        return new Status(s, l, r);
+    }
+
+    /**
+     * A balanced tree of XNodes on the events, over the versions lo to hi of
+     * the sweep status.  Version i holds from event i - 1 up to (not including)
+     * event i.
+     */
+    private static Node slabTree(ArrayList<Point> events, ArrayList<Status> versions, int lo, int hi) {
+        if (lo == hi) {
+            return versions.get(lo).toNode();
+        }
+        int mid = (lo + hi + 1) >>> 1;
+        XNode x = new XNode(events.get(mid - 1));
+        x.setLeftChildNode(slabTree(events, versions, lo, mid - 1));
+        x.setRightChildNode(slabTree(events, versions, mid, hi));
+        return x;
+    }
+
+    /**
+     * A gap between two consecutive segments of the sweep status, which
+     * becomes a trapezoid when it is closed
+     */
+    private static final class Gap {
+
+        private final Segment top;
+        private final Segment bottom;
+        private final Point left;
+        //the event which opened the gap
+        private final int event;
+        private boolean replaced;
+        private Gap upperLeft;
+        private Gap lowerLeft;
+        private Trapezoid trap;
+
+        Gap(Segment top, Segment bottom, Point left, int event) {
+            this.top = top;
+            this.bottom = bottom;
+            this.left = left;
+            this.event = event;
+        }
+    }
+
+    /**
+     * A node of the persistent sweep status tree: a segment with the segments
+     * above it on the left and those below on the right (like a YNode), or a gap
+     */
+    private static final class Status {
+
+        private final Segment seg;
+        private final Status left;
+        private final Status right;
+        private final Gap gap;
+        private final int height;
+        //the search structure node, once made
+        private Node node;
+
+        Status(Gap gap) {
+            this.seg = null;
+            this.left = null;
+            this.right = null;
+            this.gap = gap;
+            this.height = 0;
+        }
+
+        Status(Segment seg, Status left, Status right) {
+            this.seg = seg;
+            this.left = left;
+            this.right = right;
+            this.gap = null;
+            this.height = Math.max(left.height, right.height) + 1;
+        }
+
+        /**
+         * The search structure for this subtree; versions share the nodes of
+         * the subtrees they share
+         */
+        Node toNode() {
+            if (node == null) {
+                if (seg == null) {
+                    node = gap.trap.getLeaf();
+                } else {
+                    node = new YNode(seg);
+                    node.setLeftChildNode(left.toNode());
+                    node.setRightChildNode(right.toNode());
+                }
+            }
+            return node;
+        }
+    }
+}
@@ -22,7 +22,8 @@ public final class Trapezoid {
     private Point rightP;
     private Segment topSeg;
     private Segment botSeg;
-    private Polygon poly;
+    private Polygon poly;//for display purposes, created on first use
+    private int mark;//left by window queries, see WindowQuery
 
     /**
      * Constructs a trapezoid object based on the x boundaries and bounding
@@ -57,9 +58,6 @@ public final class Trapezoid {
         uright_neighbor = null;
         lright_neighbor = null;
         owner = null;
-        if (left != null && right != null) {//if one of the points is null, this is only a temporary trapezoid
-            poly = this.getPrivateBoundaryPolygon(left, right, top, bottom);
-        }
     }
 
     /**
@@ -142,6 +140,18 @@ public final class Trapezoid {
         owner = l;
     }
 
+    /**
+     * Get the mark left on this trapezoid by the last window query to reach it
+     * @return The query number and flags (0 if no query has reached it)
+     */
+    int getMark() {
+        return mark;
+    }
+
+    void setMark(int m) {
+        mark = m;
+    }
+
     /**
      * Get the leaf containing this trapezoid
      * @return The leaf pointing to this trapezoid
@@ -185,20 +195,23 @@ public final class Trapezoid {
      * @return The polygon object representing the boundary of the Trapezoid
      */
     private Polygon getPrivateBoundaryPolygon(Point left, Point right, Segment top, Segment bottom) {
-        Point tl = top.intersect(left.getX());
-        Point tr = top.intersect(right.getX());
-        Point bl = bottom.intersect(left.getX());
-        Point br = bottom.intersect(right.getX());
-        int[] xx = {tl.getX(), tr.getX(), br.getX(), bl.getX()};
-        int[] yy = {tl.getY(), tr.getY(), br.getY(), bl.getY()};
+        int[] xx = {left.getX(), right.getX(), right.getX(), left.getX()};
+        int[] yy = {top.intersectY(left.getX()), top.intersectY(right.getX()),
+            bottom.intersectY(right.getX()), bottom.intersectY(left.getX())};
         return new Polygon(xx, yy, 4);
     }
 
     /**
-     * Return the boundary polygon for this trapezoid
-     * @return The boundary Polygon
+     * Return the boundary polygon for this trapezoid.  The polygon is only
+     * computed the first time it is requested, so the many temporary trapezoids
+     * made during construction (and maps which are never displayed) do not pay
+     * for it.
+     * @return The boundary Polygon, or null for a temporary trapezoid without both bounding points
      */
     public Polygon getBoundaryPolygon() {
+        if (poly == null && leftP != null && rightP != null) {
+            poly = this.getPrivateBoundaryPolygon(leftP, rightP, topSeg, botSeg);
+        }
         return poly;
     }
 
@@ -0,0 +1,352 @@
+package data;
+
+import java.util.ArrayDeque;
+
+/**
+ * Reports the trapezoids and segments of a map which intersect a closed,
+ * axis aligned window, by walking out from the trapezoid holding the lower
+ * left corner of the window.
+ *
+ * The neighbor links only join trapezoids which share a vertical wall, so the
+ * walk also needs a way across the segments.  The first time it meets a
+ * segment inside the window from one side, it finds the trapezoid just across
+ * the segment with one descent of the search structure, and from there follows
+ * the trapezoids along that side of the segment (which are linked, as they all
+ * share the segment).  A vertical segment has a single sliver on each side,
+ * found by the same kind of descent.  Every trapezoid inside the window is
+ * reached through a wall or a segment from one already reached, so the cost
+ * is O(k + m log n) for k trapezoids and m segments in the window.
+ *
+ * Instead of keeping a set of what it has seen, the query marks the
+ * trapezoids it reaches with its number (see SearchStructure.nextWindowQuery)
+ * and a few flags, so it needs no memory beyond the queue.  When it crosses a
+ * segment, it flags the trapezoids along both sides of the segment inside the
+ * window, so each segment is crossed, and reported, only once.
+ *
+ * @author Tyler Chenhall
+ */
+final class WindowQuery {
+
+    //flags marked on the trapezoids: queued, and upper or lower bound crossed
+    private static final int QUEUED = 1;
+    private static final int UPPER_DONE = 2;
+    private static final int LOWER_DONE = 4;
+    private static final int FLAG_BITS = 3;
+    //the query number is kept in the rest of the mark
+    static final int MAX_QUERIES = 1 << (32 - FLAG_BITS);
+
+    private final SearchStructure ss;
+    private final Segment boxTop;
+    private final Segment boxBottom;
+    private final int xmin;
+    private final int ymin;
+    private final int xmax;
+    private final int ymax;
+    private final WindowVisitor visitor;
+    private final int query;
+    private final ArrayDeque<Trapezoid> queue = new ArrayDeque<Trapezoid>();
+
+    private WindowQuery(SearchStructure ss, int xmin, int ymin, int xmax, int ymax, WindowVisitor visitor) {
+        this.ss = ss;
+        this.boxTop = ss.getBoxTop();
+        this.boxBottom = ss.getBoxBottom();
+        this.xmin = xmin;
+        this.ymin = ymin;
+        this.xmax = xmax;
+        this.ymax = ymax;
+        this.visitor = visitor;
+        this.query = ss.nextWindowQuery();
+    }
+
+    /**
+     * Run a query for a window inside the bounding box of the map
+     * @return False if the visitor stopped the query; true otherwise
+     */
+    static boolean run(SearchStructure ss, int xmin, int ymin, int xmax, int ymax, WindowVisitor visitor) {
+        return new WindowQuery(ss, xmin, ymin, xmax, ymax, visitor).run();
+    }
+
+    private boolean run() {
+        enqueue(ss.findPointTrap(xmin, ymin));
+        while (!queue.isEmpty()) {
+            Trapezoid t = queue.poll();
+            if (!isSliver(t) || sliverMeets(t)) {
+                if (!visitor.visitTrapezoid(t)) {
+                    return false;
+                }
+            }
+            if (!cross(t, t.getUpperBound(), true) || !cross(t, t.getLowerBound(), false)) {
+                return false;
+            }
+            enqueueIfInside(t.getUpperLeftNeighbor());
+            enqueueIfInside(t.getLowerLeftNeighbor());
+            enqueueIfInside(t.getUpperRightNeighbor());
+            enqueueIfInside(t.getLowerRightNeighbor());
+        }
+        return true;
+    }
+
+    private void enqueue(Trapezoid t) {
+        if ((flags(t) & QUEUED) == 0) {
+            flag(t, QUEUED);
+            queue.add(t);
+        }
+    }
+
+    private void enqueueIfInside(Trapezoid t) {
+        if (t != null && (flags(t) & QUEUED) == 0 && intersects(t)) {
+            enqueue(t);
+        }
+    }
+
+    /**
+     * Get the flags this query has marked on trapezoid t
+     */
+    private int flags(Trapezoid t) {
+        int m = t.getMark();
+        return m >>> FLAG_BITS == query ? m & ((1 << FLAG_BITS) - 1) : 0;
+    }
+
+    private void flag(Trapezoid t, int f) {
+        t.setMark(query << FLAG_BITS | flags(t) | f);
+    }
+
+    /**
+     * Report the segment bounding trapezoid t (from above if upper is true)
+     * if it meets the window over t and has not been crossed yet, and queue
+     * the trapezoids across it
+     * @return False if the visitor stopped the query
+     */
+    private boolean cross(Trapezoid t, Segment s, boolean upper) {
+        if (s == boxTop || s == boxBottom) {
+            return true;
+        }
+        int a = Math.max(t.getLeftBound().getX(), xmin);
+        int b = Math.min(t.getRightBound().getX(), xmax);
+        if (a > b || side(s, a, b) != 0) {
+            return true;
+        }
+        if ((flags(t) & (upper ? UPPER_DONE : LOWER_DONE)) != 0) {
+            return true;
+        }
+        if (!visitor.visitSegment(s)) {
+            return false;
+        }
+        if (isVertical(s)) {
+            //the walls at its ends may be outside the window, so nothing
+            //else links the two sides of a vertical segment
+            Trapezoid other = acrossVertical(s, upper);
+            flag(t, upper ? UPPER_DONE : LOWER_DONE);
+            flag(other, other.getUpperBound() == s ? UPPER_DONE : LOWER_DONE);
+            enqueue(other);
+        } else {
+            //flag this side too, so s is not crossed again from it
+            walk(s, t, !upper);
+            walk(s, across(s, entry(s, a, b, upper), upper), upper);
+        }
+        return true;
+    }
+
+    /**
+     * Find an x-coordinate near where segment s enters the window between
+     * x = a and x = b, at which the point just above s (or just below it if
+     * above is false) is in the slab of s
+     */
+    private int entry(Segment s, int a, int b, boolean above) {
+        Point l = s.getLeftEndPoint();
+        Point r = s.getRightEndPoint();
+        long dy = (long) r.getY() - l.getY();
+        int x = a;
+        int sa = side(s, a, a);
+        if (sa != 0) {
+            long y = sa > 0 ? ymax : ymin;
+            long dx = (long) r.getX() - l.getX();
+            //only an estimate, so floating point is fine (and cannot overflow)
+            long e = (long) Math.floor(l.getX() + (double) (y - l.getY()) * dx / dy);
+            x = (int) Math.min(Math.max(a, e), b);
+        }
+        //the point just above s at its right endpoint (or below it at its
+        //left endpoint) is outside the slab of s
+        if (above && x == r.getX()) {
+            x--;
+        } else if (!above && x == l.getX()) {
+            x++;
+        }
+        return x;
+    }
+
+    /**
+     * Queue the trapezoids on one side of segment s (above it if above is
+     * true) which meet the window, going both ways from start, and flag that
+     * s has been crossed from them
+     */
+    private void walk(Segment s, Trapezoid start, boolean above) {
+        Point l = s.getLeftEndPoint();
+        Point r = s.getRightEndPoint();
+        long dy = (long) r.getY() - l.getY();
+        int done = above ? LOWER_DONE : UPPER_DONE;
+        Trapezoid c = start;
+        while (c != null && bound(c, above) == s && c.getLeftBound().getX() <= xmax) {
+            if (c.getRightBound().getX() >= xmin) {
+                int side = side(s, Math.max(c.getLeftBound().getX(), xmin), Math.min(c.getRightBound().getX(), xmax));
+                if (side == 0) {
+                    flag(c, done);
+                    enqueue(c);
+                } else if (dy > 0 ? side > 0 : dy == 0 || side < 0) {
+                    //s has left the window
+                    break;
+                }
+            }
+            c = above ? c.getLowerRightNeighbor() : c.getUpperRightNeighbor();
+        }
+        c = above ? start.getLowerLeftNeighbor() : start.getUpperLeftNeighbor();
+        while (c != null && bound(c, above) == s && c.getRightBound().getX() >= xmin) {
+            if (c.getLeftBound().getX() <= xmax) {
+                int side = side(s, Math.max(c.getLeftBound().getX(), xmin), Math.min(c.getRightBound().getX(), xmax));
+                if (side == 0) {
+                    flag(c, done);
+                    enqueue(c);
+                } else if (dy > 0 ? side < 0 : dy == 0 || side > 0) {
+                    break;
+                }
+            }
+            c = above ? c.getLowerLeftNeighbor() : c.getUpperLeftNeighbor();
+        }
+    }
+
+    private static Segment bound(Trapezoid t, boolean above) {
+        return above ? t.getLowerBound() : t.getUpperBound();
+    }
+
+    /**
+     * Find the trapezoid just above (or just below) segment s at x, which must
+     * be in the x-range of s.  This is a point query for a point an
+     * infinitesimal distance from s.
+     */
+    private Trapezoid across(Segment s, int x, boolean above) {
+        Node current = ss.getRoot();
+        while (!(current instanceof Leaf)) {
+            boolean left;
+            if (current instanceof XNode) {
+                Point p = ((XNode) current).getData();
+                if (p.getX() != x) {
+                    left = x < p.getX();
+                } else {
+                    int c = compare(s, x, p.getY());
+                    left = above ? c < 0 : c <= 0;
+                }
+            } else {
+                Segment u = ((YNode) current).getData();
+                left = u == s ? above : SearchStructure.isSegmentAbove(s, u);
+            }
+            if (left) {
+                current = current.getLeftChildNode();
+            } else {
+                current = current.getRightChildNode();
+            }
+        }
+        return ((Leaf) current).getData();
+    }
+
+    /**
+     * Find the sliver just above (to the left of) or just below vertical
+     * segment s.  No point of the map lies strictly between the endpoints of
+     * s, so each side is a single sliver, and this is a point query for any
+     * point of s between its endpoints.
+     */
+    private Trapezoid acrossVertical(Segment s, boolean above) {
+        Point l = s.getLeftEndPoint();
+        Point r = s.getRightEndPoint();
+        Node current = ss.getRoot();
+        while (!(current instanceof Leaf)) {
+            boolean left;
+            if (current instanceof XNode) {
+                left = ((XNode) current).getData().compareTo(l) > 0;
+            } else {
+                Segment u = ((YNode) current).getData();
+                //u does not cross s, so the ends of s are not on opposite sides
+                //of it (and not both on it)
+                left = u == s ? above : SearchStructure.isPointAboveLine(l, u) || SearchStructure.isPointAboveLine(r, u);
+            }
+            if (left) {
+                current = current.getLeftChildNode();
+            } else {
+                current = current.getRightChildNode();
+            }
+        }
+        return ((Leaf) current).getData();
+    }
+
+    /**
+     * Check whether (the closure of) trapezoid t meets the window.  A sliver
+     * counts as its whole wall here, from its lower to its upper segment, as
+     * it may be the only link between the trapezoids on either side of the
+     * wall.
+     */
+    private boolean intersects(Trapezoid t) {
+        Point lp = t.getLeftBound();
+        Point rp = t.getRightBound();
+        int a = Math.max(lp.getX(), xmin);
+        int b = Math.min(rp.getX(), xmax);
+        if (a > b) {
+            return false;
+        }
+        Segment top = t.getUpperBound();
+        Segment bottom = t.getLowerBound();
+        if (lp.getX() == rp.getX()) {
+            return (isVertical(bottom) || compare(bottom, a, ymax) <= 0)
+                    && (isVertical(top) || compare(top, a, ymin) >= 0);
+        }
+        //the top and bottom are linear, so it is enough to look at the ends
+        if (compare(bottom, a, ymax) > 0 && compare(bottom, b, ymax) > 0) {
+            return false;
+        }
+        return compare(top, a, ymin) >= 0 || compare(top, b, ymin) >= 0;
+    }
+
+    private static boolean isSliver(Trapezoid t) {
+        return t.getLeftBound().getX() == t.getRightBound().getX();
+    }
+
+    /**
+     * Check whether the points of a sliver (between its two bounding points
+     * on the same vertical line) meet the window
+     */
+    private boolean sliverMeets(Trapezoid t) {
+        return t.getLeftBound().getY() <= ymax && t.getRightBound().getY() >= ymin;
+    }
+
+    /**
+     * Locate the part of segment s between x = a and x = b (inside the
+     * x-range of s) against the window's y-range
+     * @return -1 if it is all below the window, 1 if all above, and 0 if it meets the y-range
+     */
+    private int side(Segment s, int a, int b) {
+        if (isVertical(s)) {
+            int lo = Math.min(s.getLeftEndPoint().getY(), s.getRightEndPoint().getY());
+            int hi = Math.max(s.getLeftEndPoint().getY(), s.getRightEndPoint().getY());
+            return hi < ymin ? -1 : lo > ymax ? 1 : 0;
+        }
+        if (compare(s, a, ymin) < 0 && compare(s, b, ymin) < 0) {
+            return -1;
+        }
+        if (compare(s, a, ymax) > 0 && compare(s, b, ymax) > 0) {
+            return 1;
+        }
+        return 0;
+    }
+
+    private static boolean isVertical(Segment s) {
+        return s.getLeftEndPoint().getX() == s.getRightEndPoint().getX();
+    }
+
+    /**
+     * Compare the height of (non vertical) segment s at x with y
+     * @return The sign of s(x) - y
+     */
+    private static int compare(Segment s, int x, int y) {
+        Point l = s.getLeftEndPoint();
+        Point r = s.getRightEndPoint();
+        return -Predicates.orient(l.getX(), l.getY(), r.getX(), r.getY(), x, y);
+    }
+}
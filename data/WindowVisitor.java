@@ -0,0 +1,26 @@
+package data;
+
+/**
+ * Receives the results of a window query (see SearchStructure.queryWindow)
+ * one at a time, as they are found, so that the results of a large window
+ * never have to be collected into a list.
+ *
+ * @author Tyler Chenhall
+ */
+public interface WindowVisitor {
+
+    /**
+     * Called once for each trapezoid of the map which intersects the window
+     * @param t The trapezoid
+     * @return True to go on with the query; false to stop it
+     */
+    boolean visitTrapezoid(Trapezoid t);
+
+    /**
+     * Called once for each segment of the map (not the bounding box) which
+     * intersects the window, after the first trapezoid it bounds
+     * @param s The segment
+     * @return True to go on with the query; false to stop it
+     */
+    boolean visitSegment(Segment s);
+}
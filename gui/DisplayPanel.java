@@ -1,48 +1,75 @@
 package gui;
 
-import data.Point;
+import data.PointLocator;
 import data.SearchStructure;
 import data.Segment;
 import data.Trapezoid;
+import data.WindowVisitor;
 import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
 import java.awt.Polygon;
+import java.awt.Rectangle;
 import java.awt.Toolkit;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.geom.Ellipse2D;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 
 /**
  * This class describes the display panel for the project The GUI displays all
  * segments, the mouse location, and highlighted regions
  *
+ * The panel only does work when the mouse moves: a burst of mouse events is
+ * handled by one update (see cycle), which repaints just the parts of the
+ * panel covered by the old and new highlighted face and mouse pointer.  The
+ * segments never change between updates, so they are drawn once into an
+ * image (the static layer) which each paint copies before drawing the
+ * highlighted face and the pointer over it.
+ *
  * @author Tyler Chenhall
  */
-public class DisplayPanel extends JPanel implements Runnable {
+public class DisplayPanel extends JPanel {
 
-    private static final int DELAY = 25;//(25) pause between repaints
+    //the latest mouse position, and the position the pointer was drawn at
     private int xval;
     private int yval;
-    private Thread t;
-    private Segment[] segments = null;
+    private int pointerX;
+    private int pointerY;
+    //true while an update is queued for the latest mouse position
+    private boolean updatePending;
+    private final Runnable update = new Runnable() {
+        @Override
+        public void run() {
+            updatePending = false;
+            cycle();
+        }
+    };
     private Trapezoid highlighted;
+    private int highlightedFace;
+    private Rectangle highlightedBounds;
+    //the background and segments, drawn again only when the size of the
+    //panel or the map changes (null until the first paint)
+    private BufferedImage staticLayer;
+    private boolean staticLayerCached = true;
     private SearchStructure search;
+    private PointLocator locator;
 
     /**
-     * Initialize the DisplayPanel with a list of segments to be used for this
-     * run. Also sets up a basic mouse listener which responds to mouse press &
-     * move.
-     * @param segs The segment array to use
-     * @param s The search structure corresponding to the given segment array
+     * Initialize the DisplayPanel with the map to be used for this run. Also
+     * sets up a basic mouse listener which responds to mouse press & move.
+     * @param s The search structure holding the segments to display
      */
-    public DisplayPanel(Segment[] segs, SearchStructure s) {
-        segments = segs;
+    public DisplayPanel(SearchStructure s) {
         search = s;
+        locator = s.compile();
         highlighted = null;
+        highlightedFace = -1;
         setBackground(Color.gray);
         setDoubleBuffered(true);
         MouseAdapter m = new MouseAdapter() {
@@ -51,6 +78,7 @@ public class DisplayPanel extends JPanel implements Runnable {
                 xval = e.getX();
                 yval = e.getY();
                 //System.out.println("mouse moved");
+                scheduleUpdate();
             }
 
             @Override
@@ -58,6 +86,7 @@ public class DisplayPanel extends JPanel implements Runnable {
                 xval = e.getX();
                 yval = e.getY();
                 //System.out.println("mouse pressed");
+                scheduleUpdate();
             }
         };
         addMouseListener(m);
@@ -72,20 +101,92 @@ public class DisplayPanel extends JPanel implements Runnable {
         highlighted = t;
     }
 
+    /**
+     * Tells the panel that the map was changed (by inserting or removing
+     * segments), so that it compiles a new locator and redraws the segments.
+     */
+    public void mapChanged() {
+        locator = search.compile();
+        staticLayer = null;
+        highlightedFace = -1;
+        highlightedBounds = null;
+        repaint();
+    }
+
+    /**
+     * Choose whether the segments are drawn once into a cached image, or
+     * again on every paint (for comparison).  Caching is on by default.
+     * @param cached True to cache the segments
+     */
+    public void setStaticLayerCached(boolean cached) {
+        staticLayerCached = cached;
+        staticLayer = null;
+    }
+
+    /**
+     * Queue an update for the latest mouse position, unless one is queued
+     * already.  The update runs after the mouse events already waiting on the
+     * event queue, so it only sees the last position of a burst of events.
+     */
+    private void scheduleUpdate() {
+        if (!updatePending) {
+            updatePending = true;
+            SwingUtilities.invokeLater(update);
+        }
+    }
+
     /*
      * Methods for painting, etc. are contained below
      */
-    @Override
-    public void addNotify() {
-        super.addNotify();
-        t = new Thread(this);
-        t.start();
+    /**
+     * Locates the mouse position and repaints what changed: the mouse pointer
+     * at its old and new positions, and the old and new highlighted faces if
+     * the mouse moved into another face.  Runs on the event dispatch thread.
+     */
+    public void cycle() {
+        int id = locator.locate(xval, yval);
+        int face = locator.getFace(id);
+        highlighted = locator.getTrapezoid(id);
+        repaint(pointerBounds(pointerX, pointerY));
+        pointerX = xval;
+        pointerY = yval;
+        repaint(pointerBounds(pointerX, pointerY));
+        if (face != highlightedFace) {
+            if (highlightedBounds != null) {
+                repaint(highlightedBounds);
+            }
+            highlightedFace = face;
+            highlightedBounds = faceBounds(face);
+            repaint(highlightedBounds);
+        }
     }
 
-    public void cycle() {
-        //do any necessary update calculations between display stuff
-        //there may not be anything here
-        highlighted = search.findPointTrap(new Point(xval, yval));
+    /**
+     * Get the area of the panel covered by the mouse pointer drawn at (x, y),
+     * a 4 pixel circle with a 5 pixel stroke
+     */
+    private static Rectangle pointerBounds(int x, int y) {
+        return new Rectangle(x - 3, y - 3, 11, 11);
+    }
+
+    /**
+     * Get the area of the panel covered by a face
+     * @param face The face id
+     * @return The bounding box of the trapezoids of the face
+     */
+    private Rectangle faceBounds(int face) {
+        Rectangle r = null;
+        for (int k = 0; k < locator.getFaceSize(face); k++) {
+            Rectangle b = locator.getTrapezoid(locator.getFaceTrapezoid(face, k)).getBoundaryPolygon().getBounds();
+            if (r == null) {
+                r = b;
+            } else {
+                r.add(b);
+            }
+        }
+        //the polygon bounds leave out the last row and column of pixels
+        r.grow(1, 1);
+        return r;
     }
 
     @Override
@@ -94,15 +195,13 @@ public class DisplayPanel extends JPanel implements Runnable {
         Graphics2D g2d = (Graphics2D) g;
 
 
-        //display all the lines & the point of interest
-        g2d.setColor(Color.black);
-        g2d.setStroke(new BasicStroke((float) 5.0));
-        if (segments != null) {
-            for (int i = 0; i < segments.length; i++) {
-                if (segments[i] != null) {
-                    g2d.draw(segments[i].getline());
-                }
-            }
+        //display the lines which can be seen & the point of interest
+        if (staticLayerCached) {
+            g2d.drawImage(getStaticLayer(), 0, 0, null);
+        } else {
+            g2d.setColor(Color.black);
+            g2d.setStroke(new BasicStroke((float) 5.0));
+            drawSegments(g2d);
         }
 
         //display the highlighted trapezoid
@@ -120,9 +219,9 @@ public class DisplayPanel extends JPanel implements Runnable {
             //g2d.fill(p);
             //displayLeft(g2d, highlighted);
             //displayRight(g2d, highlighted);
-            ArrayList<Polygon> pp = new ArrayList<Polygon>();
-
-            displayAll(g2d, highlighted, pp, 0);
+            //ArrayList<Polygon> pp = new ArrayList<Polygon>();
+            //displayAll(g2d, highlighted, pp, 0);
+            displayFace(g2d, highlightedFace);
 
             /*
              * Neighbor Display Code below
@@ -169,14 +268,84 @@ public class DisplayPanel extends JPanel implements Runnable {
         //display the mouse pointer
         g2d.setColor(Color.green);
         g2d.setStroke(new BasicStroke((float) 5.0));
-        g2d.draw(new Ellipse2D.Double(xval, yval, 4, 4));
+        g2d.draw(new Ellipse2D.Double(pointerX, pointerY, 4, 4));
 
         Toolkit.getDefaultToolkit().sync();
         g.dispose();
     }
 
     /**
-     * Should display all trapezoids recursively.
+     * Get the static layer: the background and all the segments, for the
+     * current size of the panel.
+     * @return The image, drawn again first if the panel size or the map changed
+     */
+    private BufferedImage getStaticLayer() {
+        int w = Math.max(getWidth(), 1);
+        int h = Math.max(getHeight(), 1);
+        if (staticLayer == null || staticLayer.getWidth() != w || staticLayer.getHeight() != h) {
+            GraphicsConfiguration gc = getGraphicsConfiguration();
+            if (gc != null) {
+                staticLayer = gc.createCompatibleImage(w, h);
+            } else {
+                staticLayer = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+            }
+            Graphics2D g2d = staticLayer.createGraphics();
+            g2d.setColor(getBackground());
+            g2d.fillRect(0, 0, w, h);
+            g2d.setColor(Color.black);
+            g2d.setStroke(new BasicStroke((float) 5.0));
+            drawSegments(g2d);
+            g2d.dispose();
+        }
+        return staticLayer;
+    }
+
+    /**
+     * Draws the segments inside the clip region (widened by the stroke width),
+     * found with a window query on the map rather than by going through the
+     * whole segment array.
+     *
+     * @param g2d
+     */
+    private void drawSegments(final Graphics2D g2d) {
+        Rectangle clip = g2d.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        int pad = (int) Math.ceil(((BasicStroke) g2d.getStroke()).getLineWidth());
+        search.queryWindow(clip.x - pad, clip.y - pad, clip.x + clip.width + pad, clip.y + clip.height + pad,
+                new WindowVisitor() {
+                    @Override
+                    public boolean visitTrapezoid(Trapezoid t) {
+                        return true;
+                    }
+
+                    @Override
+                    public boolean visitSegment(Segment s) {
+                        g2d.draw(s.getline());
+                        return true;
+                    }
+                });
+    }
+
+    /**
+     * Fills all trapezoids of a face of the segment arrangement, as labeled by
+     * the locator (no neighbor traversal is needed).
+     *
+     * @param g2d
+     * @param face The face id
+     */
+    public void displayFace(Graphics2D g2d, int face) {
+        if (face < 0) {
+            return;
+        }
+        for (int k = 0; k < locator.getFaceSize(face); k++) {
+            g2d.fill(locator.getTrapezoid(locator.getFaceTrapezoid(face, k)).getBoundaryPolygon());
+        }
+    }
+
+    /**
+     * Should display all trapezoids recursively. (old, see displayFace)
      *
      * @param g2d
      * @param t
@@ -237,30 +406,4 @@ public class DisplayPanel extends JPanel implements Runnable {
             displayRight(g2d, ur);
         }
     }
-
-    /**
-     * Calls repaint to redraw the images on the panel, and then sleeps the
-     * thread again
-     */
-    @Override
-    public void run() {
-        long before, diff, sleep;
-
-        while (true) {//do until the program is done
-            before = System.currentTimeMillis();
-            cycle();
-            repaint();
-            diff = System.currentTimeMillis() - before;
-            sleep = DELAY - diff;
-            if (sleep < 0) {
-                sleep = 2;
-            }
-            try {
-                Thread.sleep(sleep);
-            } catch (InterruptedException ex) {
-                System.err.println("Interrupted repaint thread");
-            }
-
-        }
-    }
 }
@@ -2,6 +2,7 @@ package gui;
 
 import data.Point;
 import data.Segment;
+import data.SegmentGrid;
 import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Graphics;
@@ -23,11 +24,17 @@ import javax.swing.SwingUtilities;
 public class DrawSegments extends JPanel implements Runnable {
 
     private static final int DELAY = 25;//(25) pause between repaints
+    //cell size of the grid used for the crossing checks, in pixels
+    private static final int CELL_SIZE = 32;
     private Point lastOrigin;
     private Point lastPoint;
     //coordinates of the last mouse Press event
     private int xval;
     private int yval;
+    //current mouse position, and whether it moved since the last cycle
+    private int mx;
+    private int my;
+    private boolean moved;
     //records type of mouse event
     private boolean shiftPressed;
     private boolean leftClick;
@@ -36,6 +43,8 @@ public class DrawSegments extends JPanel implements Runnable {
     private Color cc = Color.green;
     private Thread t;
     private ArrayList<Segment> segments;
+    //the same segments, indexed for the crossing checks
+    private SegmentGrid grid;
 
     /**
      * Initialize the DisplayPanel with a list of segments to be used for this
@@ -51,6 +60,7 @@ public class DrawSegments extends JPanel implements Runnable {
 
         this.newClick = false;
         segments = new ArrayList<Segment>();
+        grid = new SegmentGrid(CELL_SIZE);
         setBackground(Color.gray);
         setDoubleBuffered(true);
         MouseAdapter m = new MouseAdapter() {
@@ -69,6 +79,8 @@ public class DrawSegments extends JPanel implements Runnable {
                 // (1)
                 xval = e.getX();
                 yval = e.getY();
+                mx = xval;
+                my = yval;
                 // (2)
                 //Use this technique to avoid any potential ambiguities in the click type
                 if (SwingUtilities.isLeftMouseButton(e)) {
@@ -79,6 +91,13 @@ public class DrawSegments extends JPanel implements Runnable {
                 shiftPressed = e.isShiftDown();
                 newClick = true;
             }
+
+            @Override
+            public void mouseMoved(MouseEvent e) {
+                mx = e.getX();
+                my = e.getY();
+                moved = true;
+            }
         };
 
         addMouseListener(m);
@@ -128,7 +147,7 @@ public class DrawSegments extends JPanel implements Runnable {
                         cc = Color.red;
                     } else {
                         cc = Color.green;
-                        segments.add(ns);
+                        add(ns);
                         lastPoint = new Point(xval, yval);
                     }
                 }
@@ -149,32 +168,43 @@ public class DrawSegments extends JPanel implements Runnable {
                     cc = Color.red;
                 } else {
                     cc = Color.green;
-                    segments.add(ns);
+                    add(ns);
                     //set the last point to the same as the last origin
                     lastPoint = lastOrigin;
                 }
             }
+        } else if (moved && lastPoint != null) {
+            //show whether a left click here would be accepted
+            moved = false;
+            Point p = new Point(mx, my);
+            if (!p.equals(lastPoint)) {
+                cc = intersects(new Segment(lastPoint, p)) ? Color.red : Color.green;
+            }
         }
         newClick = false;
     }
 
+    /**
+     * Adds a segment to the list and to the crossing check grid
+     *
+     * @param ns The segment to add
+     */
+    private void add(Segment ns) {
+        segments.add(ns);
+        grid.add(ns);
+    }
+
     /**
      * Checks to see if the new segment intersects properly with any of the
-     * current segments in the ArrayList.
+     * current segments in the ArrayList.  Only the segments in the grid cells
+     * along the new segment are tested.
      *
-     * @TODO
      * @param ns The segment to check
      * @return True if the new segment intersects with something in the
      * ArrayList of current segments
      */
     private boolean intersects(Segment ns) {
-        int j = segments.size();
-        for (int i = 0; i < j; i++) {
-            if (segments.get(i).crosses(ns)) {
-                return true;
-            }
-        }
-        return false;
+        return grid.crossesAny(ns);
     }
 
     @Override
@@ -194,7 +224,7 @@ public class DrawSegments extends JPanel implements Runnable {
         //display the mouse pointer
         g2d.setColor(cc);
         g2d.setStroke(new BasicStroke((float) 5.0));
-        g2d.draw(new Ellipse2D.Double(xval, yval, 4, 4));
+        g2d.draw(new Ellipse2D.Double(mx, my, 4, 4));
 
         Toolkit.getDefaultToolkit().sync();
         g.dispose();
@@ -1,14 +1,26 @@
 package pointsearch;
 
+import data.BinarySegmentReader;
+import data.BinarySegmentWriter;
+import data.MapSnapshot;
 import data.Point;
+import data.PointLocator;
 import data.SearchStructure;
 import data.Segment;
+import data.SegmentReader;
+import data.SegmentSplitter;
+import data.SegmentTable;
+import data.SegmentValidator;
 import gui.DisplayPanel;
 import gui.DrawSegments;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileWriter;
+import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.Scanner;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 import javax.swing.JFrame;
 
 /**
@@ -21,9 +33,68 @@ public class PointSearch {
      */
     @SuppressWarnings("empty-statement")
     public static void main(String[] args) {
-        boolean timerMode = false;
-        if (timerMode) {
+        if (args.length >= 2 && args[0].equalsIgnoreCase("t")) {
             //do some timing calculation stuff instead of a GUI mode
+            int queries = 4000000;
+            if (args.length >= 3) {
+                queries = Integer.parseInt(args[2]);
+            }
+            SearchStructure ss = loadMap(args[1]);
+            if (ss != null) {
+                reportScaling(ss, queries);
+            }
+        } else if (args.length == 3 && args[0].equalsIgnoreCase("s")) {
+            //build the map once and save it for fast loading later
+            File f = new File(args[2]);
+            if (f.exists()) {
+                System.out.println("File already exists.  Could not create new snapshot file");
+            } else {
+                SearchStructure ss = loadMap(args[1]);
+                if (ss == null) {
+                    return;
+                }
+                try {
+                    long t1 = System.nanoTime();
+                    MapSnapshot.write(ss, f);
+                    System.out.println("Snapshot written in " + (System.nanoTime() - t1) / 1000000 + " ms");
+                } catch (IOException ex) {
+                    System.out.println("Error writing snapshot.  File not written");
+                }
+            }
+        } else if (args.length == 3 && args[0].equalsIgnoreCase("c")) {
+            convertLines(args[1], args[2]);
+        } else if (args.length == 2 && args[0].equalsIgnoreCase("v")) {
+            //check the segments before building the map from them
+            SegmentTable segs = getLines(args[1]);
+            if (segs == null || !validateLines(segs)) {
+                return;
+            }
+            SearchStructure ss = new SearchStructure(segs.toSegments(), 0, 1200, 0, 800);
+            System.out.println("Map built in " + ss.getBuildTime() / 1000000 + " ms");
+            showMap(ss);
+        } else if ((args.length == 2 || args.length == 3) && args[0].equalsIgnoreCase("a")) {
+            //split crossing segments before building the map from them
+            SegmentTable segs = getLines(args[1]);
+            if (segs == null) {
+                return;
+            }
+            long t1 = System.nanoTime();
+            SegmentTable pieces;
+            try {
+                pieces = SegmentSplitter.split(segs);
+            } catch (IllegalArgumentException ex) {
+                System.out.println("Unable to split segments: " + ex.getMessage());
+                return;
+            }
+            System.out.println(segs.size() + " segments split into " + pieces.size() + " pieces in "
+                    + (System.nanoTime() - t1) / 1000000 + " ms");
+            Segment[] arr = pieces.toSegments();
+            if (args.length == 3) {
+                storeLines(args[2], arr);
+            }
+            SearchStructure ss = new SearchStructure(arr, 0, 1200, 0, 800);
+            System.out.println("Map built in " + ss.getBuildTime() / 1000000 + " ms");
+            showMap(ss);
         } else if (args.length == 0) {
             System.out.println("Welcome to the Trapezoidal Map Demo");
             System.out.println("-----------------------------------------------");
@@ -42,6 +113,26 @@ public class PointSearch {
             System.out.println("Right click: Close the current figure");
             System.out.println("Crossing segments are automatically prevented (red cursor)");
             System.out.println("Close when finished");
+            System.out.println("");
+            System.out.println("To measure query throughput instead of opening the GUI,");
+            System.out.println("enter \"t\", followed by a segment file path and optionally");
+            System.out.println("the number of random queries to time.");
+            System.out.println("");
+            System.out.println("To save a built map for fast loading, enter \"s\",");
+            System.out.println("followed by a segment file path and a new snapshot file path.");
+            System.out.println("A snapshot file can be used anywhere a segment file can.");
+            System.out.println("");
+            System.out.println("To convert a segment file between the text and the compact");
+            System.out.println("binary format, enter \"c\", followed by the segment file path");
+            System.out.println("and a new output file path.  Binary segment files can be");
+            System.out.println("used anywhere a text segment file can.");
+            System.out.println("");
+            System.out.println("To check a segment file for crossing segments before");
+            System.out.println("building the map, enter \"v\" followed by the segment file path.");
+            System.out.println("");
+            System.out.println("To split crossing segments where they meet before building");
+            System.out.println("the map, enter \"a\" followed by the segment file path and");
+            System.out.println("optionally a new file path for storing the split segments.");
                     
         } else if (args.length == 2 && args[0].equalsIgnoreCase("b")) {//draw segments as an input
             final JFrame f = new JFrame();
@@ -78,10 +169,11 @@ public class PointSearch {
             System.out.println("got the segments! " + arr.length);
             storeLines(args[1], arr);
             SearchStructure ss = new SearchStructure(arr, 0, 1200, 0, 800);
+            System.out.println("Map built in " + ss.getBuildTime() / 1000000 + " ms");
 
             JFrame f2 = new JFrame();
             //send the list to the DisplayPanel
-            DisplayPanel dp = new DisplayPanel(arr, ss);
+            DisplayPanel dp = new DisplayPanel(ss);
             f2.add(dp);
             f2.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
@@ -99,57 +191,242 @@ public class PointSearch {
         } else {//use the data file at args[0]
             //String filename = "/home/tyler/Documents/demo.txt";
             //get the list of segments
-            Segment[] arr = getLines(args[0]);
             //construct the trapezoidal map search structure
-            SearchStructure ss = new SearchStructure(arr, 0, 1200, 0, 800);
+            SearchStructure ss = loadMap(args[0]);
+            if (ss == null) {
+                return;
+            }
+            showMap(ss);
+        }
+    }
 
-            //This is the GUI version of the code with segment input file
-            JFrame f = new JFrame();
-            //send the list to the DisplayPanel
-            DisplayPanel dp = new DisplayPanel(arr, ss);
-            f.add(dp);
-            f.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+    /**
+     * Opens the point location window for the given map.
+     *
+     * @param ss The map to display
+     */
+    private static void showMap(SearchStructure ss) {
+        //This is the GUI version of the code with segment input file
+        JFrame f = new JFrame();
+        //send the list to the DisplayPanel
+        DisplayPanel dp = new DisplayPanel(ss);
+        f.add(dp);
+        f.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
-            //set the size of the window in pixels
-            //set the window location
-            //set visible
-            //set resizable
+        //set the size of the window in pixels
+        //set the window location
+        //set visible
+        //set resizable
 
-            //maybe do something else later, but for now:
-            f.setSize(1200, 820);
-            f.setLocationRelativeTo(null);
-            f.setTitle("Computation Geometry - Point Location");
-            f.setVisible(true);
-            f.setResizable(false);
+        //maybe do something else later, but for now:
+        f.setSize(1200, 820);
+        f.setLocationRelativeTo(null);
+        f.setTitle("Computation Geometry - Point Location");
+        f.setVisible(true);
+        f.setResizable(false);
+    }
+
+    /**
+     * Reports the parallel query throughput of the compiled locator for every
+     * thread count from 1 up to the number of available processors.
+     *
+     * @param ss The map to query
+     * @param queries The number of random query points per measurement
+     */
+    private static void reportScaling(SearchStructure ss, int queries) {
+        Segment[] arr = ss.getSegments();
+        PointLocator locator = ss.compile();
+
+        //random queries over the extent of the segments
+        int minx = 0;
+        int maxx = 1200;
+        int miny = 0;
+        int maxy = 800;
+        for (int i = 0; i < arr.length; i++) {
+            if (arr[i] != null) {
+                minx = Math.min(minx, arr[i].getMinX());
+                maxx = Math.max(maxx, arr[i].getMaxX());
+                miny = Math.min(miny, arr[i].getMinY());
+                maxy = Math.max(maxy, arr[i].getMaxY());
+            }
+        }
+        Random r = new Random(0);
+        int[] xs = new int[queries];
+        int[] ys = new int[queries];
+        int[] out = new int[queries];
+        for (int i = 0; i < queries; i++) {
+            xs[i] = minx + (int) (r.nextDouble() * (maxx - minx));
+            ys[i] = miny + (int) (r.nextDouble() * (maxy - miny));
+        }
+
+        //sample the search path lengths of the map itself on some of the queries
+        ss.setPathSampling(1);
+        for (int i = 0; i < Math.min(queries, 100000); i++) {
+            ss.findPointTrap(xs[i], ys[i]);
+        }
+        System.out.print(ss.getStatistics());
+        ss.setPathSampling(0);
+        System.out.println("queries: " + queries);
+        System.out.println("threads   Mqueries/s   speedup");
+        double base = 0;
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= cores; threads++) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            //keep the best of a few runs, after one warm up run
+            long best = Long.MAX_VALUE;
+            for (int run = 0; run < 4; run++) {
+                long t1 = System.nanoTime();
+                locator.locateParallel(xs, ys, out, pool);
+                long t2 = System.nanoTime();
+                if (run > 0) {
+                    best = Math.min(best, t2 - t1);
+                }
+            }
+            pool.shutdown();
+            double rate = queries * 1000.0 / best;
+            if (threads == 1) {
+                base = rate;
+            }
+            System.out.println(String.format("%7d   %10.2f   %7.2f", threads, rate, rate / base));
+        }
+    }
+
+    /**
+     * Loads the map stored at the given path, which is either a map snapshot
+     * or a segment file to build the map from.
+     *
+     * @param s The file path of the snapshot or segment file
+     * @return The map, or null if the file could not be read
+     */
+    private static SearchStructure loadMap(String s) {
+        File f = new File(s);
+        SearchStructure ss;
+        if (MapSnapshot.isSnapshot(f)) {
+            try {
+                ss = MapSnapshot.read(f);
+            } catch (IOException ex) {
+                System.err.println("Unable to load map snapshot: " + ex.getMessage());
+                return null;
+            }
+            System.out.println("Map loaded in " + ss.getBuildTime() / 1000000 + " ms");
+        } else {
+            SegmentTable segs = getLines(s);
+            if (segs == null) {
+                return null;
+            }
+            ss = new SearchStructure(segs.toSegments(), 0, 1200, 0, 800);
+            System.out.println("Map built in " + ss.getBuildTime() / 1000000 + " ms");
+        }
+        return ss;
+    }
+
+    /**
+     * Checks that no two segments of the table cross, and reports the first
+     * offending pair found (numbered from 1, in file order) if any do.
+     *
+     * @param segs The segments to check
+     * @return True if the segments are valid input for the map
+     */
+    private static boolean validateLines(SegmentTable segs) {
+        long t1 = System.nanoTime();
+        int[] pair = SegmentValidator.findCrossing(segs);
+        long t2 = System.nanoTime();
+        if (pair != null) {
+            System.out.println("Segments " + (pair[0] + 1) + " and " + (pair[1] + 1) + " cross:");
+            System.out.println("  " + segs.getSegment(pair[0]));
+            System.out.println("  " + segs.getSegment(pair[1]));
+            return false;
         }
+        System.out.println(segs.size() + " segments checked in " + (t2 - t1) / 1000000 + " ms");
+        return true;
     }
 
     /**
-     * Reads in a series of lines from a basic file Right now there is not much
-     * input validation going on, and this would probably be a good thing to
-     * add. File format: #segments x1 y1 x2 y2 ...
+     * Reads in the segments of a text file (file format: #segments x1 y1 x2 y2 ...)
+     * or a binary segment file.  Malformed text files are reported with the
+     * offending line number.
      *
      * @param s The file path for the list of segments
-     * @return
+     * @return The table of segments, or null if the file could not be read
      */
-    private static Segment[] getLines(String s) {
-        Segment[] arr = null;
+    private static SegmentTable getLines(String s) {
         File f = new File(s);
         try {
-            Scanner scan = new Scanner(f);
-            if (scan.hasNextInt()) {
-                int len = scan.nextInt();//find out how many lines are in the file
-                arr = new Segment[len];
-                for (int i = 0; i < len && scan.hasNextInt(); i++) {//read in each new line
-                    arr[i] = new Segment(new Point(scan.nextInt(), scan.nextInt()), new Point(scan.nextInt(), scan.nextInt()));
-                }
+            if (BinarySegmentReader.isBinary(f)) {
+                return BinarySegmentReader.readTable(f);
             }
-        } catch (FileNotFoundException ex) {
-            System.err.println("Unable to load segment file");
+            return SegmentReader.readTable(f);
+        } catch (IOException ex) {
+            System.err.println("Unable to load segment file: " + ex.getMessage());
+            return null;
         }
-        return arr;
     }
     
+    /**
+     * Converts a text segment file to the binary format, or a binary segment
+     * file back to text.  Segments are streamed through one at a time, and the
+     * endpoints keep their order, so converting back and forth gives the same
+     * numbers.
+     *
+     * @param s The file path of the segment file to convert
+     * @param t The file path for the converted file
+     * @return True if the file is successfully converted
+     */
+    private static boolean convertLines(String s, String t) {
+        File in = new File(s);
+        File out = new File(t);
+        if (out.exists()) {
+            System.out.println("File already exists.  Could not create new output file");
+            return false;
+        }
+        long t1 = System.nanoTime();
+        int count;
+        try {
+            if (BinarySegmentReader.isBinary(in)) {
+                BinarySegmentReader reader = new BinarySegmentReader(in);
+                try {
+                    BufferedWriter writer = new BufferedWriter(new FileWriter(out), 1 << 16);
+                    try {
+                        //same layout as storeLines
+                        writer.write("" + reader.getCount());
+                        writer.newLine();
+                        while (reader.next()) {
+                            writer.write(reader.getX1() + "   " + reader.getY1() + "     "
+                                    + reader.getX2() + "   " + reader.getY2());
+                            writer.newLine();
+                        }
+                    } finally {
+                        writer.close();
+                    }
+                    count = reader.getCount();
+                } finally {
+                    reader.close();
+                }
+            } else {
+                SegmentReader reader = new SegmentReader(in);
+                try {
+                    BinarySegmentWriter writer = new BinarySegmentWriter(out);
+                    try {
+                        while (reader.next()) {
+                            writer.add(reader.getX1(), reader.getY1(), reader.getX2(), reader.getY2());
+                        }
+                    } finally {
+                        writer.close();
+                    }
+                    count = writer.getCount();
+                } finally {
+                    reader.close();
+                }
+            }
+        } catch (IOException ex) {
+            System.out.println("Error converting file: " + ex.getMessage());
+            out.delete();
+            return false;
+        }
+        System.out.println("Converted " + count + " segments in " + (System.nanoTime() - t1) / 1000000 + " ms");
+        return true;
+    }
+
     /**
      * Store the line segments as an output file at the given file path
      * @param s The file path to use